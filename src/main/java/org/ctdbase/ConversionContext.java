@@ -0,0 +1,123 @@
+package org.ctdbase;
+
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.io.ModelSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches shared by the {@link ConversionJob}s of one run (a manifest, or the server):
+ * a gene or chemical vocabulary file is converted once, and then each job gets
+ * its own copy of the model, loaded from the in-memory binary snapshot (see {@link ModelSnapshot}),
+ * for the models are modified when merged.
+ * A cached vocabulary is used while the file's size and modification time do not change;
+ * then the file is converted again, and replaces it in the cache.
+ * Thread-safe: concurrent jobs that need the same vocabulary wait for one conversion.
+ */
+public class ConversionContext {
+    private static Logger log = LoggerFactory.getLogger(ConversionContext.class);
+
+    // by the kind, xml:base and file: the last converted version of the file
+    private final Map<String, Cached> vocabularies = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    @FunctionalInterface
+    public interface ModelSource {
+        Model convert() throws IOException;
+    }
+
+    /**
+     * @param kind vocabulary type, e.g. 'gene' or 'chemical'
+     * @param file vocabulary file
+     * @param xmlBase xml:base (URI prefix) of the converted model
+     * @param converter converts the file when it's not in the cache
+     * @return a new model, the same as the converter returns
+     */
+    public Model vocabulary(String kind, String file, String xmlBase, ModelSource converter) throws IOException {
+        Path path = Paths.get(file).toAbsolutePath();
+        String key = kind + '|' + xmlBase + '|' + path;
+        String version = Files.size(path) + "|" + Files.getLastModifiedTime(path).toMillis();
+        Cached mine = new Cached(version);
+        // a changed file's entry is replaced, so that there is one per file
+        Cached cached = vocabularies.compute(key, (k, c) -> (c != null && c.version.equals(version)) ? c : mine);
+        if (cached == mine) {
+            misses.incrementAndGet();
+            try {
+                Model model = converter.convert();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ModelSnapshot.write(model, bytes);
+                mine.snapshot.complete(bytes.toByteArray());
+                log.info("Cached the " + kind + " vocabulary " + path + " (" + bytes.size() + " bytes)");
+                return model;
+            } catch (IOException | RuntimeException e) {
+                vocabularies.remove(key, mine);
+                mine.snapshot.completeExceptionally(e);
+                throw e;
+            }
+        }
+        hits.incrementAndGet();
+        try {
+            return ModelSnapshot.load(new ByteArrayInputStream(cached.snapshot.get()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the " + kind + " vocabulary " + path, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new UncheckedIOException(new IOException(cause));
+        }
+    }
+
+    /**
+     * Drops all the cached data.
+     */
+    public void clear() {
+        vocabularies.clear();
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of the cached vocabularies (one per file at most)
+     */
+    public int size() {
+        return vocabularies.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d cached vocabularies, %d hits, %d misses", vocabularies.size(), hits.get(), misses.get());
+    }
+
+    // a vocabulary file's version (size and modification time) and its model snapshot, once converted
+    private static final class Cached {
+        final String version;
+        final CompletableFuture<byte[]> snapshot = new CompletableFuture<>();
+
+        Cached(String version) {
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,915 @@
+package org.ctdbase;
+
+import org.apache.commons.lang3.StringUtils;
+import org.biopax.paxtools.controller.Merger;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.UtilityClass;
+import org.ctdbase.converter.CTDChemicalConverter;
+import org.ctdbase.converter.CTDGeneConverter;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.ctdbase.converter.Converter;
+import org.ctdbase.converter.EntityDictionary;
+import org.ctdbase.io.ByteXmlIxnReader;
+import org.ctdbase.io.IxnIndex;
+import org.ctdbase.io.IxnRecordFilter;
+import org.ctdbase.io.IxnRecordReader;
+import org.ctdbase.io.IxnSnapshot;
+import org.ctdbase.io.IxnSnapshotWriter;
+import org.ctdbase.io.ModelSnapshot;
+import org.ctdbase.io.ParallelXmlIxnReader;
+import org.ctdbase.io.ShardArchive;
+import org.ctdbase.io.SpillMerger;
+import org.ctdbase.util.CanonicalOrder;
+import org.ctdbase.util.DanglingElements;
+import org.ctdbase.util.Diagnostics;
+import org.ctdbase.util.LongObjectMap;
+import org.ctdbase.util.LongSet;
+import org.ctdbase.util.MeteredQueue;
+import org.ctdbase.util.ModelHeapReport;
+import org.ctdbase.util.StringPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * One conversion: any of the CTD interactions, gene and chemical vocabulary files
+ * to a single BioPAX model, which goes to one or more {@link ModelSink}s (e.g. OWL file).
+ * A job has its own converters, string pool and models, so that different jobs can run in parallel;
+ * jobs that share a {@link ConversionContext} also share the converted vocabularies.
+ * The interactions are converted in the input order in any mode (see {@link InteractionPipeline}),
+ * and the output is written in a canonical order (see {@link CanonicalOrder}), so that the same inputs
+ * and options give byte-identical files, with or without the pipeline.
+ *
+ * <pre>
+ * JobMetrics metrics = ConversionJob.builder()
+ *     .interactions("CTD_chem_gene_ixns_structured.xml.gz")
+ *     .genes("CTD_genes.csv.gz")
+ *     .taxa("9606", "10090")
+ *     .removeDangling(true)
+ *     .output("ctd.owl")
+ *     .build()
+ *     .run();
+ * </pre>
+ */
+public class ConversionJob {
+    private static Logger log = LoggerFactory.getLogger(ConversionJob.class);
+
+    public static final int DEFAULT_SPILL_RUN_SIZE = 50000;
+
+    private final String name;
+    private final String interactionFile;
+    private final String geneFile;
+    private final String chemicalFile;
+    private final Set<String> taxa;
+    private final String xmlBase;
+    private final boolean removeDangling;
+    private final boolean useSnapshot;
+    private final boolean join;
+    private final long limit;
+    private final double sampleRate;
+    private final long seed;
+    private final String ixnIdsFile;
+    private final long vocabularyLimit;
+    private final int workers;
+    private final int parseThreads;
+    private final int batchSize;
+    private final String heapReportFile;
+    private final String outputFile;
+    private final String spillDir;
+    private final int spillRunSize;
+    private final boolean twoPass;
+    private final String selectFile;
+    private final String shardFile;
+    private final List<ModelSink> sinks;
+    private final ConversionContext context;
+
+    private ConversionJob(Builder b) {
+        name = b.name;
+        interactionFile = b.interactionFile;
+        geneFile = b.geneFile;
+        chemicalFile = b.chemicalFile;
+        taxa = (b.taxa == null) ? null : Collections.unmodifiableSet(new LinkedHashSet<>(b.taxa));
+        xmlBase = b.xmlBase;
+        removeDangling = b.removeDangling;
+        useSnapshot = b.useSnapshot;
+        join = b.join;
+        limit = b.limit;
+        sampleRate = b.sampleRate;
+        seed = b.seed;
+        ixnIdsFile = b.ixnIdsFile;
+        vocabularyLimit = b.vocabularyLimit;
+        workers = b.workers;
+        parseThreads = b.parseThreads;
+        batchSize = b.batchSize;
+        heapReportFile = b.heapReportFile;
+        outputFile = b.outputFile;
+        spillDir = b.spillDir;
+        spillRunSize = b.spillRunSize;
+        twoPass = b.twoPass;
+        selectFile = b.selectFile;
+        shardFile = b.shardFile;
+        List<ModelSink> all = new ArrayList<>(b.sinks);
+        if (b.outputFile != null) {
+            all.add(0, ModelSink.owl(Paths.get(b.outputFile)));
+            if (b.binaryOutput) {
+                all.add(1, ModelSink.binary(Paths.get(b.outputFile + ModelSnapshot.EXTENSION)));
+            }
+        }
+        sinks = Collections.unmodifiableList(all);
+        context = b.context;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Converts the input files and writes the model to the sinks.
+     *
+     * @return the job's run metrics
+     * @throws IOException when an input cannot be read or the output cannot be written
+     */
+    public JobMetrics run() throws IOException {
+        JobMetrics metrics = new JobMetrics();
+        metrics.start();
+        if (spillDir != null) {
+            runSpilled(metrics);
+        } else {
+            // the interactions by their controller chemical, for the shard archive
+            LongObjectMap<Set<String>> shards = (shardFile != null) ? new LongObjectMap<>() : null;
+            Model finalModel = convert(metrics, null, shards);
+
+            long outputBytes = 0;
+            for (ModelSink sink : sinks) {
+                long bytes = sink.write(finalModel);
+                if (bytes > 0) {
+                    outputBytes += bytes;
+                }
+            }
+            metrics.setOutputBytes(outputBytes);
+            metrics.stage("write");
+            metrics.setObjects(finalModel.getObjects().size());
+            if (shards != null) {
+                writeShards(finalModel, shards, metrics);
+            }
+        }
+        metrics.stop();
+        log.info(name + ": run metrics - " + metrics);
+        return metrics;
+    }
+
+    // converts the models to runs on disk, and then merge-sorts them into the output file
+    private void runSpilled(JobMetrics metrics) throws IOException {
+        try (SpillMerger spill = new SpillMerger(Paths.get(spillDir))) {
+            convert(metrics, spill, null);
+            metrics.setCounter("spill.runs", spill.getRuns());
+            metrics.setCounter("spill.elements", spill.getSpilledElements());
+            metrics.setCounter("spill.bytes", spill.getSpilledBytes());
+            long objects;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(outputFile)))) {
+                objects = spill.writeOwl(out, xmlBase);
+            }
+            metrics.setOutputBytes(Files.size(Paths.get(outputFile)));
+            metrics.stage("write");
+            metrics.setObjects((int) objects);
+        }
+    }
+
+    // writes the document of each chemical's interactions to the shard archive, with the workers, or all the CPUs
+    private void writeShards(Model model, LongObjectMap<Set<String>> shards, JobMetrics metrics) throws IOException {
+        int threads = (workers > 0) ? workers : Runtime.getRuntime().availableProcessors();
+        log.info(name + ": writing the interactions of " + shards.size() + " chemicals to " + shardFile
+            + " with " + threads + " threads");
+        int written = ShardArchive.write(Paths.get(shardFile), model, shards, threads);
+        metrics.setCounter("shards.documents", written);
+        metrics.setCounter("shards.bytes", Files.size(Paths.get(shardFile)));
+        metrics.stage("shards");
+    }
+
+    /*
+     * Converts and merges the input data into a new model, collecting the interactions by chemical to the shards
+     * map, if any; or, with the spill merger, spills the converters' models (the interactions' in runs)
+     * to it and returns an empty model.
+     */
+    private Model convert(JobMetrics metrics, SpillMerger spill, LongObjectMap<Set<String>> shards)
+        throws IOException
+    {
+        Merger merger = new Merger(SimpleEditorMap.L3);
+        Model finalModel = BioPAXLevel.L3.getDefaultFactory().createModel();
+        ModelSink target = (spill == null)
+            ? model -> {
+                if (finalModel.getObjects().isEmpty()) {
+                    // the same as merging into the empty model, without going over all the objects' properties
+                    for (BioPAXElement bpe : model.getObjects()) {
+                        finalModel.add(bpe);
+                    }
+                } else {
+                    merger.merge(finalModel, model);
+                }
+                return -1;
+            }
+            : model -> {
+                spill.add(model);
+                return -1;
+            };
+        // shared by all the converters in this job
+        StringPool stringPool = new StringPool();
+        // counts the per-record events of all the converters, summarized at the end
+        Diagnostics diagnostics = new Diagnostics(log);
+        // join mode: the genes and chemicals the interactions refer to
+        LongSet referencedIds = null;
+        if (heapReportFile != null) {
+            Files.write(Paths.get(heapReportFile), Collections.singletonList(ModelHeapReport.CSV_HEADER));
+        }
+
+        // First convert the interactions
+        if (interactionFile != null) {
+            if (taxa != null) {
+                log.info(name + ": will do only interactions with taxonomy: " + taxa);
+            }
+            if (join) {
+                referencedIds = new LongSet();
+            }
+            log.info(name + ": converting " + interactionFile + " in batches of " + batchSize + " interactions "
+                + ((workers > 0) ? "in the pipeline" : "in the calling thread"));
+            Model model = convertInPipeline(stringPool, diagnostics, referencedIds, shards, metrics, spill);
+            metrics.stage("interactions");
+            if (referencedIds != null) {
+                log.info(name + ": the interactions refer to " + referencedIds.size() + " genes and chemicals");
+            }
+            if (model != null) {
+                reportHeap("interactions", model, metrics);
+                target.write(model);
+                metrics.stage("merge");
+            }
+        }
+
+        if (geneFile != null) {
+            Model model = vocabulary("gene", geneFile, new CTDGeneConverter(), stringPool, diagnostics, referencedIds);
+            metrics.stage("genes");
+            reportHeap("genes", model, metrics);
+            target.write(model);
+            metrics.stage("merge");
+        }
+
+        if (chemicalFile != null) {
+            Model model = vocabulary("chemical", chemicalFile, new CTDChemicalConverter(), stringPool, diagnostics, referencedIds);
+            metrics.stage("chemicals");
+            reportHeap("chemicals", model, metrics);
+            target.write(model);
+            metrics.stage("merge");
+        }
+
+        if (removeDangling) {
+            Set<BioPAXElement> removed = DanglingElements.remove(finalModel, UtilityClass.class);
+            log.info(name + ": removed " + removed.size() + " dangling UtilityClass objects from the model.");
+            metrics.setRemovedDangling(removed.size());
+            metrics.stage("remove-dangling");
+        }
+
+        if (spill == null) {
+            reportHeap("final", finalModel, metrics);
+        }
+        finalModel.setXmlBase(xmlBase);
+        metrics.setStringPool(stringPool.toString());
+        diagnostics.logSummary(name + ": ");
+        for (Map.Entry<String, Long> e : diagnostics.counts().entrySet()) {
+            metrics.setCounter("diagnostics." + e.getKey(), e.getValue());
+        }
+        log.info(name + ": done with the conversions.");
+        return finalModel;
+    }
+
+    // appends the model's per-type heap accounting to the report file (so it's there even if a later stage fails)
+    private void reportHeap(String stage, Model model, JobMetrics metrics) throws IOException {
+        if (heapReportFile == null) {
+            return;
+        }
+        ModelHeapReport report = ModelHeapReport.of(stage, model);
+        StringBuilder csv = new StringBuilder();
+        report.writeCsv(csv);
+        Files.write(Paths.get(heapReportFile), csv.toString().getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+        log.info(name + ": heap " + report);
+        metrics.stage("heap-report");
+    }
+
+    private Model vocabulary(String kind, String file, Converter converter, StringPool stringPool,
+                             Diagnostics diagnostics, LongSet idFilter) throws IOException {
+        setUp(converter, stringPool, diagnostics);
+        converter.setIdFilter(idFilter);
+        converter.setRowLimit(vocabularyLimit);
+        log.info(name + ": using " + converter.getClass().getSimpleName() + " to convert: " + file);
+        // a vocabulary filtered by this job's interactions, or a part of it, is not shared
+        if (context == null || idFilter != null || vocabularyLimit >= 0) {
+            return converter.convert(inputDataStream(file));
+        }
+        return context.vocabulary(kind, file, xmlBase, () -> converter.convert(inputDataStream(file)));
+    }
+
+    /*
+     * Converts the interactions in the staged pipeline if there are workers, or else in the calling thread;
+     * with the spill merger, spills the elements of about every spillRunSize interactions, and then the elements
+     * they share, and returns null. In the two-pass mode, the first pass makes the entities, which the converter
+     * refers to.
+     */
+    private Model convertInPipeline(StringPool stringPool, Diagnostics diagnostics, LongSet referencedIds,
+                                    LongObjectMap<Set<String>> shards, JobMetrics metrics, SpillMerger spill)
+        throws IOException
+    {
+        EntityDictionary dictionary = (twoPass) ? collectEntities(stringPool, metrics) : null;
+        try (InteractionPipeline pipeline = new InteractionPipeline(workers > 0, batchSize, () -> {
+            CTDInteractionConverter converter = CTDInteractionConverter.forTaxa(taxa);
+            setUp(converter, stringPool, diagnostics);
+            converter.setDictionary(dictionary);
+            if (referencedIds != null) {
+                converter.setReferencedIds(new LongSet());
+            }
+            if (shards != null) {
+                converter.setShards(new LongObjectMap<>());
+            }
+            return converter;
+        })) {
+            IxnRecordReader source = interactionReader(pipeline, metrics);
+            Model model = null;
+            try (IxnRecordReader reader = (isSampled()) ? filter(source) : source) {
+                if (spill == null) {
+                    model = pipeline.convert(reader);
+                } else {
+                    pipeline.convert(reader, spillRunSize, m -> {
+                        spill.add(m);
+                        return -1;
+                    });
+                }
+                if (reader instanceof IxnRecordFilter) {
+                    IxnRecordFilter f = (IxnRecordFilter) reader;
+                    log.info(name + ": converted " + f.getPassed() + " of " + f.getRead() + " interactions read");
+                }
+            }
+            if (dictionary != null) {
+                // the entities (etc.) the model has stubs of
+                Model entities = dictionary.select(pipeline.getConverters());
+                metrics.setCounter("two-pass.selected-objects", entities.getObjects().size());
+                if (spill == null) {
+                    new Merger(SimpleEditorMap.L3).merge(model, entities);
+                } else {
+                    spill.add(entities);
+                }
+            }
+            for (CTDInteractionConverter converter : pipeline.getConverters()) {
+                if (referencedIds != null) {
+                    referencedIds.addAll(converter.getReferencedIds());
+                }
+                if (shards != null) {
+                    converter.getShards().forEach((uris, chemical) -> {
+                        Set<String> all = shards.get(chemical);
+                        if (all == null) {
+                            shards.put(chemical, uris);
+                        } else {
+                            all.addAll(uris);
+                        }
+                    });
+                }
+            }
+            for (MeteredQueue<?> queue : pipeline.getQueues()) {
+                String prefix = "pipeline." + queue.getName() + ".";
+                metrics.setCounter(prefix + "items", queue.getItems());
+                metrics.setCounter(prefix + "max-depth", queue.getMaxDepth());
+                metrics.setCounter(prefix + "producer-blocked-ms", queue.getPutWaitMillis());
+                metrics.setCounter(prefix + "consumer-waited-ms", queue.getTakeWaitMillis());
+            }
+            return model;
+        }
+    }
+
+    // the first pass of the two-pass conversion: the entities of the interactions' actors
+    private EntityDictionary collectEntities(StringPool stringPool, JobMetrics metrics) throws IOException {
+        CTDInteractionConverter converter = CTDInteractionConverter.forTaxa(taxa);
+        setUp(converter, stringPool, null);
+        IxnRecordReader source = interactionReader(null, metrics);
+        EntityDictionary dictionary;
+        try (IxnRecordReader reader = (isSampled()) ? filter(source) : source) {
+            dictionary = converter.collectEntities(reader);
+        }
+        metrics.stage("entities");
+        metrics.setCounter("two-pass.entities", dictionary.size());
+        return dictionary;
+    }
+
+    // whether only some of the interaction records are to be converted
+    private boolean isSampled() {
+        return limit >= 0 || sampleRate < 1.0 || ixnIdsFile != null;
+    }
+
+    private IxnRecordFilter filter(IxnRecordReader source) throws IOException {
+        IxnRecordFilter filter = new IxnRecordFilter(source).limit(limit).sample(sampleRate, seed);
+        try {
+            if (ixnIdsFile != null) {
+                filter.ids(IxnRecordFilter.readIds(Paths.get(ixnIdsFile)));
+            }
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+        return filter;
+    }
+
+    private void setUp(Converter converter, StringPool stringPool, Diagnostics diagnostics) {
+        converter.setStringPool(stringPool);
+        converter.setDiagnostics(diagnostics);
+        converter.setXmlBase(xmlBase);
+    }
+
+    /*
+     * Reads the interactions selected by the ids via the index, from the snapshot, or else parses the XML
+     * (decompressed by the pipeline, if any).
+     */
+    private IxnRecordReader interactionReader(InteractionPipeline pipeline, JobMetrics metrics) throws IOException {
+        if (selectFile != null) {
+            IxnIndex index = IxnIndex.open(Paths.get(interactionFile));
+            if (index == null) {
+                throw new IOException("No up-to-date index of " + interactionFile + "; make it with --index first");
+            }
+            IxnIndex.Selection selection = index.select(IxnIndex.readKeys(Paths.get(selectFile)));
+            log.info(name + ": reading " + selection.size() + " interactions selected by the ids in " + selectFile
+                + " from " + index.getXml());
+            metrics.setCounter("index.selected", selection.size());
+            return selection;
+        } else if (useSnapshot) {
+            return snapshotReader(interactionFile);
+        } else {
+            return xmlReader((pipeline == null) ? inputDataStream(interactionFile) : pipeline.open(interactionFile));
+        }
+    }
+
+    /*
+     * Reads the interactions from the up-to-date snapshot, if any;
+     * otherwise - from the XML, at the same time writing the new snapshot.
+     */
+    private IxnRecordReader snapshotReader(String fileName) throws IOException {
+        Path source = Paths.get(fileName);
+        Path snapshot = IxnSnapshot.snapshotFile(source);
+        long checksum = IxnSnapshot.checksum(source);
+        IxnRecordReader reader = IxnSnapshot.open(snapshot, source, checksum);
+        if (reader != null) {
+            log.info("Reading the interactions from snapshot: " + snapshot);
+            return reader;
+        }
+        log.info("Parsing " + fileName + " and saving the snapshot: " + snapshot);
+        IxnSnapshotWriter writer = new IxnSnapshotWriter(snapshot, Files.size(source), checksum);
+        try {
+            return writer.tee(xmlReader(inputDataStream(fileName)));
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    // parses the interactions XML with the parse threads, if any (see ParallelXmlIxnReader)
+    private IxnRecordReader xmlReader(InputStream in) throws IOException {
+        return (parseThreads > 1) ? new ParallelXmlIxnReader(in, parseThreads) : new ByteXmlIxnReader(in);
+    }
+
+    static InputStream inputDataStream(String fileName) throws IOException {
+        InputStream inputStream = new FileInputStream(fileName);
+        if (StringUtils.endsWith(fileName, ".gz")) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        return inputStream;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getInteractionFile() {
+        return interactionFile;
+    }
+
+    public String getGeneFile() {
+        return geneFile;
+    }
+
+    public String getChemicalFile() {
+        return chemicalFile;
+    }
+
+    /**
+     * @return the interactions taxonomy filter, or null (all)
+     */
+    public Set<String> getTaxa() {
+        return taxa;
+    }
+
+    public String getXmlBase() {
+        return xmlBase;
+    }
+
+    public boolean isRemoveDangling() {
+        return removeDangling;
+    }
+
+    public boolean isUseSnapshot() {
+        return useSnapshot;
+    }
+
+    public boolean isJoin() {
+        return join;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getIxnIdsFile() {
+        return ixnIdsFile;
+    }
+
+    public long getVocabularyLimit() {
+        return vocabularyLimit;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the heap report (CSV) file, or null
+     */
+    public String getHeapReportFile() {
+        return heapReportFile;
+    }
+
+    /**
+     * @return the BioPAX (OWL) output file, or null (only the custom sinks)
+     */
+    public String getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * @return the directory for the spill merge's temporary files, or null (the model is merged in memory)
+     */
+    public String getSpillDir() {
+        return spillDir;
+    }
+
+    public int getSpillRunSize() {
+        return spillRunSize;
+    }
+
+    public boolean isTwoPass() {
+        return twoPass;
+    }
+
+    /**
+     * @return the file of the ids of the interactions, chemicals and genes to select via the index, or null
+     */
+    public String getSelectFile() {
+        return selectFile;
+    }
+
+    /**
+     * @return the per-chemical documents archive file (see {@link ShardArchive}), or null
+     */
+    public String getShardFile() {
+        return shardFile;
+    }
+
+    public List<ModelSink> getSinks() {
+        return sinks;
+    }
+
+    public static final class Builder {
+        private String name = "job";
+        private String interactionFile;
+        private String geneFile;
+        private String chemicalFile;
+        private Collection<String> taxa;
+        private String xmlBase = Converter.DEFAULT_XML_BASE;
+        private boolean removeDangling;
+        private boolean useSnapshot;
+        private boolean join;
+        private long limit = -1;
+        private double sampleRate = 1.0;
+        private long seed = 1;
+        private String ixnIdsFile;
+        private long vocabularyLimit = -1;
+        private int workers;
+        private int parseThreads;
+        private int batchSize = InteractionPipeline.DEFAULT_BATCH_SIZE;
+        private String outputFile;
+        private boolean binaryOutput;
+        private String heapReportFile;
+        private String spillDir;
+        private int spillRunSize = DEFAULT_SPILL_RUN_SIZE;
+        private boolean twoPass;
+        private String selectFile;
+        private String shardFile;
+        private final List<ModelSink> sinks = new ArrayList<>();
+        private ConversionContext context;
+
+        private Builder() {
+        }
+
+        /**
+         * @param name job name for the log messages
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * @param file structured chemical-gene interactions file (XML, can be gzipped)
+         */
+        public Builder interactions(String file) {
+            this.interactionFile = file;
+            return this;
+        }
+
+        /**
+         * @param file CTD gene vocabulary (CSV, can be gzipped)
+         */
+        public Builder genes(String file) {
+            this.geneFile = file;
+            return this;
+        }
+
+        /**
+         * @param file CTD chemical vocabulary (CSV, can be gzipped)
+         */
+        public Builder chemicals(String file) {
+            this.chemicalFile = file;
+            return this;
+        }
+
+        /**
+         * @param taxa interactions filter: taxonomy ids, 'defined' (any taxon), 'undefined' (no taxon);
+         *             none or null - all the interactions
+         */
+        public Builder taxa(Collection<String> taxa) {
+            this.taxa = (taxa == null || taxa.isEmpty()) ? null : taxa;
+            return this;
+        }
+
+        public Builder taxa(String... taxa) {
+            return taxa((taxa == null) ? null : Arrays.asList(taxa));
+        }
+
+        /**
+         * @param taxonomy interactions filter as on the command line: comma-separated values, or null
+         */
+        public Builder taxonomy(String taxonomy) {
+            return taxa((taxonomy == null) ? null : taxonomy.split(","));
+        }
+
+        /**
+         * @param xmlBase xml:base, the prefix of the URIs the converters generate
+         */
+        public Builder xmlBase(String xmlBase) {
+            this.xmlBase = xmlBase;
+            return this;
+        }
+
+        public Builder removeDangling(boolean removeDangling) {
+            this.removeDangling = removeDangling;
+            return this;
+        }
+
+        /**
+         * @param useSnapshot whether to convert the interactions from (or save) the parsed records snapshot
+         */
+        public Builder snapshot(boolean useSnapshot) {
+            this.useSnapshot = useSnapshot;
+            return this;
+        }
+
+        /**
+         * @param join whether to convert only the genes and chemicals the converted interactions refer to
+         *             (when there is the interactions file)
+         */
+        public Builder join(boolean join) {
+            this.join = join;
+            return this;
+        }
+
+        /**
+         * @param limit max. number of interaction records to convert, or -1 (all)
+         */
+        public Builder limit(long limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * @param sampleRate fraction of the interaction records to convert (a random sample), from 0 to 1
+         * @param seed sampling seed; the same seed and rate pick the same records
+         */
+        public Builder sample(double sampleRate, long seed) {
+            if (sampleRate < 0 || sampleRate > 1) {
+                throw new IllegalArgumentException("sample rate: " + sampleRate);
+            }
+            this.sampleRate = sampleRate;
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param file list of the (top-level) ixn ids to convert, one per line; or null (all)
+         */
+        public Builder ixnIds(String file) {
+            this.ixnIdsFile = file;
+            return this;
+        }
+
+        /**
+         * @param vocabularyLimit max. number of rows to read from each of the gene and chemical files,
+         *                        or -1 (all)
+         */
+        public Builder vocabularyLimit(long vocabularyLimit) {
+            this.vocabularyLimit = vocabularyLimit;
+            return this;
+        }
+
+        /**
+         * @param workers number of threads to write the shards with; if more than 0, the interactions are
+         *                decompressed and parsed in the staged pipeline's threads (see {@link InteractionPipeline}),
+         *                or else in the calling thread (the conversion is in the input order either way)
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * @param parseThreads number of threads to parse the interactions XML with, in byte ranges
+         *                     (see {@link ParallelXmlIxnReader}), or 0 or 1 - parse it on one thread
+         */
+        public Builder parseThreads(int parseThreads) {
+            this.parseThreads = parseThreads;
+            return this;
+        }
+
+        /**
+         * @param batchSize number of the interaction records the pipeline passes between its stages together
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param file BioPAX (OWL) output file
+         */
+        public Builder output(String file) {
+            this.outputFile = file;
+            return this;
+        }
+
+        /**
+         * @param binaryOutput whether to also save the binary model snapshot next to the output file
+         */
+        public Builder binary(boolean binaryOutput) {
+            this.binaryOutput = binaryOutput;
+            return this;
+        }
+
+        /**
+         * @param file CSV file to write the per-type object counts, estimated bytes and property fan-out
+         *             of each converter's model and of the final one (see {@link ModelHeapReport}), or null
+         */
+        public Builder heapReport(String file) {
+            this.heapReportFile = file;
+            return this;
+        }
+
+        /**
+         * Makes the job merge the models on disk rather than in memory (see {@link SpillMerger}):
+         * the elements made for each run of the interactions, then the ones they share, and the vocabularies are spilled
+         * to temporary files, which are then merge-sorted into the output file.
+         * Only the OWL output file is written then; no dangling objects removal, binary output, shards
+         * or other sinks.
+         *
+         * @param dir where to create the temporary files, or null (merge in memory)
+         */
+        public Builder spill(String dir) {
+            this.spillDir = dir;
+            return this;
+        }
+
+        /**
+         * @param runSize about how many interactions to spill the own elements of as one run, for the spill merge
+         */
+        public Builder spillRunSize(int runSize) {
+            this.spillRunSize = runSize;
+            return this;
+        }
+
+        /**
+         * Makes the job convert the interactions in two passes over the input (in the pipeline):
+         * the first one makes the entities of all the actors (see {@link EntityDictionary}),
+         * and the second one - only the interactions, referring to those, in parallel, without locking.
+         *
+         * @param twoPass whether to make the entities up front
+         */
+        public Builder twoPass(boolean twoPass) {
+            this.twoPass = twoPass;
+            return this;
+        }
+
+        /**
+         * Makes the job convert only the interactions with the ids, or with the chemical or gene actors of the ids,
+         * listed in the file (see {@link IxnIndex#readKeys(Path)}), reading them from the interactions file
+         * (its uncompressed copy) via its index (see {@link IxnIndex#build(Path)}), without parsing the rest.
+         *
+         * @param file ids file, or null (all the interactions)
+         */
+        public Builder select(String file) {
+            this.selectFile = file;
+            return this;
+        }
+
+        /**
+         * Makes the job also write the archive of a BioPAX document per chemical (see {@link ShardArchive}):
+         * the interactions it controls, with all the objects they refer to, extracted from the final model
+         * in parallel (by the workers, or as many threads as the CPUs).
+         *
+         * @param file archive file, or null (none)
+         */
+        public Builder shards(String file) {
+            this.shardFile = file;
+            return this;
+        }
+
+        /**
+         * Adds a custom destination of the final model (in addition to the output file, if any).
+         */
+        public Builder sink(ModelSink sink) {
+            this.sinks.add(sink);
+            return this;
+        }
+
+        /**
+         * @param context caches to share with other jobs, or null
+         */
+        public Builder context(ConversionContext context) {
+            this.context = context;
+            return this;
+        }
+
+        public ConversionJob build() {
+            if (outputFile == null && sinks.isEmpty() && shardFile == null) {
+                throw new IllegalStateException("No output file or sink");
+            }
+            if (xmlBase == null) {
+                throw new IllegalStateException("No xml:base");
+            }
+            if (spillDir != null
+                && (outputFile == null || binaryOutput || removeDangling || !sinks.isEmpty() || shardFile != null))
+            {
+                throw new IllegalStateException("The spill merge writes just the output file: "
+                    + "no dangling objects removal, binary output, shards or sinks");
+            }
+            return new ConversionJob(this);
+        }
+    }
+}
@@ -1,26 +1,23 @@
 package org.ctdbase;
 
-import org.apache.commons.lang3.StringUtils;
-import org.biopax.paxtools.model.level3.UtilityClass;
-import org.ctdbase.converter.CTDChemicalConverter;
-import org.ctdbase.converter.CTDGeneConverter;
-import org.ctdbase.converter.CTDInteractionConverter;
-import org.ctdbase.converter.Converter;
 import org.apache.commons.cli.*;
-import org.biopax.paxtools.controller.Merger;
-import org.biopax.paxtools.controller.ModelUtils;
-import org.biopax.paxtools.io.SimpleIOHandler;
-import org.biopax.paxtools.model.BioPAXElement;
-import org.biopax.paxtools.model.Model;
+import org.ctdbase.io.IxnIndex;
+import org.ctdbase.io.IxnSnapshot;
+import org.ctdbase.io.ModelSnapshot;
+import org.ctdbase.util.CtdDataGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Set;
-import java.util.zip.GZIPInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CtdToBiopax {
     private static Logger log = LoggerFactory.getLogger(CtdToBiopax.class);
@@ -28,89 +25,192 @@ public class CtdToBiopax {
 
     public static void main( String[] args ) {
         final CommandLineParser clParser = new GnuParser();
-        Options gnuOptions = new Options();
+        Options gnuOptions = options();
         gnuOptions
-                .addOption("x", "interaction", true, "structured chemical-gene interaction file (XML) [optional]")
-                .addOption("g", "gene", true, "CTD gene vocabulary (CSV) [optional]")
-                .addOption("c", "chemical", true, "CTD chemical vocabulary (CSV) [optional]")
-                .addOption("o", "output", true, "Output (BioPAX file) [required]")
-                .addOption("t", "taxonomy", true, "Taxonomy (e.g. '9606' for human) [optional]")
-                .addOption("r", "remove-dangling", false,
-                    "Remove dangling UtilityClass objects from final model [optional; recommended when using options: -x -t]")
+                .addOption("m", "manifest", true,
+                    "Run the jobs listed in this file, one per line, as the -x, -g, -c, -o, -t, -r, -j, -s, -b, etc. options; "
+                        + "the jobs share the converted vocabularies [optional]")
+                .addOption("d", "daemon", true,
+                    "Run as a server that takes conversion jobs from this spool directory (see SpoolServer) [optional]")
+                .addOption("n", "threads", true,
+                    "Max. number of jobs the server or manifest run does at the same time [optional; default: 1]")
+                .addOption("y", "synthetic", true,
+                    "Generate a synthetic CTD data set of this many interactions (and the gene and chemical files) "
+                        + "into the -o directory, using the -e seed, e.g. for scale tests [optional]")
+                .addOption("z", "index", false,
+                    "Index the -x file by ixn, chemical and gene id, for -f (a .gz file is decompressed next to it "
+                        + "first), and exit [optional]")
         ;
 
         try {
             CommandLine commandLine = clParser.parse(gnuOptions, args);
+            int threads = Integer.parseInt(commandLine.getOptionValue("n", "1"));
 
-            // Interaction file and output file name are required!
-            if(!commandLine.hasOption("o")) {
-                HelpFormatter helpFormatter = new HelpFormatter();
-                helpFormatter.printHelp(helpText, gnuOptions);
-                System.exit(-1);
+            if(commandLine.hasOption("d")) {
+                new SpoolServer(Paths.get(commandLine.getOptionValue("d")), threads).run();
+                return;
             }
 
-            SimpleIOHandler simpleIOHandler = new SimpleIOHandler();
-            Merger merger = new Merger(simpleIOHandler.getEditorMap());
-            Model finalModel = simpleIOHandler.getFactory().createModel();
-
-            // First convert the interactions
-            if(commandLine.hasOption("x")) {
-                String fileName = commandLine.getOptionValue("x");
-                String taxonomy = null;
-                if(commandLine.hasOption("t")) {
-                    taxonomy = commandLine.getOptionValue("t");
-                    log.info("Will do only interactions with taxonomy: " + taxonomy);
-                }
-                Converter converter = new CTDInteractionConverter(taxonomy);
-                log.info("Option 'x'. Using " + converter.getClass().getSimpleName() + " to convert: " + fileName);
-                Model model = converter.convert(inputDataStream(fileName));
-                merger.merge(finalModel, model);
+            if(commandLine.hasOption("y") && commandLine.hasOption("o")) {
+                new CtdDataGenerator(Long.parseLong(commandLine.getOptionValue("e", "1")))
+                    .generate(Paths.get(commandLine.getOptionValue("o")),
+                        Long.parseLong(commandLine.getOptionValue("y")));
+                return;
             }
 
-            if(commandLine.hasOption("g")) {
-                String fileName = commandLine.getOptionValue("g");
-                Converter converter = new CTDGeneConverter();
-                log.info("Option 'g'. Using " + converter.getClass().getSimpleName() + " to convert: " + fileName);
-                Model model = converter.convert(inputDataStream(fileName));
-                merger.merge(finalModel, model);
+            if(commandLine.hasOption("z") && commandLine.hasOption("x")) {
+                IxnIndex.build(Paths.get(commandLine.getOptionValue("x")));
+                return;
             }
 
-            if(commandLine.hasOption("c")) {
-                String fileName = commandLine.getOptionValue("c");
-                Converter converter = new CTDChemicalConverter();
-                log.info("Option 'c'. Using " + converter.getClass().getSimpleName() + " to convert: " + fileName);
-                Model model = converter.convert(inputDataStream(fileName));
-                merger.merge(finalModel, model);
+            if(commandLine.hasOption("m")) {
+                int failed = runManifest(Paths.get(commandLine.getOptionValue("m")), threads);
+                if(failed > 0) {
+                    System.exit(1);
+                }
+                return;
             }
 
-            if(commandLine.hasOption("r")) {
-                Set<BioPAXElement> removed = ModelUtils.removeObjectsIfDangling(finalModel, UtilityClass.class);
-                log.info("Removed " + removed.size() + " dangling UtilityClass objects from the model.");
+            // Interaction file and output file name are required!
+            if(!commandLine.hasOption("o")) {
+                HelpFormatter helpFormatter = new HelpFormatter();
+                helpFormatter.printHelp(helpText, gnuOptions);
+                System.exit(-1);
             }
 
-            finalModel.setXmlBase(Converter.sharedXMLBase);
-            String outputFile = commandLine.getOptionValue("o");
-            log.info("Done with the conversions. Converting the final model to OWL: " + outputFile);
-            FileOutputStream outputStream = new FileOutputStream(outputFile);
-            simpleIOHandler.convertToOWL(finalModel, outputStream);
-
+            job(commandLine).build().run();
             log.info("All done.");
-        } catch (ParseException e) {
+        } catch (ParseException | IllegalArgumentException e) {
             System.err.println(e.getMessage());
             HelpFormatter helpFormatter = new HelpFormatter();
             helpFormatter.printHelp(helpText, gnuOptions);
             System.exit(-1);
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            log.warn("Interrupted");
         }
     }
 
-    static InputStream inputDataStream(String fileName) throws IOException {
-        InputStream inputStream = new FileInputStream(fileName);
-        if (StringUtils.endsWith(fileName, ".gz")) {
-            inputStream = new GZIPInputStream(inputStream);
+    // the options of a single conversion job
+    static Options options() {
+        Options gnuOptions = new Options();
+        gnuOptions
+                .addOption("x", "interaction", true, "structured chemical-gene interaction file (XML) [optional]")
+                .addOption("g", "gene", true, "CTD gene vocabulary (CSV) [optional]")
+                .addOption("c", "chemical", true, "CTD chemical vocabulary (CSV) [optional]")
+                .addOption("o", "output", true, "Output (BioPAX file) [required]")
+                .addOption("t", "taxonomy", true,
+                    "Taxonomy (e.g. '9606' for human, or several comma-separated ids) [optional]")
+                .addOption("r", "remove-dangling", false,
+                    "Remove dangling UtilityClass objects from final model [optional; recommended when using options: -x -t]")
+                .addOption("j", "join", false,
+                    "Convert only the genes and chemicals the converted interactions refer to [optional; use with -x -g/-c]")
+                .addOption("s", "snapshot", false,
+                    "Convert the interactions from the binary snapshot next to the -x file ('" + IxnSnapshot.EXTENSION
+                        + "' extension) if it's up to date, or else parse the XML and save the snapshot [optional]")
+                .addOption("l", "limit", true,
+                    "Convert only the first N (selected) interactions, e.g. for a quick test run [optional]")
+                .addOption("p", "sample-rate", true,
+                    "Convert a random sample of the interactions, e.g. 0.01 (1%) [optional]")
+                .addOption("e", "seed", true,
+                    "Sampling seed; the same seed and rate select the same interactions [optional; default: 1]")
+                .addOption("i", "ixn-ids", true,
+                    "Convert only the interactions with the ids listed in this file, one per line [optional]")
+                .addOption("f", "select", true,
+                    "Convert only the interactions with the ixn, chemical (MESH:...) or gene (GENE:...) ids "
+                        + "listed in this file, one per line, reading just those via the -x file's index (see -z) [optional]")
+                .addOption("v", "vocabulary-limit", true,
+                    "Read only the first N rows of the gene and chemical files [optional]")
+                .addOption("w", "workers", true,
+                    "Decompress and parse the interactions in pipeline threads, ahead of the conversion, "
+                        + "and write the -u shards with this many threads [optional]")
+                .addOption("q", "parse-threads", true,
+                    "Parse the interactions XML with this many threads, each a byte range of whole interactions "
+                        + "(best with an uncompressed -x file) [optional]")
+                .addOption("a", "heap-report", true,
+                    "Write the object counts, estimated bytes and property fan-out per BioPAX type "
+                        + "of each converter's model and of the final one to this CSV file [optional]")
+                .addOption("k", "spill", true,
+                    "Merge the converted models on disk, using this directory for the temporary files, "
+                        + "rather than in memory, for a large output with bounded memory (no -r, -b, -u) [optional]")
+                .addOption("2", "two-pass", false,
+                    "Convert the interactions in two passes (in the pipeline): make the entities of all the actors "
+                        + "first, then the interactions, referring to them [optional]")
+                .addOption("u", "shards", true,
+                    "Also write an archive of a BioPAX document per chemical (the interactions it controls, "
+                        + "with the objects they refer to) and its lookup index to this file, "
+                        + "in parallel (see ShardArchive) [optional]")
+                .addOption("b", "binary", false,
+                    "Also save the final model as a binary snapshot next to the -o file ('" + ModelSnapshot.EXTENSION
+                        + "' extension), for fast reloading with ModelSnapshot.load [optional]")
+        ;
+        return gnuOptions;
+    }
+
+    static ConversionJob.Builder job(CommandLine commandLine) {
+        return ConversionJob.builder()
+            .interactions(commandLine.getOptionValue("x"))
+            .genes(commandLine.getOptionValue("g"))
+            .chemicals(commandLine.getOptionValue("c"))
+            .output(commandLine.getOptionValue("o"))
+            .taxonomy(commandLine.getOptionValue("t"))
+            .removeDangling(commandLine.hasOption("r"))
+            .snapshot(commandLine.hasOption("s"))
+            .join(commandLine.hasOption("j"))
+            .limit(Long.parseLong(commandLine.getOptionValue("l", "-1")))
+            .sample(Double.parseDouble(commandLine.getOptionValue("p", "1")),
+                Long.parseLong(commandLine.getOptionValue("e", "1")))
+            .ixnIds(commandLine.getOptionValue("i"))
+            .vocabularyLimit(Long.parseLong(commandLine.getOptionValue("v", "-1")))
+            .workers(Integer.parseInt(commandLine.getOptionValue("w", "0")))
+            .parseThreads(Integer.parseInt(commandLine.getOptionValue("q", "0")))
+            .binary(commandLine.hasOption("b"))
+            .heapReport(commandLine.getOptionValue("a"))
+            .spill(commandLine.getOptionValue("k"))
+            .twoPass(commandLine.hasOption("2"))
+            .select(commandLine.getOptionValue("f"))
+            .shards(commandLine.getOptionValue("u"));
+    }
+
+    /*
+     * Runs the manifest's jobs (non-empty lines, except for #comments), in the same JVM, sharing the caches.
+     * Returns the number of failed jobs.
+     */
+    static int runManifest(Path manifest, int threads) throws IOException, ParseException, InterruptedException {
+        ConversionContext context = new ConversionContext();
+        List<ConversionJob> jobs = new ArrayList<>();
+        int lineNo = 0;
+        for(String line : Files.readAllLines(manifest)) {
+            lineNo++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            CommandLine commandLine = new GnuParser().parse(options(), line.split("\\s+"));
+            if(!commandLine.hasOption("o")) {
+                throw new ParseException("No output (-o) in " + manifest + " line " + lineNo);
+            }
+            jobs.add(job(commandLine).name("job" + lineNo).context(context).build());
+        }
+        log.info("Running " + jobs.size() + " jobs from " + manifest + " with " + threads + " threads");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger failed = new AtomicInteger();
+        for(ConversionJob job : jobs) {
+            executor.execute(() -> {
+                try {
+                    job.run();
+                } catch (Exception e) {
+                    log.error(job.getName() + " failed", e);
+                    failed.incrementAndGet();
+                }
+            });
         }
-        return inputStream;
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        log.info("All done; failed jobs: " + failed.get() + "; shared caches: " + context);
+        return failed.get();
     }
 
 }
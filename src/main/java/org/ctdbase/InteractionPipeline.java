@@ -0,0 +1,339 @@
+package org.ctdbase;
+
+import org.apache.commons.lang3.StringUtils;
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.ctdbase.converter.TargetModel;
+import org.ctdbase.io.IxnRecordReader;
+import org.ctdbase.util.Diagnostics;
+import org.ctdbase.util.MeteredQueue;
+import org.ctdbase.util.model.IxnRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Converts the interactions in stages that run at the same time, connected by bounded queues:
+ * <ol>
+ *     <li>decompress - inflates a gzipped input file into chunks (one thread; only for a .gz file);</li>
+ *     <li>parse - reads the records (from the XML or a snapshot) and groups them in batches (one thread);</li>
+ *     <li>convert - converts the batches, in the input order, into one model (the calling thread),
+ *     and passes on the converted records' own elements to a sink, if any.</li>
+ * </ol>
+ * The first record that refers to a process or an entity makes it (see {@link CTDInteractionConverter}),
+ * so one converter converts all the records in the input order, and the model is the same as
+ * {@link CTDInteractionConverter#convert(IxnRecordReader)} makes, with or without the stage threads.
+ * The number of batches queued for the conversion is bounded, so that a slow stage holds the previous ones back
+ * instead of letting the memory grow. Each queue counts the time its producers were blocked
+ * and its consumers waited (see {@link #getQueues()}).
+ */
+public class InteractionPipeline implements Closeable {
+    private static Logger log = LoggerFactory.getLogger(InteractionPipeline.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int QUEUED_BATCHES = 4;
+    private static final byte[] END_OF_DATA = new byte[0];
+    private static final List<IxnRecord> END_OF_BATCHES = Collections.emptyList();
+
+    private final boolean stageThreads;
+    private final int batchSize;
+    private final Supplier<CTDInteractionConverter> converterFactory;
+    private final ExecutorService executor;
+    private final List<MeteredQueue<?>> queues = new CopyOnWriteArrayList<>();
+    private final List<CTDInteractionConverter> converters = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // for the converters that don't share their own diagnostics (otherwise, a summary per batch)
+    private final Diagnostics diagnostics = new Diagnostics(log);
+
+    /**
+     * @param stageThreads whether to decompress and parse the input in the stage threads,
+     *                     or else do all in the calling thread
+     * @param batchSize number of records in a batch
+     * @param converterFactory makes a new, set up converter
+     */
+    public InteractionPipeline(boolean stageThreads, int batchSize, Supplier<CTDInteractionConverter> converterFactory) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size: " + batchSize);
+        }
+        this.stageThreads = stageThreads;
+        this.batchSize = batchSize;
+        this.converterFactory = converterFactory;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "pipeline-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the input file; a gzipped one is inflated by the decompress stage thread.
+     *
+     * @param fileName interactions file (XML, can be gzipped)
+     * @return the (uncompressed) data
+     */
+    public InputStream open(String fileName) throws IOException {
+        InputStream in = new FileInputStream(fileName);
+        if (!StringUtils.endsWith(fileName, ".gz")) {
+            return in;
+        } else if (!stageThreads) {
+            return new GZIPInputStream(in, CHUNK_SIZE);
+        }
+        MeteredQueue<byte[]> chunks = new MeteredQueue<>("parse-input", 16);
+        queues.add(chunks);
+        AtomicReference<IOException> error = new AtomicReference<>();
+        executor.execute(() -> {
+            try (InputStream gz = new GZIPInputStream(in, CHUNK_SIZE)) {
+                byte[] chunk;
+                while ((chunk = gz.readNBytes(CHUNK_SIZE)).length > 0) {
+                    chunks.put(chunk);
+                }
+            } catch (IOException e) {
+                error.set(e);
+            } catch (InterruptedException e) {
+                return; //closed
+            }
+            try {
+                chunks.put(END_OF_DATA);
+            } catch (InterruptedException e) {
+                //closed
+            }
+        });
+        return new ChunkInputStream(chunks, error);
+    }
+
+    /**
+     * Converts all the records into a new model.
+     *
+     * @param reader interaction records source; it's read by the parse stage thread, if any
+     * @return the model
+     * @throws IOException when the records cannot be read
+     */
+    public Model convert(IxnRecordReader reader) throws IOException {
+        CTDInteractionConverter converter = newConverter();
+        TargetModel target = new TargetModel(converter.createNewModel());
+        convert(reader, converter, target, 0, null);
+        return target.getModel();
+    }
+
+    /**
+     * Converts all the records, and passes the model on to the sink (in the calling thread) in parts:
+     * the elements made for the records' own ixn nodes (e.g. controls), detached after about every runSize records
+     * (see {@link CTDInteractionConverter#detachRecordElements()}), and, at the end, the rest, which the records
+     * share (e.g. processes, entities and xrefs). So only these and a run of the records' elements are in memory.
+     *
+     * @param reader interaction records source; it's read by the parse stage thread, if any
+     * @param runSize number of the records to pass on the elements of together
+     * @param sink where to put the parts of the model
+     * @throws IOException when the records cannot be read, or the sink fails
+     */
+    public void convert(IxnRecordReader reader, int runSize, ModelSink sink) throws IOException {
+        CTDInteractionConverter converter = newConverter();
+        converter.setCollectRecordElements(true);
+        TargetModel target = new TargetModel(converter.createNewModel());
+        convert(reader, converter, target, Math.max(1, runSize), sink);
+        sink.write(target.getModel());
+    }
+
+    // converts the batches in the input order, and passes on the detached record elements, if there's a sink
+    private void convert(IxnRecordReader reader, CTDInteractionConverter converter, TargetModel target,
+                         int runSize, ModelSink sink) throws IOException
+    {
+        MeteredQueue<List<IxnRecord>> batches = null;
+        if (stageThreads) {
+            batches = new MeteredQueue<>("convert", QUEUED_BATCHES);
+            queues.add(batches);
+            MeteredQueue<List<IxnRecord>> queue = batches;
+            executor.execute(() -> parse(reader, queue));
+        }
+        long converted = 0;
+        long run = 0;
+        List<IxnRecord> batch = null;
+        while ((batch = (batches != null) ? takeBatch(batches) : readBatch(reader, batch)) != END_OF_BATCHES) {
+            converter.convert(new BatchReader(batch), target);
+            converted++;
+            run += batch.size();
+            if (sink != null && run >= runSize) {
+                sink.write(converter.detachRecordElements());
+                run = 0;
+            }
+        }
+        if (sink != null && run > 0) {
+            sink.write(converter.detachRecordElements());
+        }
+        log.info("Converted " + converted + " batches of up to " + batchSize + " interactions "
+            + ((stageThreads) ? "with the stage threads; " + queues : "in the calling thread"));
+        diagnostics.logSummary("");
+    }
+
+    // the batch of the records after the previous one (null - the first), or END_OF_BATCHES
+    private List<IxnRecord> readBatch(IxnRecordReader reader, List<IxnRecord> previous) throws IOException {
+        if (previous != null && previous.size() < batchSize) {
+            return END_OF_BATCHES; //the reader has returned null
+        }
+        List<IxnRecord> records = new ArrayList<>(batchSize);
+        IxnRecord rec;
+        while (records.size() < batchSize && (rec = reader.read()) != null) {
+            records.add(rec);
+        }
+        return (records.isEmpty()) ? END_OF_BATCHES : records;
+    }
+
+    // the next batch from the parse stage, or END_OF_BATCHES
+    private List<IxnRecord> takeBatch(MeteredQueue<List<IxnRecord>> batches) throws IOException {
+        try {
+            List<IxnRecord> batch;
+            do {
+                checkFailure();
+                batch = batches.poll(100, TimeUnit.MILLISECONDS);
+            } while (batch == null);
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    // the parse stage: reads the records, and queues them in batches
+    private void parse(IxnRecordReader reader, MeteredQueue<List<IxnRecord>> batches) {
+        try {
+            List<IxnRecord> batch = null;
+            do {
+                batch = readBatch(reader, batch);
+                batches.put(batch);
+            } while (batch != END_OF_BATCHES);
+        } catch (InterruptedException e) {
+            //closed
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private CTDInteractionConverter newConverter() {
+        CTDInteractionConverter converter = converterFactory.get();
+        if (converter.getDiagnostics() == null) {
+            converter.setDiagnostics(diagnostics);
+        }
+        converters.add(converter);
+        return converter;
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e != null) {
+            throw new IOException("Pipeline stage failed: " + e, e);
+        }
+    }
+
+    /**
+     * @return the queues between the stages, with their metrics
+     */
+    public List<MeteredQueue<?>> getQueues() {
+        return Collections.unmodifiableList(queues);
+    }
+
+    /**
+     * @return the converters (one for each conversion)
+     */
+    public List<CTDInteractionConverter> getConverters() {
+        return Collections.unmodifiableList(converters);
+    }
+
+    /**
+     * Stops the stage threads.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // a batch's records
+    private static final class BatchReader implements IxnRecordReader {
+        private final Iterator<IxnRecord> records;
+
+        BatchReader(List<IxnRecord> batch) {
+            this.records = batch.iterator();
+        }
+
+        @Override
+        public IxnRecord read() {
+            return records.hasNext() ? records.next() : null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // the decompress stage's output as an input stream
+    private static final class ChunkInputStream extends InputStream {
+        private final MeteredQueue<byte[]> chunks;
+        private final AtomicReference<IOException> error;
+        private byte[] chunk = new byte[0];
+        private int pos;
+
+        ChunkInputStream(MeteredQueue<byte[]> chunks, AtomicReference<IOException> error) {
+            this.chunks = chunks;
+            this.error = error;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? (chunk[pos++] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        private boolean next() throws IOException {
+            while (chunk != END_OF_DATA && pos == chunk.length) {
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+                pos = 0;
+            }
+            if (chunk == END_OF_DATA && error.get() != null) {
+                throw error.get();
+            }
+            return chunk != END_OF_DATA;
+        }
+    }
+}
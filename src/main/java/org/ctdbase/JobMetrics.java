@@ -0,0 +1,153 @@
+package org.ctdbase;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Run metrics of a {@link ConversionJob}: wall-clock and CPU time, bytes allocated by the job's thread,
+ * per-stage times, the model and output sizes, and other counters (e.g. of the pipeline queues).
+ * Not thread-safe; a job updates its metrics from the thread that runs it.
+ */
+public class JobMetrics {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, Long> stageMillis = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private long startNanos;
+    private long startCpu;
+    private long startAllocated;
+    private long stageStart;
+    private long wallMillis;
+    private long cpuMillis = -1;
+    private long allocatedBytes = -1;
+    private int objects;
+    private int removedDangling;
+    private long outputBytes;
+    private String stringPool;
+
+    void start() {
+        startNanos = System.nanoTime();
+        stageStart = startNanos;
+        startCpu = cpuTime();
+        startAllocated = allocatedBytes();
+    }
+
+    /**
+     * Ends the current stage (begun at the previous call, or at the start).
+     */
+    void stage(String name) {
+        long now = System.nanoTime();
+        stageMillis.merge(name, (now - stageStart) / 1000000, Long::sum);
+        stageStart = now;
+    }
+
+    void stop() {
+        wallMillis = (System.nanoTime() - startNanos) / 1000000;
+        long cpu = cpuTime();
+        cpuMillis = (cpu < 0 || startCpu < 0) ? -1 : (cpu - startCpu) / 1000000;
+        long allocated = allocatedBytes();
+        allocatedBytes = (allocated < 0 || startAllocated < 0) ? -1 : allocated - startAllocated;
+    }
+
+    void setObjects(int objects) {
+        this.objects = objects;
+    }
+
+    void setRemovedDangling(int removedDangling) {
+        this.removedDangling = removedDangling;
+    }
+
+    void setOutputBytes(long outputBytes) {
+        this.outputBytes = outputBytes;
+    }
+
+    void setCounter(String name, long value) {
+        counters.put(name, value);
+    }
+
+    void setStringPool(String stringPool) {
+        this.stringPool = stringPool;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    /**
+     * @return CPU time of the job's thread, or -1 if not supported by the JVM
+     */
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    /**
+     * @return bytes allocated by the job's thread, or -1 if not supported by the JVM
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public Map<String, Long> getStageMillis() {
+        return stageMillis;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public int getObjects() {
+        return objects;
+    }
+
+    public int getRemovedDangling() {
+        return removedDangling;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public Properties toProperties() {
+        Properties p = new Properties();
+        p.setProperty("wall-ms", String.valueOf(wallMillis));
+        p.setProperty("cpu-ms", String.valueOf(cpuMillis));
+        p.setProperty("allocated-bytes", String.valueOf(allocatedBytes));
+        for (Map.Entry<String, Long> e : stageMillis.entrySet()) {
+            p.setProperty("stage." + e.getKey() + "-ms", String.valueOf(e.getValue()));
+        }
+        p.setProperty("objects", String.valueOf(objects));
+        p.setProperty("removed-dangling", String.valueOf(removedDangling));
+        p.setProperty("output-bytes", String.valueOf(outputBytes));
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            p.setProperty(e.getKey(), String.valueOf(e.getValue()));
+        }
+        if (stringPool != null) {
+            p.setProperty("string-pool", stringPool);
+        }
+        return p;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ms (cpu %d ms), allocated %d bytes, stages %s, %d objects (%d dangling removed), "
+            + "output %d bytes; string pool: %s%s", wallMillis, cpuMillis, allocatedBytes, stageMillis,
+            objects, removedDangling, outputBytes, stringPool, counters.isEmpty() ? "" : "; " + counters);
+    }
+
+    private static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+            if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled()) {
+                return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
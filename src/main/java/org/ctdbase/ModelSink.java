@@ -0,0 +1,46 @@
+package org.ctdbase;
+
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.io.ModelSnapshot;
+import org.ctdbase.io.OwlWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Where a {@link ConversionJob} puts the final model: a file, or e.g. a collection in memory.
+ */
+@FunctionalInterface
+public interface ModelSink {
+
+    /**
+     * @param model the converted BioPAX model
+     * @return the number of bytes written, or -1 when not applicable
+     */
+    long write(Model model) throws IOException;
+
+    /**
+     * @return a sink that writes the model to the BioPAX RDF/XML (OWL) file (see {@link OwlWriter})
+     */
+    static ModelSink owl(Path file) {
+        return model -> {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                OwlWriter.write(model, out);
+            }
+            return Files.size(file);
+        };
+    }
+
+    /**
+     * @return a sink that writes the model to the binary snapshot file (see {@link ModelSnapshot})
+     */
+    static ModelSink binary(Path file) {
+        return model -> {
+            ModelSnapshot.write(model, file);
+            return Files.size(file);
+        };
+    }
+}
@@ -0,0 +1,213 @@
+package org.ctdbase;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-running conversion server (daemon mode) that takes {@link ConversionJob}s from a spool directory,
+ * so that repeated conversions do not pay the JVM startup, class loading and JIT warm-up each time.
+ *
+ * A job is a 'name.job' properties file whose keys are the long names of the conversion job's command line options
+ * (see {@link CtdToBiopax}), e.g. interaction, output, taxonomy, remove-dangling; it's parsed as that command line
+ * (relative paths are resolved against the spool directory; flags are 'true' or 'false').
+ * The server claims a job by renaming it to 'name.job.running', runs it on a bounded pool of threads,
+ * and then replaces it with 'name.done' or 'name.failed' that contain the job's metrics or error.
+ * Jobs wait in the spool directory while all the threads are busy; they share a {@link ConversionContext}.
+ * Creating a file named 'STOP' in the spool directory makes the server finish the claimed jobs and exit.
+ */
+public class SpoolServer {
+    private static Logger log = LoggerFactory.getLogger(SpoolServer.class);
+
+    public static final String JOB = ".job";
+    public static final String RUNNING = ".running";
+    public static final String DONE = ".done";
+    public static final String FAILED = ".failed";
+    public static final String STOP = "STOP";
+
+    // the options whose values are file or directory paths
+    private static final Set<String> PATHS = new HashSet<>(Arrays.asList(
+        "interaction", "gene", "chemical", "output", "ixn-ids", "heap-report", "spill", "select", "shards"));
+
+    private final Path spool;
+    private final int threads;
+    private long pollMillis = 1000;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    // shared by all the jobs
+    private final ConversionContext context = new ConversionContext();
+
+    /**
+     * @param spool spool directory
+     * @param threads max. number of jobs to run at the same time
+     */
+    public SpoolServer(Path spool, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        this.spool = spool;
+        this.threads = threads;
+    }
+
+    public void setPollMillis(long pollMillis) {
+        this.pollMillis = pollMillis;
+    }
+
+    /**
+     * Serves the jobs until the STOP file appears (or the thread is interrupted),
+     * and then waits for the claimed jobs to finish.
+     */
+    public void run() throws IOException, InterruptedException {
+        Files.createDirectories(spool);
+        requeueInterrupted();
+        AtomicInteger threadNo = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads), r -> new Thread(r, "job-" + threadNo.incrementAndGet()));
+        log.info("Serving conversion jobs from " + spool + " with " + threads + " threads");
+        try {
+            while (!Files.exists(spool.resolve(STOP))) {
+                for (Path job : pendingJobs()) {
+                    if (executor.getQueue().remainingCapacity() == 0) {
+                        break; //the rest wait for the next poll
+                    }
+                    Path running = claim(job);
+                    if (running != null) {
+                        executor.execute(() -> runJob(running));
+                    }
+                }
+                Thread.sleep(pollMillis);
+            }
+            log.info("Found " + STOP + " file; finishing the running jobs");
+            Files.deleteIfExists(spool.resolve(STOP));
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            log.info("Stopped; jobs done: " + done.get() + ", failed: " + failed.get() + "; shared caches: " + context);
+        }
+    }
+
+    public int getDone() {
+        return done.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    // jobs left running when the server was stopped abnormally
+    private void requeueInterrupted() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spool, "*" + JOB + RUNNING)) {
+            for (Path running : files) {
+                String name = running.getFileName().toString();
+                Path job = spool.resolve(name.substring(0, name.length() - RUNNING.length()));
+                log.warn("Re-queued the interrupted job: " + job.getFileName());
+                Files.move(running, job, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private List<Path> pendingJobs() throws IOException {
+        List<Path> jobs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spool, "*" + JOB)) {
+            for (Path job : files) {
+                jobs.add(job);
+            }
+        }
+        Collections.sort(jobs);
+        return jobs;
+    }
+
+    private Path claim(Path job) {
+        Path running = job.resolveSibling(job.getFileName() + RUNNING);
+        try {
+            return Files.move(job, running, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Cannot claim " + job.getFileName() + ": " + e);
+            return null;
+        }
+    }
+
+    private void runJob(Path running) {
+        String fileName = running.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - JOB.length() - RUNNING.length());
+        Properties result;
+        try {
+            ConversionJob job = job(name, running);
+            log.info("Started job: " + name);
+            result = job.run().toProperties();
+            result.setProperty("status", "done");
+            done.incrementAndGet();
+        } catch (Exception e) {
+            log.error("Failed job: " + name, e);
+            result = new Properties();
+            result.setProperty("status", "failed");
+            result.setProperty("error", String.valueOf(e));
+            failed.incrementAndGet();
+        }
+        boolean ok = "done".equals(result.getProperty("status"));
+        Path status = spool.resolve(name + (ok ? DONE : FAILED));
+        try {
+            try (OutputStream out = Files.newOutputStream(status)) {
+                result.store(out, "CTD conversion job " + name);
+            }
+            Files.deleteIfExists(running);
+        } catch (IOException e) {
+            log.error("Cannot write the status of job: " + name, e);
+        }
+    }
+
+    private ConversionJob job(String name, Path file) throws IOException, ParseException {
+        Properties p = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            p.load(reader);
+        }
+        CommandLine commandLine = new GnuParser().parse(CtdToBiopax.options(), arguments(p));
+        if (!commandLine.hasOption("o")) {
+            throw new IllegalArgumentException("No 'output' in the job file");
+        }
+        return CtdToBiopax.job(commandLine).name(name).context(context).build();
+    }
+
+    // the job file's properties as the command line (an unknown key is an unknown option)
+    private String[] arguments(Properties p) {
+        Options options = CtdToBiopax.options();
+        List<String> args = new ArrayList<>();
+        for (String key : new TreeSet<>(p.stringPropertyNames())) {
+            String value = p.getProperty(key).trim();
+            Option option = options.getOption(key);
+            if (option != null && !option.hasArg()) {
+                if (Boolean.parseBoolean(value)) {
+                    args.add("--" + key);
+                }
+            } else if (!value.isEmpty()) {
+                args.add("--" + key);
+                args.add(PATHS.contains(key) ? spool.resolve(value).toString() : value);
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+}
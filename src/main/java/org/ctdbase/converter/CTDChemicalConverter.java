@@ -2,10 +2,12 @@ package org.ctdbase.converter;
 
 import au.com.bytecode.opencsv.CSVReader;
 import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.Diagnostics;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.RelationshipXref;
 import org.biopax.paxtools.model.level3.SmallMoleculeReference;
 import org.biopax.paxtools.model.level3.UnificationXref;
+import org.biopax.paxtools.model.level3.Xref;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,16 +19,38 @@ public class CTDChemicalConverter extends Converter {
 
     @Override
     public Model convert(InputStream inputStream) throws IOException {
+        TargetModel target = new TargetModel(createNewModel());
+        convert(inputStream, target);
+        return target.getModel();
+    }
+
+    /**
+     * Converts the chemicals into the model, which other converters (threads) can be filling at the same time.
+     *
+     * @return the number of chemicals (small molecule references) added
+     */
+    public int convert(InputStream inputStream, TargetModel target) throws IOException {
         CSVReader reader = new CSVReader(new InputStreamReader(inputStream));
         String[] nextLine;
 
-        Model model = createNewModel();
+        Diagnostics diagnostics = beginDiagnostics(log);
+        int skipped = 0;
+        int added = 0;
+        long rows = 0;
         while((nextLine = reader.readNext()) != null) {
             // Skip commented lines
             if(nextLine[0].startsWith("#")) { continue; }
+            if(isRowLimitReached(rows++)) {
+                log.info("Read the max. " + getRowLimit() + " rows; stopped.");
+                break;
+            }
 
             if(nextLine.length < 8) {
-                log.warn(nextLine[0] + "' does not have enough columns. Skipping.");
+                diagnostics.warn("rows without enough columns (skipped)", "row " + rows + " '" + nextLine[0] + "'");
+                continue;
+            }
+            if(!accept(CtdUtil.packActorId(nextLine[1]))) {
+                skipped++;
                 continue;
             }
             /*
@@ -41,7 +65,7 @@ public class CTDChemicalConverter extends Converter {
                 8 - DrugBank IDs
              */
 
-            String chemName = nextLine[0];
+            String chemName = intern(nextLine[0]);
             String chemicalId = nextLine[1];
             String casRN = nextLine[2];
             String definition = nextLine[3];
@@ -51,23 +75,25 @@ public class CTDChemicalConverter extends Converter {
 
             String rdfId = CtdUtil.sanitizeId("ref_chemical_" + chemicalId.toLowerCase());
 
-            SmallMoleculeReference smallMoleculeReference = (SmallMoleculeReference) model.getByID(absoluteUri(rdfId));
-            if(smallMoleculeReference != null) {
-                log.warn("We already added chemical " + chemicalId + ". Skipping it.");
+            SmallMoleculeReference smallMoleculeReference = target.createIfAbsent(SmallMoleculeReference.class,
+                absoluteUri(rdfId), smr -> {
+                    smr.setDisplayName(chemName);
+                    smr.setStandardName(chemName);
+//                    for (String synonym : synonyms) {
+//                        smr.addName(synonym);
+//                    }
+                    smr.addComment(definition);
+                });
+            if(smallMoleculeReference == null) {
+                diagnostics.warn("duplicate chemicals (skipped)", chemicalId);
                 continue;
             }
-            smallMoleculeReference = create(SmallMoleculeReference.class, rdfId);
-
-            smallMoleculeReference.setDisplayName(chemName);
-            smallMoleculeReference.setStandardName(chemName);
-//            for (String synonym : synonyms) {
-//                smallMoleculeReference.addName(synonym);
-//            }
-
-            smallMoleculeReference.addComment(definition);
+            added++;
 
             String[] tokens = chemicalId.split(":"); //length=2 always
-            smallMoleculeReference.addXref(createXref(model, UnificationXref.class, tokens[0], tokens[1]));
+            Xref unificationXref = createXref(target, UnificationXref.class, tokens[0], tokens[1]);
+            Xref casXref = (casRN != null && !casRN.isEmpty())
+                ? createXref(target, RelationshipXref.class, "CAS", casRN) : null;
 
 //            for (String dbId : dbIds) {
 //                if(dbId.isEmpty()) { continue; }
@@ -80,20 +106,23 @@ public class CTDChemicalConverter extends Converter {
 //                smallMoleculeReference.addXref(createXref(model, RelationshipXref.class, "MeSH 2013", tokens[1]));
 //            }
 
-            if(casRN != null && !casRN.isEmpty()) {
-                smallMoleculeReference.addXref(createXref(model, RelationshipXref.class, "CAS", casRN));
-            }
-
-            model.add(smallMoleculeReference);
+            target.update(() -> {
+                smallMoleculeReference.addXref(unificationXref);
+                if(casXref != null) {
+                    smallMoleculeReference.addXref(casXref);
+                }
+            });
         }
 
         reader.close();
 
         log.info("Chemical conversion is complete. A total of "
-                + model.getObjects(SmallMoleculeReference.class).size()
-                + " chemicals were converted.");
+                + added
+                + " chemicals were converted."
+                + ((getIdFilter() == null) ? "" : " Skipped " + skipped + " chemicals not in the id filter."));
+        endDiagnostics();
 
-        return model;
+        return added;
     }
 
 }
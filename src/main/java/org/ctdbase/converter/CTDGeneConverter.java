@@ -2,6 +2,7 @@ package org.ctdbase.converter;
 
 import au.com.bytecode.opencsv.CSVReader;
 import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.Diagnostics;
 import org.ctdbase.util.model.GeneForm;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.*;
@@ -18,36 +19,62 @@ public class CTDGeneConverter extends Converter {
 
     @Override
     public Model convert(InputStream inputStream) throws IOException {
+        TargetModel target = new TargetModel(createNewModel());
+        convert(inputStream, target);
+        return target.getModel();
+    }
+
+    /**
+     * Converts the genes into the model, which other converters (threads) can be filling at the same time.
+     *
+     * @return the number of entity references added
+     */
+    public int convert(InputStream inputStream, TargetModel target) throws IOException {
         CSVReader reader = new CSVReader(new InputStreamReader(inputStream));
         String[] nextLine;
-        Model model = createNewModel();
+        Diagnostics diagnostics = beginDiagnostics(log);
+        int skipped = 0;
+        int added = 0;
+        long rows = 0;
 
         while((nextLine = reader.readNext()) != null) {
             // Skip commented lines
             if (nextLine[0].startsWith("#")) {
                 continue;
             }
+            if (isRowLimitReached(rows++)) {
+                log.info("Read the max. " + getRowLimit() + " rows; stopped.");
+                break;
+            }
             if(nextLine.length < 8) {
-                log.warn(nextLine[0] + "' does not have enough columns to it. Skipping.");
+                diagnostics.warn("rows without enough columns (skipped)", "row " + rows + " '" + nextLine[0] + "'");
+                continue;
+            }
+            if(!accept(CtdUtil.packGeneId(nextLine[2]))) {
+                skipped++;
                 continue;
             }
             // create an ER of different type for each gene form
             for (GeneForm geneForm : GeneForm.values()) {
-                generateReference(model, geneForm, nextLine);
+                if (generateReference(target, geneForm, nextLine) != null) {
+                    added++;
+                }
             }
         }
         reader.close();
 
         log.info("Done with the gene conversion. "
                 + "Added "
-                + model.getObjects(EntityReference.class).size()
-                + " entity references.");
+                + added
+                + " entity references."
+                + ((getIdFilter() == null) ? "" : " Skipped " + skipped + " genes not in the id filter."));
+        endDiagnostics();
 
-        return model;
+        return added;
     }
 
     private EntityReference generateReference(
-            Model model,
+            TargetModel target,
             GeneForm geneForm,
             String[] tokens)
     {
@@ -63,8 +90,8 @@ public class CTDGeneConverter extends Converter {
             7 - UniProtIds
          */
 
-        String geneSymbol = tokens[0];
-        String geneName = tokens[1];
+        String geneSymbol = intern(tokens[0]);
+        String geneName = intern(tokens[1]);
         String geneID = tokens[2];
 //        String[] altGeneIds = tokens[3].split(INTRA_FIELD_SEPARATOR);
 //        String[] synonyms = tokens[4].split(INTRA_FIELD_SEPARATOR);
@@ -75,34 +102,38 @@ public class CTDGeneConverter extends Converter {
         String rdfId = CtdUtil.sanitizeId("ref_" +  geneForm.toString().toLowerCase()
                 + "_gene_" + geneID.toLowerCase());
 
-        EntityReference entityReference = (EntityReference) model.getByID(absoluteUri(rdfId));
-        if(entityReference != null) {
-            log.warn("Already had the gene " + geneID + ". Skipping it.");
+        EntityReference entityReference = target.createIfAbsent(geneForm.getReferenceClass(), absoluteUri(rdfId), er -> {
+            er.setStandardName(geneSymbol);
+            er.setDisplayName(geneSymbol);
+            if(!geneName.isEmpty()) {
+                er.addComment(geneName);
+            }
+        });
+        if(entityReference == null) {
+            if(geneForm.ordinal() == 0) {
+                getDiagnostics().warn("duplicate genes (skipped)", geneID);
+            }
             return null;
         }
 
-        entityReference = create(geneForm.getReferenceClass(), rdfId);
-        entityReference.addXref(createXref(model, RelationshipXref.class, "hgnc.symbol", geneSymbol));
-        entityReference.addXref(createXref(model, RelationshipXref.class, "ncbigene", geneID));
-        entityReference.setStandardName(geneSymbol);
-        entityReference.setDisplayName(geneSymbol);
+        Xref symbolXref = createXref(target, RelationshipXref.class, "hgnc.symbol", geneSymbol);
+        Xref geneXref = createXref(target, RelationshipXref.class, "ncbigene", geneID);
+        target.update(() -> {
+            entityReference.addXref(symbolXref);
+            entityReference.addXref(geneXref);
+        });
 //        for (String synonym : synonyms) { //too many, can be found in other/external resources after all
 //            if(!synonym.isEmpty()) {
 //                entityReference.addName(synonym);
 //            }
 //        }
 
-        if(!geneName.isEmpty()) {
-            entityReference.addComment(geneName);
-        }
-
         // Let's skip other NCBI gene references, for they inflate the model too much...
 //        addXrefsFromArray(model, entityReference, RelationshipXref.class, "NCBI Gene", altGeneIds);
 //        addXrefsFromArray(model, entityReference, RelationshipXref.class, "BioGRID", biogridIds);
 //        addXrefsFromArray(model, entityReference, RelationshipXref.class, "PharmGKB Gene", pharmGKBIds);
 //        addXrefsFromArray(model, entityReference, RelationshipXref.class, "UniProt", uniprotIds);
 
-        model.add(entityReference);
         return entityReference;
     }
 
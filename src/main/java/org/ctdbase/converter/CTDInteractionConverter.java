@@ -1,122 +1,362 @@
 package org.ctdbase.converter;
 
 import org.apache.commons.lang3.StringUtils;
+import org.ctdbase.io.ByteXmlIxnReader;
+import org.ctdbase.io.IxnRecordReader;
 import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.Diagnostics;
+import org.ctdbase.util.LongObjectMap;
+import org.ctdbase.util.LongSet;
 import org.ctdbase.util.model.*;
+import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.*;
 import org.biopax.paxtools.model.level3.Process;
-import org.ctdbase.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
 
 /**
  * A CTD chem-gene interactions data to BioPAX L3 converter.
  *
+ * It converts into a {@link TargetModel}: the elements are got or created by URI atomically, and a record's
+ * elements are linked in one {@link TargetModel#update}, so that several converters (threads) can fill
+ * one model safely. The instance caches (entities, entity references, organisms, xrefs) hold the target's
+ * elements, which are the same for all the converters. An instance is used by one thread at a time though.
+ * The first record that refers to a process (e.g. the abundance of a gene) or an entity makes it,
+ * so the converted model depends on the order in which the records are converted: the same as with
+ * a single converter, when the records are converted in the input order (see {@link org.ctdbase.InteractionPipeline}).
+ *
  * @author armish (Arman Aksoy) - design and implementation
  * @author rodche (Igor Rodchenkov) - lots of improvements: nested reactions, complexes, entity names, ids, etc...
  */
 public class CTDInteractionConverter extends Converter {
     private static Logger log = LoggerFactory.getLogger(CTDInteractionConverter.class);
 
-    private  Model model;
-    private final String taxId;
+    private TargetModel target;
+    // taxonomy filter: lowercase taxon ids and/or the special 'defined', 'undefined' values; null - no filter
+    private final Set<String> taxIds;
+    // counted events: unknown axn codes, actor types and gene forms, reused processes, skipped ixns, etc.
+    private Diagnostics diagnostics;
+
+    // model's elements cached by the packed (actor id, form, state) key (see entityKey), and by taxon id;
+    // on a cache miss, the URI is built and the model is checked as usual.
+    private final LongObjectMap<SimplePhysicalEntity> entities = new LongObjectMap<>();
+    private final LongObjectMap<EntityReference> references = new LongObjectMap<>();
+    private final LongObjectMap<BioSource> bioSources = new LongObjectMap<>(64);
+    // SPE state, e.g. 'mutated' or a location, -> small number to pack into the key
+    private final Map<String, Integer> states = new HashMap<>();
+    // the form slot in the key for chemicals (gene forms use their ordinals)
+    private static final int CHEMICAL_FORM = GeneForm.values().length;
+    // packed ids of the genes and chemicals in the converted interactions (join mode); null - not collected
+    private LongSet referencedIds;
+    // two-pass mode: the entities made by the first pass (read-only), and the keys of the entities
+    // and entity references this converter has referred to (stubs); null - not used
+    private EntityDictionary dictionary;
+    private final LongSet usedEntities = new LongSet();
+    private final LongSet usedReferences = new LongSet();
+    // the URIs of the converted top interactions by their controller chemical's packed id; null - not collected
+    private LongObjectMap<Set<String>> shards;
+    // the elements made for the records' own ixn nodes since the last detachRecordElements(); null - not collected
+    private List<BioPAXElement> recordElements;
 
+    /**
+     * @param taxId interactions filter: a taxonomy id (e.g. '9606'), or several comma-separated ones,
+     *              'defined' (any taxon), 'undefined' (no taxon), or null (all)
+     */
     public CTDInteractionConverter(String taxId) {
-        this.taxId = taxId;
+        this((taxId == null) ? null : taxonFilter(Arrays.asList(taxId.split(","))));
+    }
+
+    private CTDInteractionConverter(Set<String> taxIds) {
+        this.taxIds = taxIds;
+    }
+
+    /**
+     * @param taxIds interactions filter: taxonomy ids, 'defined' (any taxon), 'undefined' (no taxon),
+     *               or null (all)
+     */
+    public static CTDInteractionConverter forTaxa(Collection<String> taxIds) {
+        return new CTDInteractionConverter((taxIds == null) ? null : taxonFilter(taxIds));
+    }
+
+    private static Set<String> taxonFilter(Collection<String> taxIds) {
+        Set<String> filter = new HashSet<>();
+        for (String taxId : taxIds) {
+            if (!taxId.trim().isEmpty()) {
+                filter.add(taxId.trim().toLowerCase());
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * @param referencedIds a set to add the packed ids (see {@link CtdUtil#packActorId(String)}) of the genes
+     *                      and chemicals the converted interactions refer to, e.g. to use as the vocabulary
+     *                      converters' id filter; or null
+     */
+    public void setReferencedIds(LongSet referencedIds) {
+        this.referencedIds = referencedIds;
+    }
+
+    public LongSet getReferencedIds() {
+        return referencedIds;
+    }
+
+    /**
+     * @param shards a map to add the URIs of the converted (top) interactions to, by the packed id
+     *               of their controller chemical (see {@link CtdUtil#controllerChemical(IxnRecord)}),
+     *               e.g. to write a document per chemical; or null
+     */
+    public void setShards(LongObjectMap<Set<String>> shards) {
+        this.shards = shards;
+    }
+
+    public LongObjectMap<Set<String>> getShards() {
+        return shards;
+    }
+
+    public EntityDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Makes the converter refer to the first pass entities (two-pass mode), instead of making them.
+     * Its models then have only stubs of these (see {@link EntityDictionary}), so they are to be merged
+     * with the dictionary's elements the converters have used, {@link EntityDictionary#select}.
+     *
+     * @param dictionary entities made by {@link #collectEntities(IxnRecordReader)}, or null
+     */
+    public void setDictionary(EntityDictionary dictionary) {
+        this.dictionary = dictionary;
+        usedEntities.clear();
+        usedReferences.clear();
+    }
+
+    LongSet getUsedEntities() {
+        return usedEntities;
+    }
+
+    LongSet getUsedReferences() {
+        return usedReferences;
     }
 
     @Override
-    public Model convert(InputStream inputStream) {
-        IxnSetType interactions;
-        model = createNewModel();
+    public Model convert(InputStream inputStream) throws IOException {
+        try (IxnRecordReader reader = new ByteXmlIxnReader(inputStream)) {
+            return convert(reader);
+        }
+    }
+
+    /**
+     * Converts the interaction records into a new BioPAX model.
+     *
+     * @param reader parsed CTD interactions source
+     * @return new BioPAX model
+     * @throws IOException when the records cannot be read (e.g. the document is truncated)
+     */
+    public Model convert(IxnRecordReader reader) throws IOException {
+        TargetModel target = new TargetModel(createNewModel());
+        convert(reader, target);
+        return target.getModel();
+    }
+
+    /**
+     * Converts the interaction records into the model, which other converters (threads) can be filling
+     * at the same time; or which this converter has filled with the previous records, which then goes on
+     * as if all were read at once (e.g. reuses the processes the previous records made).
+     *
+     * @param reader parsed CTD interactions source
+     * @param target the model to add the elements to
+     * @throws IOException when the records cannot be read (e.g. the document is truncated)
+     */
+    public void convert(IxnRecordReader reader, TargetModel target) throws IOException {
+        setTarget(target);
+        diagnostics = beginDiagnostics(log);
+        try {
+            IxnRecord rec;
+            while ((rec = reader.read()) != null) {
+                if(rec.getUnknownTerm() != null) {
+                    diagnostics.warn(rec.getUnknownTerm() + " (ixn skipped)", rec.getId() + " (" + rec.getUnknownValue() + ")");
+                    continue;
+                }
+                IxnRecord r = rec;
+                target.update(() -> {
+                    Interaction process = convertIxn(r, 0);
+                    if(shards != null && process != null) {
+                        addToShard(r, process);
+                    }
+                });
+            }
+        } finally {
+            endDiagnostics();
+        }
+    }
+
+    /**
+     * @param collect whether to keep track of the elements made for the records' own ixn nodes,
+     *                to detach them from the target model (see {@link #detachRecordElements()})
+     */
+    public void setCollectRecordElements(boolean collect) {
+        recordElements = (collect) ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Removes the elements made for the records' own ixn nodes since the last call - the controls,
+     * complex assemblies, complexes and co-treatments, whose URIs have the node ids, so that no other record gets
+     * them - from the target model; e.g. to spill these to disk, and keep in memory only the elements
+     * the next records can reuse.
+     *
+     * @return a new model of the detached elements
+     * @throws IllegalStateException when the converter does not collect these
+     */
+    public Model detachRecordElements() {
+        if(recordElements == null) {
+            throw new IllegalStateException("The record elements are not collected");
+        }
+        Model detached = createNewModel();
+        for(BioPAXElement bpe : recordElements) {
+            if(target.remove(bpe)) {
+                detached.add(bpe);
+            }
+        }
+        recordElements.clear();
+        return detached;
+    }
+
+    // switches to the target model, and resets the caches of another model's elements
+    private void setTarget(TargetModel target) {
+        if(target != this.target) {
+            this.target = target;
+            entities.clear();
+            references.clear();
+            bioSources.clear();
+            states.clear();
+            if(recordElements != null) {
+                recordElements.clear();
+            }
+        }
+    }
+
+    /**
+     * The first pass of a two-pass conversion: makes the entities and entity references of the actors
+     * of the interaction records (that pass the taxonomy filter), in the input order,
+     * so that they get the names and organisms the same as in the one-pass conversion.
+     * The events (e.g. unknown gene forms) are counted in the second pass only.
+     *
+     * @param reader parsed CTD interactions source
+     * @return the entities, for the second pass converters (see {@link #setDictionary(EntityDictionary)})
+     */
+    public EntityDictionary collectEntities(IxnRecordReader reader) throws IOException {
+        setTarget(new TargetModel(createNewModel()));
+        diagnostics = new Diagnostics(log);
+        LongSet referenced = referencedIds;
+        referencedIds = null; //only the converted interactions' actors are collected
         try {
-            JAXBContext jaxbContext = JAXBContext.newInstance("org.ctdbase.model");
-            Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-            interactions = (IxnSetType) ((JAXBElement) unmarshaller.unmarshal(inputStream)).getValue();
-            for (IxnType ixn : interactions.getIxn()) {
-                convertIxn(ixn);
+            IxnRecord rec;
+            while ((rec = reader.read()) != null) {
+                if(rec.getUnknownTerm() == null && isConvertedTaxon(rec)) {
+                    collectEntities(rec, 0);
+                }
+            }
+        } finally {
+            referencedIds = referenced;
+        }
+        LongObjectMap<SimplePhysicalEntity> collected = new LongObjectMap<>(entities.size());
+        entities.forEach((spe, key) -> collected.put(key, spe));
+        log.info("Collected " + collected.size() + " entities of " + target.getModel().getObjects(EntityReference.class).size()
+            + " entity references for the two-pass conversion");
+        entities.clear();
+        return new EntityDictionary(target.getModel(), collected);
+    }
+
+    private void addToShard(IxnRecord rec, Interaction process) {
+        long chemical = CtdUtil.controllerChemical(rec);
+        if(chemical < 0) {
+            diagnostics.warn("ixns without a chemical actor (in no shard)", rec.getId());
+            return;
+        }
+        Set<String> uris = shards.get(chemical);
+        if(uris == null) {
+            uris = new HashSet<>();
+            shards.put(chemical, uris);
+        }
+        uris.add(process.getUri());
+    }
+
+    // makes the (stateless) entities of the actors the ixn conversion uses
+    private void collectEntities(IxnRecord rec, int ixn) {
+        int actors = rec.getActorCount(ixn);
+        if(actors < 2) {
+            return;
+        }
+        AxnCode axnCode = CtdUtil.axnCode(rec, ixn);
+        if(axnCode != AxnCode.W && axnCode != AxnCode.B) {
+            actors = 2;
+        }
+        for(int i = 0; i < actors; i++) {
+            int actor = CtdUtil.actor(rec, ixn, i);
+            if(rec.getActorType(actor) != Actor.IXN) {
+                createSPEFromActor(rec, actor, null);
+            } else if(rec.getActorNode(actor) >= 0) {
+                collectEntities(rec, rec.getActorNode(actor));
             }
-        } catch (JAXBException e) {
-            log.error("Could not initialize the JAXB Reader. ", e);
         }
-        return model;
     }
 
-    private Interaction convertIxn(IxnType ixn)
+    // converts the top ixn (node 0) or a nested one
+    private Interaction convertIxn(IxnRecord rec, int ixn)
     {
         // the first actor is to make a Control process
-        List<ActorType> actors = ixn.getActor();
-        AxnCode axnCode = CtdUtil.axnCode(ixn);
-        if(actors.size() < 2) {
-            log.error("Ignored ixn:" + ixn.getId() + ", which has < 2 actors (violates the CTD XML schema)");
+        int actors = rec.getActorCount(ixn);
+        AxnCode axnCode = CtdUtil.axnCode(rec, ixn);
+        if(actors < 2) {
+            diagnostics.error("ixns with < 2 actors (violates the CTD XML schema; ignored)", rec.getNodeId(ixn));
+            return null;
+        } else if(actors > 2 && axnCode != AxnCode.W && axnCode != AxnCode.B) {
+            diagnostics.warn("ixns with > 2 actors (only two converted)", rec.getNodeId(ixn));
+        }
+        if(rec.getAxnCount(ixn) > 1) {
+            diagnostics.warn("ixns with more than one axn", rec.getNodeId(ixn));
+        }
+
+        //filter by organism (taxon id; nested ixns inherit the taxa)
+        if(!isConvertedTaxon(rec)) {
             return null;
-        } else if(actors.size() > 2 && axnCode != AxnCode.W && axnCode != AxnCode.B) {
-            log.warn(String.format("Ixn %s has %d actors, but we convert only two...",
-                    ixn.getId(), actors.size()));
-        }
-        if(ixn.getAxn().size() > 1) {
-            log.warn(String.format("IXN #%d has more than one axn", ixn.getId()));
-        }
-
-        //filter by organism (taxon id)
-        if(taxId != null) {
-            if(ixn.getTaxon().isEmpty()) {
-                if(!"undefined".equalsIgnoreCase(taxId))
-                    return null; //skip for undefined species ixn when 'defined' was requested
-            } else if("undefined".equalsIgnoreCase(taxId)) {
-                return null; //skip when the taxon id is set but 'undefined' was requested
-            } else if(!"defined".equalsIgnoreCase(taxId)) {
-                //here <taxon/> is not empty, and we also want a particular id=taxId -
-                boolean taxonMismatch = true;
-                for (TaxonType taxonType : ixn.getTaxon()) {
-                    if (taxId.equalsIgnoreCase(taxonType.getId())) {
-                        taxonMismatch = false; //matched; process this entry below
-                        break;
-                    }
-                }
-                if (taxonMismatch)
-                    return null; //skip then
-            }
-            //else - convert (one or more organisms are there defined but we don't care which)
         }
-        //else - convert (regardless defined or undefined organism it is)
 
         // Converting current ixn entry.
 
         // Create the interaction object from the ixn's second actor
-        Interaction process = createInteraction(ixn);
+        Interaction process = createInteraction(rec, ixn);
         if(process==null) {
-            log.warn("Skipped - failed to generate a sub-process from the second actor");
+            diagnostics.warn("ixns skipped - failed to generate a sub-process from the second actor", rec.getNodeId(ixn));
             return null;
         }
 
         // Create a Contol (from the first actor) unless the process is binding or co-treatment
         if(!axnCode.equals(AxnCode.B) && !axnCode.equals(AxnCode.W)) {
-            Control control = createControlFromActor(process, ixn);
+            Control control = createControlFromActor(process, rec, ixn);
             control.addControlled(process);
             process = control;
         }
 
-        // add publication xrefs
-        for (ReferenceType referenceType : ixn.getReference()) {
-            final String pmid = referenceType.getPmid().toString();
-            process.addXref(createXref(model, PublicationXref.class, "pubmed", pmid)); //finds or adds the xref to model as well
+        // add publication xrefs (references belong to the top ixn only)
+        if(ixn == 0) {
+            for (int i = 0; i < rec.getPmidCount(); i++) {
+                process.addXref(createPubmedXref(target, rec.getPmid(i))); //finds or adds the xref to model as well
+            }
         }
 
         return process;
     }
 
-    private ControlType controlTypeAction(AxnType action, AxnCode axnCode) {
-        if(action!=null && action.getDegreecode()!=null) {
-            switch (action.getDegreecode().charAt(0)) {
+    private ControlType controlTypeAction(char degree, AxnCode axnCode) {
+        if(degree != 0) {
+            switch (degree) {
                 case '+':
                     return (axnCode!=AxnCode.STA) ? ControlType.ACTIVATION : ControlType.INHIBITION;
                 case '-':
@@ -130,62 +370,62 @@ public class CTDInteractionConverter extends Converter {
         return null;
     }
 
-    private Interaction createInteraction(IxnType ixn)
+    private Interaction createInteraction(IxnRecord rec, int ixn)
     {
-        AxnCode axnCode = CtdUtil.axnCode(ixn);
-        ActorType actor = ixn.getActor().get(1); //all the create* methods here use this actor too
+        AxnCode axnCode = CtdUtil.axnCode(rec, ixn);
+        int actor = CtdUtil.actor(rec, ixn, 1); //all the create* methods here use this actor too
 
         String processRdfId;
         if(axnCode == AxnCode.B || axnCode == AxnCode.W)
-            processRdfId = String.format("%s_%s", axnCode, ixn.getId());
+            processRdfId = String.format("%s_%s", axnCode, rec.getNodeId(ixn));
         else
-            processRdfId =  String.format("%s_%s", axnCode, CtdUtil.sanitizeId(actor.getId()));
+            processRdfId =  String.format("%s_%s", axnCode, CtdUtil.sanitizeId(rec.getActorId(actor)));
 
-        Interaction process = (Interaction) model.getByID(absoluteUri(processRdfId));
+        Interaction process = (Interaction) target.get(absoluteUri(processRdfId));
         if(process != null) {
-            log.info("using existing " + process.getModelInterface().getSimpleName() + ": " + processRdfId);
+            diagnostics.info("reused existing processes", processRdfId);
             return process;
         }
 
         //a shortcut when the actor has 'ixn' type (nested processes),
         // except for binding -
-        if((CtdUtil.extractActor(actor)==Actor.IXN && axnCode != AxnCode.B && axnCode != AxnCode.W)
+        if((rec.getActorType(actor)==Actor.IXN && axnCode != AxnCode.B && axnCode != AxnCode.W)
                 || axnCode == AxnCode.RXN)
         {
             try {
-                IxnType subIxn = CtdUtil.convertActorToIxn(actor, ixn);
-                process = convertIxn(subIxn);
+                int subIxn = subIxn(rec, actor);
+                process = convertIxn(rec, subIxn);
                 return process;
             } catch (Exception e) {
-                log.error("Skipped due to error: " + e);
+                diagnostics.error("ixns skipped due to error", rec.getNodeId(ixn) + " (" + e.getMessage() + ")");
                 return null;
             }
         }
 
         switch (axnCode) {
             case EXP:
-                process = createTemplateReaction(ixn, processRdfId);
+                process = createTemplateReaction(rec, ixn, processRdfId);
                 break;
             case B: //complex or binding
-                process = createBindingReaction(ixn, processRdfId);
+                process = createBindingReaction(rec, ixn, processRdfId);
                 break;
             case W:   // co-treatment effect
             case REC: // response to substance
             case ACT: // activity
-                process = createBlackboxControl(ixn, processRdfId);
+                process = createBlackboxControl(rec, ixn, processRdfId);
                 break;
             case ABU: // abundance
             case CSY: // synthesis
-                process = createConversion(ixn, processRdfId,false,true);
+                process = createConversion(rec, ixn, processRdfId,false,true);
                 break;
             case MET: // metabolism
-                process = createConversion(ixn, processRdfId, true, false);
+                process = createConversion(rec, ixn, processRdfId, true, false);
                 break;
             case MUT: // mutation
             case SPL: // splicing
             case CLV: // cleavage
             case FOL: // folding
-                process = createConversion(ixn, processRdfId, true, true);
+                process = createConversion(rec, ixn, processRdfId, true, true);
                 break;
             // The following are all metabolic reactions identified by the PTM name
             // So we will just use the modifier name generically for all these
@@ -223,26 +463,25 @@ public class CTDInteractionConverter extends Converter {
             case DEG:
             case HYD:
             case STA: // stability (stable - inhibited degradation; unstable - activated degradation)
-                process = createDegradation(ixn, processRdfId);
+                process = createDegradation(rec, ixn, processRdfId);
                 break;
             case RXN: // Reaction
                 //already done
-                throw new IllegalStateException("Should not get here...; ixn:" + ixn.getId());
+                throw new IllegalStateException("Should not get here...; ixn:" + rec.getNodeId(ixn));
             case EXT:
             case SEC:
-                process = createTransport(ixn, processRdfId, null, "extracellular matrix");
+                process = createTransport(rec, ixn, processRdfId, null, "extracellular matrix");
                 break;
             case UPT:
             case IMT:
-                process = createTransport(ixn, processRdfId, "extracellular matrix", null);
+                process = createTransport(rec, ixn, processRdfId, "extracellular matrix", null);
                 break;
             case TRT: // transport
             case LOC: // localization
-                process = createTransport(ixn, processRdfId, null, null);
+                process = createTransport(rec, ixn, processRdfId, null, null);
                 break;
             default:
-                log.error(String.format("Ignored ixn:%s having axn code:%s - mapping is not implemented yet",
-                        ixn.getId(), axnCode));
+                diagnostics.error("ixns ignored - axn code mapping is not implemented", rec.getNodeId(ixn) + " " + axnCode);
                 break;
         }
 
@@ -250,41 +489,40 @@ public class CTDInteractionConverter extends Converter {
     }
 
     // Converts an ixn (axn code='b' of course) to a complex assembly process
-    private Interaction createBindingReaction(IxnType ixn, String processId) {
-        List<ActorType> actors = ixn.getActor();
-        ComplexAssembly complexAssembly = (ComplexAssembly) model.getByID(absoluteUri(processId));
+    private Interaction createBindingReaction(IxnRecord rec, int ixn, String processId) {
+        ComplexAssembly complexAssembly = (ComplexAssembly) target.get(absoluteUri(processId));
         if(complexAssembly == null)
         {
-            complexAssembly = create(ComplexAssembly.class, processId);
-            setNameFromIxnType(ixn, complexAssembly, true);
-            Complex complex = create(Complex.class, "complex_" + ixn.getId());
-            model.add(complex);
+            complexAssembly = recordElement(getOrCreate(target, ComplexAssembly.class, processId, ca -> {
+                setNameFromIxn(rec, ixn, ca, true);
+                ca.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
+            }));
+            Complex complex = recordElement(getOrCreate(target, Complex.class, "complex_" + rec.getNodeId(ixn), null));
             complexAssembly.addRight(complex);
-            complexAssembly.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
-            model.add(complexAssembly);
             // add complex components and make its name from actors
             StringBuilder nameBuilder = new StringBuilder();
-            for(ActorType actor : actors) {
-                if(CtdUtil.extractActor(actor) != Actor.IXN) {
-                    PhysicalEntity pe = createSPEFromActor(actor, null, ixn.getTaxon());
+            for(int i = 0; i < rec.getActorCount(ixn); i++) {
+                int actor = CtdUtil.actor(rec, ixn, i);
+                if(rec.getActorType(actor) != Actor.IXN) {
+                    PhysicalEntity pe = createSPEFromActor(rec, actor, null);
                     complex.addComponent(pe);
                     complexAssembly.addLeft(pe);
                     nameBuilder.append(pe.getDisplayName()).append("/");
                 } else {
                     //IXN : create sub-process(es) and collect their products to use as complex components here
-                    IxnType subIxn = CtdUtil.convertActorToIxn(actor, ixn);
-                    AxnCode subAxn = CtdUtil.axnCode(subIxn);
+                    int subIxn = subIxn(rec, actor);
+                    AxnCode subAxn = CtdUtil.axnCode(rec, subIxn);
                     if(subAxn == AxnCode.W) {
                         //unsure what eactly does axn code 'w' mean inside an ixn actor of a 'b' parent
-                        for (ActorType actorType : subIxn.getActor()) {
-                            PhysicalEntity pe = createSPEFromActor(actorType, null, ixn.getTaxon());
+                        for (int j = 0; j < rec.getActorCount(subIxn); j++) {
+                            PhysicalEntity pe = createSPEFromActor(rec, CtdUtil.actor(rec, subIxn, j), null);
                             complex.addComponent(pe);
                             complexAssembly.addLeft(pe);
                             nameBuilder.append(pe.getDisplayName()).append("/");
                         }
                     }
                     else {
-                        Interaction proc = convertIxn(subIxn);
+                        Interaction proc = convertIxn(rec, subIxn);
                         if(proc != null) {
                             for (PhysicalEntity pe : getProducts(proc)) {
                                 complex.addComponent(pe);
@@ -312,41 +550,37 @@ public class CTDInteractionConverter extends Converter {
         return complexAssembly;
     }
 
-    private Interaction createBlackboxControl(IxnType ixn, String rdfId) {
-        Control control = (Control) model.getByID(absoluteUri(rdfId));
+    private Interaction createBlackboxControl(IxnRecord rec, int ixn, String rdfId) {
+        Control control = (Control) target.get(absoluteUri(rdfId));
         if (control == null)
         {
-            AxnCode axnCode = CtdUtil.axnCode(ixn);
-            if (axnCode == AxnCode.ACT) {
-                control = create(Control.class, rdfId);
-                control.setControlType(ControlType.ACTIVATION);
-                // - always activation (this sill can be inhibited by outer control);
+            AxnCode axnCode = CtdUtil.axnCode(rec, ixn);
+            if (axnCode == AxnCode.ACT || axnCode == AxnCode.W) {
+                control = getOrCreate(target, Control.class, rdfId, c -> {
+                    c.setControlType(ControlType.ACTIVATION);
+                    c.addComment(intern(axnCode.getDescription()));
+                });
+                // ACT - always activation (this sill can be inhibited by outer control);
                 // - could use Catalysis instead of Control, but then we can only set Conversion to 'controlled'
                 // property of this one, and there are examples where we want to set a Control/Modulation as well.
                 // see ixn id="3727084".
             }
-            else if (axnCode == AxnCode.W) {
-                control = create(Control.class, rdfId);
-                control.setControlType(ControlType.ACTIVATION);
-            }
             else {
-                control = create(Modulation.class, rdfId);
+                control = getOrCreate(target, Modulation.class, rdfId, c -> c.addComment(intern(axnCode.getDescription())));
             }
 
-            control.addComment(axnCode.getDescription());
-            model.add(control);
-
             if(axnCode==AxnCode.W) {
-                setNameFromIxnType(ixn, control, true);
-                for(ActorType actor : ixn.getActor()) {
-                    for (Controller c : createControllersFromActor(actor, null, ixn)) {
+                recordElement(control);
+                setNameFromIxn(rec, ixn, control, true);
+                for(int i = 0; i < rec.getActorCount(ixn); i++) {
+                    for (Controller c : createControllersFromActor(rec, CtdUtil.actor(rec, ixn, i), null)) {
                         control.addController(c);
                     }
                 }
             } else {
-                setNameFromIxnType(ixn, control, false);
-                ActorType actor = ixn.getActor().get(1);
-                for (Controller c : createControllersFromActor(actor, null, ixn)) {
+                setNameFromIxn(rec, ixn, control, false);
+                int actor = CtdUtil.actor(rec, ixn, 1);
+                for (Controller c : createControllersFromActor(rec, actor, null)) {
                     control.addController(c);
                 }
             }
@@ -354,60 +588,54 @@ public class CTDInteractionConverter extends Converter {
         return control;
     }
 
-    private Interaction createDegradation(IxnType ixn, String processId)
+    private Interaction createDegradation(IxnRecord rec, int ixn, String processId)
     {
-        ActorType actor = ixn.getActor().get(1);
-        Degradation degradation = (Degradation) model.getByID(absoluteUri(processId));
+        int actor = CtdUtil.actor(rec, ixn, 1);
+        Degradation degradation = (Degradation) target.get(absoluteUri(processId));
         if (degradation == null) {
-            degradation = create(Degradation.class, processId);
-            setNameFromIxnType(ixn, degradation, false);
-            SimplePhysicalEntity par = createSPEFromActor(actor, null, ixn.getTaxon());
+            degradation = getOrCreate(target, Degradation.class, processId, d -> {
+                setNameFromIxn(rec, ixn, d, false);
+                d.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
+            });
+            SimplePhysicalEntity par = createSPEFromActor(rec, actor, null);
             degradation.addLeft(par);
-            degradation.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
-            model.add(degradation);
         }
         return degradation;
     }
 
-    private Interaction createTransport(IxnType ixn, String processId, String leftLoc, String rightLoc)
+    private Interaction createTransport(IxnRecord rec, int ixn, String processId, String leftLoc, String rightLoc)
     {
-        ActorType actor = ixn.getActor().get(1);;
-        Transport transport = (Transport) model.getByID(absoluteUri(processId));
+        int actor = CtdUtil.actor(rec, ixn, 1);
+        Transport transport = (Transport) target.get(absoluteUri(processId));
         if (transport == null) {
-            transport = create(Transport.class, processId);
-            SimplePhysicalEntity leftPar = createSPEFromActor(actor, leftLoc, ixn.getTaxon());
-            SimplePhysicalEntity rightPar = createSPEFromActor(actor, rightLoc, ixn.getTaxon());
+            transport = getOrCreate(target, Transport.class, processId, t -> {
+                t.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
+                setNameFromIxn(rec, ixn, t, false);
+            });
+            SimplePhysicalEntity leftPar = createSPEFromActor(rec, actor, leftLoc);
+            SimplePhysicalEntity rightPar = createSPEFromActor(rec, actor, rightLoc);
             transport.addLeft(leftPar);
             transport.addRight(rightPar);
-            transport.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
             if (leftLoc != null) {
                 leftPar.setCellularLocation(createCellularLocation(leftLoc));
             }
             if (rightLoc != null) {
                 rightPar.setCellularLocation(createCellularLocation(rightLoc));
             }
-            setNameFromIxnType(ixn, transport, false);
-            model.add(transport);
         }
         return transport;
     }
 
     private CellularLocationVocabulary createCellularLocation(String location) {
         String locId = CtdUtil.locationToId(location);
-        CellularLocationVocabulary cellularLocationVocabulary = (CellularLocationVocabulary) model.getByID(absoluteUri(locId));
-        if(cellularLocationVocabulary == null) {
-            cellularLocationVocabulary = create(CellularLocationVocabulary.class, locId);
-            cellularLocationVocabulary.addTerm(location);
-            model.add(cellularLocationVocabulary);
-        }
-        return cellularLocationVocabulary;
+        return getOrCreate(target, CellularLocationVocabulary.class, locId, v -> v.addTerm(intern(location)));
     }
 
 
-    private Interaction createConversion(IxnType ixn, String processId, boolean useLeft, boolean useRight)
+    private Interaction createConversion(IxnRecord rec, int ixn, String processId, boolean useLeft, boolean useRight)
     {
-        ActorType actor = ixn.getActor().get(1);
-        AxnCode axnCode = CtdUtil.axnCode(ixn);
+        int actor = CtdUtil.actor(rec, ixn, 1);
+        AxnCode axnCode = CtdUtil.axnCode(rec, ixn);
         String term;
         switch (axnCode) {
             case ABU: // abundance
@@ -429,30 +657,30 @@ public class CTDInteractionConverter extends Converter {
                 break;
             default://never
                 throw new IllegalArgumentException("createModificationReaction, ixn:" +
-                        ixn.getId() + ", unsupported axn code:" + axnCode);
+                        rec.getNodeId(ixn) + ", unsupported axn code:" + axnCode);
         }
-        BiochemicalReaction biochemicalReaction = (BiochemicalReaction) model.getByID(absoluteUri(processId));
+        BiochemicalReaction biochemicalReaction = (BiochemicalReaction) target.get(absoluteUri(processId));
         if (biochemicalReaction == null) {
-            biochemicalReaction = create(BiochemicalReaction.class, processId);
-            setNameFromIxnType(ixn, biochemicalReaction, false);
+            biochemicalReaction = getOrCreate(target, BiochemicalReaction.class, processId, r -> {
+                setNameFromIxn(rec, ixn, r, false);
+                r.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
+            });
             if(useLeft) {
-                SimplePhysicalEntity leftPar = createSPEFromActor(actor, null, ixn.getTaxon());
+                SimplePhysicalEntity leftPar = createSPEFromActor(rec, actor, null);
                 biochemicalReaction.addLeft(leftPar);
             }
             if(useRight) {
-                SimplePhysicalEntity rightPar = createSPEFromActor(actor, term, ixn.getTaxon());
+                SimplePhysicalEntity rightPar = createSPEFromActor(rec, actor, term);
                 biochemicalReaction.addRight(rightPar);
                 if (term != null) {
-                    if (CtdUtil.extractActor(actor).equals(Actor.CHEMICAL)) {
-                        rightPar.setDisplayName(rightPar.getDisplayName() + " (" + term + ")");
+                    if (rec.getActorType(actor).equals(Actor.CHEMICAL)) {
+                        rightPar.setDisplayName(intern(rightPar.getDisplayName() + " (" + term + ")"));
                     } else {
                         ModificationFeature mf = createModFeature("modf_" + processId, term);
                         rightPar.addFeature(mf);
                     }
                 }
             }
-            biochemicalReaction.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
-            model.add(biochemicalReaction);
         }
         return biochemicalReaction;
     }
@@ -460,61 +688,60 @@ public class CTDInteractionConverter extends Converter {
     private ModificationFeature createModFeature(String id, String term)
     {
         if(term!=null) id += "_" + term;
-        ModificationFeature feature = create(ModificationFeature.class, id);
-        SequenceModificationVocabulary modificationVocabulary = create(
-            SequenceModificationVocabulary.class, "seqmod_" + id);
-        modificationVocabulary.addTerm(term);
+        ModificationFeature feature = getOrCreate(target, ModificationFeature.class, id, null);
+        SequenceModificationVocabulary modificationVocabulary = getOrCreate(target,
+            SequenceModificationVocabulary.class, "seqmod_" + id, v -> v.addTerm(intern(term)));
         feature.setModificationType(modificationVocabulary);
-        model.add(feature);
-        model.add(modificationVocabulary);
         return feature;
     }
 
-    private Interaction createTemplateReaction(IxnType ixn, String processId) {
-        ActorType actor = ixn.getActor().get(1);
-        TemplateReaction templateReaction = (TemplateReaction) model.getByID(absoluteUri(processId));
+    private Interaction createTemplateReaction(IxnRecord rec, int ixn, String processId) {
+        int actor = CtdUtil.actor(rec, ixn, 1);
+        TemplateReaction templateReaction = (TemplateReaction) target.get(absoluteUri(processId));
         if(templateReaction==null) {
-            templateReaction = create(TemplateReaction.class, processId);
-            setNameFromIxnType(ixn, templateReaction, false);
-            templateReaction.setTemplateDirection(TemplateDirectionType.FORWARD);
-            SimplePhysicalEntity actorEntity = createSPEFromActor(actor, null, ixn.getTaxon());
+            templateReaction = getOrCreate(target, TemplateReaction.class, processId, r -> {
+                setNameFromIxn(rec, ixn, r, false);
+                r.setTemplateDirection(TemplateDirectionType.FORWARD);
+            });
+            SimplePhysicalEntity actorEntity = createSPEFromActor(rec, actor, null);
             templateReaction.addProduct(actorEntity);
-            model.add(templateReaction);
         }
         return templateReaction;
     }
 
-    private Control createControlFromActor(Interaction controlled, IxnType ixn)
+    private Control createControlFromActor(Interaction controlled, IxnRecord rec, int ixn)
     {
-        AxnCode axnCode = CtdUtil.axnCode(ixn);
-        AxnType axnType = CtdUtil.axnType(ixn);
-        ActorType actor = ixn.getActor().get(0);
+        AxnCode axnCode = CtdUtil.axnCode(rec, ixn);
+        int axn = rec.getAxnStart(ixn);
+        int actor = CtdUtil.actor(rec, ixn, 0);
 
-        String rdfId = String.format("%s_%s", axnCode, ixn.getId());
-        Control control = (Control) model.getByID(absoluteUri(rdfId));
+        String rdfId = String.format("%s_%s", axnCode, rec.getNodeId(ixn));
+        Control control = (Control) target.get(absoluteUri(rdfId));
         if(control == null) {
-            ControlType controlType = controlTypeAction(axnType, axnCode);
-            Collection<Controller> controllers = createControllersFromActor(actor, controlled, ixn);
+            ControlType controlType = controlTypeAction(rec.getAxnDegree(axn), axnCode);
+            Collection<Controller> controllers = createControllersFromActor(rec, actor, controlled);
 
+            Class<? extends Control> controlClass;
             if (controlled instanceof TemplateReaction) {
-                control = create(TemplateReactionRegulation.class, rdfId);
+                controlClass = TemplateReactionRegulation.class;
             }
             else if(controlled instanceof Catalysis && controllers.size()==1
                     && controllers.iterator().next() instanceof SmallMolecule)
             {
-                control = create(Modulation.class, rdfId);
+                controlClass = Modulation.class;
             }
             else {
                 //try Catalysis if BioPAX restrictions are satisfied
                 if(controlType == ControlType.ACTIVATION && controlled instanceof Conversion)
-                    control = create(Catalysis.class, rdfId);
+                    controlClass = Catalysis.class;
                 else
-                    control = create(Control.class, rdfId);
+                    controlClass = Control.class;
             }
 
-            model.add(control);
-            control.setControlType(controlType);
-            setNameFromIxnType(ixn, control, true);
+            control = recordElement(getOrCreate(target, controlClass, rdfId, c -> {
+                c.setControlType(controlType);
+                setNameFromIxn(rec, ixn, c, true);
+            }));
 
             for (Controller controller : controllers) {
                 control.addController(controller);
@@ -525,17 +752,17 @@ public class CTDInteractionConverter extends Converter {
 
     // controlled process - when this actor is ixn and is inside an outer ixn/actor with e.g., 'csy' type
     // (controls synthesis, conversion), then the second parameter can be used to set left participant of that proc.
-    private Collection<Controller> createControllersFromActor(ActorType actor, Interaction controlled, IxnType ixn) {
+    private Collection<Controller> createControllersFromActor(IxnRecord rec, int actor, Interaction controlled) {
         HashSet<Controller> controllers = new HashSet<>();
-        switch (CtdUtil.extractActor(actor)) {
+        switch (rec.getActorType(actor)) {
             case IXN:
-                IxnType subIxn = CtdUtil.convertActorToIxn(actor, ixn);
-                AxnCode axnCode = CtdUtil.axnCode(subIxn);
-                Interaction process = convertIxn(subIxn);
+                int subIxn = subIxn(rec, actor);
+                AxnCode axnCode = CtdUtil.axnCode(rec, subIxn);
+                Interaction process = convertIxn(rec, subIxn);
 
                 if(process == null) {
-                    log.warn("createControllersFromActor: failed to create a sub-process, controllers for " +
-                            " actor ixn:" + subIxn.getId() + ", axn code:" + axnCode);
+                    diagnostics.warn("controllers skipped - failed to create a sub-process from the actor ixn",
+                            rec.getNodeId(subIxn) + " " + axnCode);
                     return controllers;
                 }
 
@@ -557,39 +784,44 @@ public class CTDInteractionConverter extends Converter {
                         }
                     }
                     if(control.getControlled().isEmpty())
-                        model.remove(control);
+                        target.remove(control);
                 }
 
                 break;
             default: // If not an IXN, then it is a physical entity
-                controllers.add(createSPEFromActor(actor, null, ixn.getTaxon()));
+                controllers.add(createSPEFromActor(rec, actor, null));
                 break;
         }
 
         return controllers;
     }
 
-    private SimplePhysicalEntity createSPEFromActor(ActorType actor, String state, List<TaxonType> taxonTypes) {
+    private SimplePhysicalEntity createSPEFromActor(IxnRecord rec, int actor, String state) {
         SimplePhysicalEntity spe;
-        Actor aType = CtdUtil.extractActor(actor);
+        Actor aType = rec.getActorType(actor);
         switch (aType) {
             case CHEMICAL:
-                spe = createEntityFromActor(actor, SmallMolecule.class, SmallMoleculeReference.class, state);
+                spe = createEntityFromActor(rec, actor, CHEMICAL_FORM, SmallMolecule.class, SmallMoleculeReference.class, state);
                 break;
             case GENE:
-                String form = actor.getForm();
-                GeneForm geneForm = (form == null)
-                        ? GeneForm.PROTEIN
-                            : GeneForm.valueOf(CtdUtil.sanitizeGeneForm(form).toUpperCase());
+                GeneForm geneForm = rec.getGeneForm(actor);
+                if(geneForm == null) {
+                    diagnostics.warn("unknown gene form '" + rec.getActorForm(actor) + "' (protein assumed)", rec.getId());
+                    geneForm = GeneForm.PROTEIN; //same as for no form specified
+                }
+                // URIs are made from the actual form name; so only cache the entity when it's the standard name
+                String form = rec.getActorForm(actor);
+                int formSlot = (form == null || form.equalsIgnoreCase(geneForm.getDescription()))
+                        ? geneForm.ordinal() : -1;
 
                 Class<? extends SimplePhysicalEntity> eClass = geneForm.getEntityClass();
                 Class<? extends EntityReference> refClass = geneForm.getReferenceClass();
-                spe = createEntityFromActor(actor, eClass, refClass, state);
-                //add organism if it makes sense
+                spe = createEntityFromActor(rec, actor, formSlot, eClass, refClass, state);
+                //add organism if it makes sense (the first pass has done it for a dictionary reference)
                 if(spe.getEntityReference() instanceof SequenceEntityReference) {
                     SequenceEntityReference ser = (SequenceEntityReference) spe.getEntityReference();
-                    if(ser.getOrganism() == null) {
-                        ser.setOrganism(bioSource(taxonTypes));
+                    if(ser.getOrganism() == null && (dictionary == null || !dictionary.contains(ser.getUri()))) {
+                        ser.setOrganism(bioSource(rec));
                     }
                 }
                 break;
@@ -601,13 +833,37 @@ public class CTDInteractionConverter extends Converter {
         return spe;
     }
 
-    private SimplePhysicalEntity createEntityFromActor(ActorType actorType,
+    private SimplePhysicalEntity createEntityFromActor(IxnRecord rec, int actorIndex,
+                                                       int formSlot,
                                                        Class<? extends SimplePhysicalEntity> entityClass,
                                                        Class<? extends EntityReference> referenceClass,
                                                        String state)
     {
-        String form = actorType.getForm();
-        Actor actor = CtdUtil.extractActor(actorType);
+        final long packedId = CtdUtil.packActorId(rec.getActorId(actorIndex));
+        if(referencedIds != null && packedId >= 0) {
+            referencedIds.add(packedId);
+        }
+        final long actorKey = (formSlot < 0) ? -1 : packedId;
+        final long entityKey = entityKey(actorKey, formSlot, state);
+        SimplePhysicalEntity simplePhysicalEntity = (entityKey < 0) ? null : entities.get(entityKey);
+        if(simplePhysicalEntity != null) {
+            return simplePhysicalEntity;
+        }
+
+        final long refKey = entityKey(actorKey, formSlot, null);
+        // two-pass mode: refer to the first pass entity (or its reference, for an entity with a state)
+        SimplePhysicalEntity known = (dictionary == null || refKey < 0) ? null : dictionary.get(refKey);
+        if(known != null && state == null) {
+            usedEntities.add(refKey);
+            usedReferences.add(refKey);
+            simplePhysicalEntity = stub(known);
+            simplePhysicalEntity.setDisplayName(known.getDisplayName()); //complex names are made of these
+            entities.put(entityKey, simplePhysicalEntity);
+            return simplePhysicalEntity;
+        }
+
+        String form = rec.getActorForm(actorIndex);
+        Actor actor = rec.getActorType(actorIndex);
 
         // Override all forms of chemical type (none || analog)
         if(actor.equals(Actor.CHEMICAL)) {
@@ -624,58 +880,116 @@ public class CTDInteractionConverter extends Converter {
             form = form.toLowerCase();
         }
 
-        String actorTypeId = actorType.getId();
+        String actorTypeId = rec.getActorId(actorIndex);
         String refId = CtdUtil.sanitizeId("ref_" + form + "_" + actorTypeId.toLowerCase());
         String entityId = CtdUtil.sanitizeId(form + "_" + actorTypeId.toLowerCase()
                 + (StringUtils.isEmpty(state) ? "" : "_" + state.toLowerCase()));
 
-        EntityReference entityReference = (EntityReference) model.getByID(absoluteUri(refId));
+        EntityReference entityReference = (refKey < 0) ? null : references.get(refKey);
+        if(entityReference == null && known != null) {
+            usedReferences.add(refKey);
+            entityReference = stub(known.getEntityReference());
+            references.put(refKey, entityReference);
+        }
         if(entityReference == null) {
-            entityReference = create(referenceClass, refId);
-            setNameFromActor(actorType, entityReference);
-            model.add(entityReference);
-            if(actorTypeId.contains(":")) {
-                String[] t = actorTypeId.split(":");
-                RelationshipXref rx = (RelationshipXref) createXref(model, RelationshipXref.class,
-                    ("gene".equalsIgnoreCase(t[0])) ? "ncbigene" : t[0], t[1]);
-                entityReference.addXref(rx);
+            entityReference = target.createIfAbsent(referenceClass, absoluteUri(refId),
+                er -> setNameFromActor(rec, actorIndex, er));
+            if (entityReference == null) {
+                entityReference = (EntityReference) target.get(absoluteUri(refId));
             } else {
-                log.warn("Cannot make RX for ER " + refId + " due to no ':' in actor.id=" + actorTypeId);
+                if (actorTypeId.contains(":")) {
+                    String[] t = actorTypeId.split(":");
+                    RelationshipXref rx = (RelationshipXref) createXref(target, RelationshipXref.class,
+                        ("gene".equalsIgnoreCase(t[0])) ? "ncbigene" : t[0], t[1]);
+                    entityReference.addXref(rx);
+                } else {
+                    diagnostics.warn("entity references without a RelationshipXref (no ':' in the actor id)", actorTypeId);
+                }
+            }
+            if(refKey >= 0) {
+                references.put(refKey, entityReference);
             }
         }
 
-        SimplePhysicalEntity simplePhysicalEntity = (SimplePhysicalEntity) model.getByID(absoluteUri(entityId));
+        simplePhysicalEntity = target.createIfAbsent(entityClass, absoluteUri(entityId),
+            e -> setNameFromActor(rec, actorIndex, e));
         if(simplePhysicalEntity == null) {
-            simplePhysicalEntity = create(entityClass, entityId);
-            setNameFromActor(actorType, simplePhysicalEntity);
+            simplePhysicalEntity = (SimplePhysicalEntity) target.get(absoluteUri(entityId));
+        } else {
             simplePhysicalEntity.setEntityReference(entityReference);
-            model.add(simplePhysicalEntity);
+        }
+        if(entityKey >= 0) {
+            entities.put(entityKey, simplePhysicalEntity);
         }
 
         return simplePhysicalEntity;
     }
 
+    // keeps track of an element made for the record's own ixn node (see detachRecordElements)
+    private <T extends BioPAXElement> T recordElement(T bpe) {
+        if(recordElements != null) {
+            recordElements.add(bpe);
+        }
+        return bpe;
+    }
+
+    // the model's element with the same type and URI as the dictionary's one, and no values
+    @SuppressWarnings("unchecked")
+    private <T extends BioPAXElement> T stub(T bpe) {
+        return target.getOrCreate((Class<T>) bpe.getModelInterface(), bpe.getUri(), null);
+    }
+
+    // packs the (actor id, form, state) into a long: 50 bits - actor id, 5 bits - form, 8 bits - state;
+    // returns -1 if any is not packable, and then the entity is not cached.
+    private long entityKey(long actorKey, int formSlot, String state) {
+        if(actorKey < 0 || formSlot < 0) {
+            return -1;
+        }
+        int stateCode = 0;
+        if(state != null) {
+            Integer code = states.get(state);
+            if(code == null) {
+                if(states.size() >= 255) {
+                    return -1;
+                }
+                code = states.size() + 1;
+                states.put(state, code);
+            }
+            stateCode = code;
+        }
+        return (actorKey << 13) | ((long) formSlot << 8) | stateCode;
+    }
+
     private void assignName(String name, Named named) {
         if(name!=null && !name.isEmpty()) {
             if(named instanceof Interaction)
-                named.addName(name.trim());
+                named.addName(name.trim()); //each interaction's own, not pooled
             else
-                named.setDisplayName(name.trim());
+                named.setDisplayName(intern(name.trim()));
         }
     }
 
-    private String setNameFromActor(ActorType actor, Named named) {
-        String name = CtdUtil.extractName(actor);
+    private String setNameFromActor(IxnRecord rec, int actor, Named named) {
+        String name = CtdUtil.extractName(rec, actor);
         assignName(name, named);
         return name;
     }
 
-    private String setNameFromIxnType(IxnType ixn, Named named, boolean isTopControl) {
-        String name = CtdUtil.extractName(ixn, !isTopControl);
+    private String setNameFromIxn(IxnRecord rec, int ixn, Named named, boolean isTopControl) {
+        String name = CtdUtil.extractName(rec, ixn, !isTopControl);
         assignName(name, named);
         return name;
     }
 
+    // the nested ixn node of an 'ixn' type actor
+    private static int subIxn(IxnRecord rec, int actor) {
+        int node = rec.getActorNode(actor);
+        if(node < 0) {
+            throw new IllegalArgumentException("actor is not IXN type; id: " + rec.getActorId(actor));
+        }
+        return node;
+    }
+
     private static Set<PhysicalEntity> getProducts(Process process) {
         Set<PhysicalEntity> products = new HashSet<>();
         if(process instanceof Control) {
@@ -697,13 +1011,50 @@ public class CTDInteractionConverter extends Converter {
         return products;
     }
 
-    private BioSource bioSource(List<TaxonType> taxonTypes) {
-        if(taxonTypes == null || taxonTypes.isEmpty()) {
+    // whether the record passes the taxonomy filter
+    private boolean isConvertedTaxon(IxnRecord rec) {
+        if(taxIds != null) {
+            if(rec.getTaxonCount() == 0) {
+                return taxIds.contains("undefined"); //skip for undefined species ixn unless 'undefined' was requested
+            } else if(!taxIds.contains("defined")) {
+                //here <taxon/> is not empty, and we also want a particular id -
+                for (int i = 0; i < rec.getTaxonCount(); i++) {
+                    if (isRequestedTaxon(rec.getTaxonId(i))) {
+                        return true; //matched; process this entry
+                    }
+                }
+                return false; //skip then
+            }
+            //else - convert (one or more organisms are there defined but we don't care which)
+        }
+        //else - convert (regardless defined or undefined organism it is)
+        return true;
+    }
+
+    private boolean isRequestedTaxon(String taxonId) {
+        return taxIds != null && taxonId != null && taxIds.contains(taxonId.toLowerCase());
+    }
+
+    private BioSource bioSource(IxnRecord rec) {
+        if(rec.getTaxonCount() == 0) {
             return null;
         }
-        TaxonType org = taxonTypes.stream().filter(t -> StringUtils.equals(t.getId(),taxId))
-            .findFirst().orElse(taxonTypes.get(0));
-        return createBioSource(model, org.getId(), org.getValue());
+        int org = 0;
+        for (int i = 0; i < rec.getTaxonCount(); i++) {
+            if (isRequestedTaxon(rec.getTaxonId(i))) {
+                org = i;
+                break;
+            }
+        }
+        long taxonKey = CtdUtil.parseId(rec.getTaxonId(org));
+        BioSource bioSource = (taxonKey < 0) ? null : bioSources.get(taxonKey);
+        if(bioSource == null) {
+            bioSource = createBioSource(target, rec.getTaxonId(org), rec.getTaxonName(org));
+            if(taxonKey >= 0) {
+                bioSources.put(taxonKey, bioSource);
+            }
+        }
+        return bioSource;
     }
 
 }
@@ -4,17 +4,50 @@ import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.BioPAXLevel;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.BioSource;
+import org.biopax.paxtools.model.level3.PublicationXref;
 import org.biopax.paxtools.model.level3.UnificationXref;
 import org.biopax.paxtools.model.level3.Xref;
 import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.Diagnostics;
+import org.ctdbase.util.LongObjectMap;
+import org.ctdbase.util.LongSet;
+import org.ctdbase.util.StringPool;
+import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
+/**
+ * Base of the CTD data converters. An instance keeps the state of its current conversion (pools, diagnostics),
+ * so it is used by one thread at a time; the converters of several threads can fill one shared
+ * {@link TargetModel} though.
+ */
 public abstract class Converter {
 
-    private String xmlBase = Converter.sharedXMLBase;
-    public static String sharedXMLBase = "ctdbase:";
+    public static final String DEFAULT_XML_BASE = "ctdbase:";
+
+    private String xmlBase = DEFAULT_XML_BASE;
+
+    // names, comments, xref db and id values; can be shared by all the converters in a run
+    private StringPool stringPool = new StringPool();
+
+    // xrefs pool for the model they were last used with: class -> db -> id -> xref;
+    // and the PubMed publication xrefs by the numeric id.
+    private Model pooledModel;
+    private final Map<Class<? extends Xref>, Map<String, Map<String, Xref>>> xrefs = new HashMap<>();
+    private final LongObjectMap<PublicationXref> pubmedXrefs = new LongObjectMap<>();
+
+    // vocabulary rows to convert, by packed gene/chemical id (see CtdUtil.packActorId); null - all
+    private LongSet idFilter;
+    // max. number of vocabulary rows to read; -1 - all
+    private long rowLimit = -1;
+
+    // counted per-record events of the current conversion; shared - set by the caller, who logs the summary
+    private Diagnostics diagnostics;
+    private boolean sharedDiagnostics;
 
     public Model createNewModel() {
         Model model = BioPAXLevel.L3.getDefaultFactory().createModel();
@@ -30,8 +63,87 @@ public abstract class Converter {
         return xmlBase;
     }
 
-    public void setXmlBase(String sharedXMLBase) {
-        xmlBase = sharedXMLBase;
+    public void setXmlBase(String xmlBase) {
+        this.xmlBase = xmlBase;
+    }
+
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    public void setStringPool(StringPool stringPool) {
+        this.stringPool = stringPool;
+    }
+
+    public LongSet getIdFilter() {
+        return idFilter;
+    }
+
+    /**
+     * Makes a vocabulary converter skip the genes or chemicals that are not in the set
+     * (e.g. not referenced by the converted interactions); ids that cannot be packed are never skipped.
+     *
+     * @param idFilter packed gene or chemical ids, or null (convert all)
+     */
+    public void setIdFilter(LongSet idFilter) {
+        this.idFilter = idFilter;
+    }
+
+    public long getRowLimit() {
+        return rowLimit;
+    }
+
+    /**
+     * @param rowLimit max. number of data rows a vocabulary converter reads, e.g. for a quick test run;
+     *                 or -1 (all)
+     */
+    public void setRowLimit(long rowLimit) {
+        this.rowLimit = rowLimit;
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Makes the converter count its per-record events (duplicates, reused processes, skipped records, etc.)
+     * in the given diagnostics, e.g. shared by several converters or conversions, and not log the summary itself.
+     *
+     * @param diagnostics shared diagnostics, or null (a new one for each conversion, summarized at its end)
+     */
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+        this.sharedDiagnostics = diagnostics != null;
+    }
+
+    // the diagnostics for a new conversion
+    protected Diagnostics beginDiagnostics(Logger log) {
+        if (!sharedDiagnostics) {
+            diagnostics = new Diagnostics(log);
+        }
+        return diagnostics;
+    }
+
+    // logs the conversion's diagnostics summary, unless they're shared
+    protected void endDiagnostics() {
+        if (!sharedDiagnostics) {
+            diagnostics.logSummary("");
+        }
+    }
+
+    // whether a vocabulary converter has read the max. number of rows
+    protected boolean isRowLimitReached(long rows) {
+        return rowLimit >= 0 && rows >= rowLimit;
+    }
+
+    // whether a vocabulary row with the packed id is to be converted
+    protected boolean accept(long packedId) {
+        return idFilter == null || packedId < 0 || idFilter.contains(packedId);
+    }
+
+    // returns the pooled instance of a name, comment, db or id string
+    protected String intern(String s) {
+        return stringPool.intern(s);
     }
 
     protected String absoluteUri(String rdfId) {
@@ -41,33 +153,112 @@ public abstract class Converter {
     // a public abstract method to be implemented:
     public abstract Model convert(InputStream inputStream) throws IOException;
 
+    /**
+     * Gets or creates the element in a model shared with other converters (threads), atomically.
+     *
+     * @param init sets the new element's own data values, or null (see {@link TargetModel#getOrCreate})
+     */
+    protected <T extends BioPAXElement> T getOrCreate(TargetModel target, Class<T> aClass, String rdfId,
+                                                      Consumer<? super T> init) {
+        return target.getOrCreate(aClass, absoluteUri(rdfId), init);
+    }
+
+    protected <T extends Xref> Xref createXref(TargetModel target, Class<T> xrefClass, String db, String id) {
+        // this converter's own pool (e.g. the xrefs shared by a gene's references), not the other threads'
+        Map<String, Xref> pool = xrefPool(target.getModel())
+            .computeIfAbsent(xrefClass, k -> new HashMap<>())
+            .computeIfAbsent(db, k -> new HashMap<>());
+        Xref xref = pool.get(id);
+        if(xref == null) {
+            xref = getOrCreate(target, xrefClass, xrefRdfId(xrefClass, db, id), x -> {
+                x.setDb(intern(db));
+                x.setId(id);
+            });
+            pool.put(id, xref);
+        }
+        return xref;
+    }
+
     protected <T extends Xref>  Xref createXref(Model model, Class<T> xrefClass, String db, String id) {
+        Map<String, Xref> pool = xrefPool(model)
+            .computeIfAbsent(xrefClass, k -> new HashMap<>())
+            .computeIfAbsent(db, k -> new HashMap<>());
+        Xref xref = pool.get(id);
+        if(xref == null) {
+            xref = findOrAddXref(model, xrefClass, db, id);
+            pool.put(id, xref);
+        }
+        return xref;
+    }
+
+    protected PublicationXref createPubmedXref(Model model, long pmid) {
+        xrefPool(model);
+        PublicationXref xref = pubmedXrefs.get(pmid);
+        if(xref == null) {
+            xref = (PublicationXref) findOrAddXref(model, PublicationXref.class, "pubmed", Long.toString(pmid));
+            pubmedXrefs.put(pmid, xref);
+        }
+        return xref;
+    }
+
+    protected PublicationXref createPubmedXref(TargetModel target, long pmid) {
+        xrefPool(target.getModel());
+        PublicationXref xref = pubmedXrefs.get(pmid);
+        if(xref == null) {
+            String id = Long.toString(pmid);
+            xref = getOrCreate(target, PublicationXref.class, xrefRdfId(PublicationXref.class, "pubmed", id), x -> {
+                x.setDb(intern("pubmed"));
+                x.setId(id);
+            });
+            pubmedXrefs.put(pmid, xref);
+        }
+        return xref;
+    }
+
+    private static String xrefRdfId(Class<? extends Xref> xrefClass, String db, String id) {
         String pref = switch(xrefClass.getSimpleName()) {
             case "UnificationXref" -> "ux_";
             case "RelationshipXref" -> "rx";
             case "PublicationXref" -> "px";
             default -> "x";
         };
-        String rdfId = CtdUtil.sanitizeId(pref + "_" + db + "_" + id );
+        return CtdUtil.sanitizeId(pref + "_" + db + "_" + id );
+    }
+
+    private <T extends Xref> Xref findOrAddXref(Model model, Class<T> xrefClass, String db, String id) {
+        String rdfId = xrefRdfId(xrefClass, db, id);
         T xref = (T) model.getByID(absoluteUri(rdfId));
         if(xref == null) {
             xref = create(xrefClass, rdfId);
-            xref.setDb(db);
-            xref.setId(id);
+            xref.setDb(intern(db));
+            xref.setId(id); //the ids do not repeat in a model (one xref each), so they're not pooled
             model.add(xref);
         }
         return xref;
     }
 
+    // resets the pool when the converter switches to another model
+    private Map<Class<? extends Xref>, Map<String, Map<String, Xref>>> xrefPool(Model model) {
+        if(model != pooledModel) {
+            xrefs.clear();
+            pubmedXrefs.clear();
+            pooledModel = model;
+        }
+        return xrefs;
+    }
+
     //
-    protected BioSource createBioSource(Model model, String taxonomyId, String name) {
+    protected BioSource createBioSource(TargetModel target, String taxonomyId, String name) {
         String uri = "bioregistry.io/ncbitaxon:" + taxonomyId;
-        BioSource bioSource = (BioSource) model.getByID(uri);
+        BioSource bioSource = (BioSource) target.get(uri);
         if(bioSource == null) {
-            UnificationXref x = model.addNew(UnificationXref.class, "ncbitaxon:" + taxonomyId);
-            bioSource = model.addNew(BioSource.class, uri);
-            bioSource.setDisplayName(name);
-            bioSource.addXref(x);
+            BioSource created = target.createIfAbsent(BioSource.class, uri, b -> b.setDisplayName(intern(name)));
+            if(created == null) {
+                return (BioSource) target.get(uri);
+            }
+            UnificationXref x = target.getOrCreate(UnificationXref.class, "ncbitaxon:" + taxonomyId, null);
+            target.update(() -> created.addXref(x));
+            bioSource = created;
         }
         return bioSource;
     }
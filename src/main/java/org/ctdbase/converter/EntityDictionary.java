@@ -0,0 +1,103 @@
+package org.ctdbase.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.EntityReference;
+import org.biopax.paxtools.model.level3.SequenceEntityReference;
+import org.biopax.paxtools.model.level3.SimplePhysicalEntity;
+import org.biopax.paxtools.model.level3.XReferrable;
+import org.biopax.paxtools.model.level3.Xref;
+import org.ctdbase.util.LongObjectMap;
+
+import java.util.Collection;
+
+/**
+ * The physical entities, with their entity references, xrefs and organisms, of the actors of all
+ * the interactions to convert, made by the first pass of a two-pass conversion
+ * (see {@link CTDInteractionConverter#collectEntities}), by the packed (actor id, form) key.
+ *
+ * It is read-only once made, so that the second pass converters (threads) use it without locking.
+ * As Paxtools updates the inverse properties of an element linked to another (e.g. an entity's 'participantOf'),
+ * they do not link to its elements, but to stubs in their own models, with the same type and URI and no values
+ * (except for an entity's name); the elements they have used ({@link #select(Collection)}) are merged
+ * with their models, so that the stubs are replaced with these.
+ */
+public final class EntityDictionary {
+
+    private final Model model;
+    private final LongObjectMap<SimplePhysicalEntity> entities;
+
+    EntityDictionary(Model model, LongObjectMap<SimplePhysicalEntity> entities) {
+        this.model = model;
+        this.entities = entities;
+    }
+
+    /**
+     * @return all the entities (with their references, etc.)
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * @return the number of entities
+     */
+    public int size() {
+        return entities.size();
+    }
+
+    // the entity by (actor id, form) key (see CTDInteractionConverter.entityKey), or null
+    SimplePhysicalEntity get(long key) {
+        return entities.get(key);
+    }
+
+    // whether the element is the dictionary's one (e.g. an entity reference)
+    boolean contains(String uri) {
+        return model.getByID(uri) != null;
+    }
+
+    /**
+     * @param converters the second pass converters, when they are done
+     * @return a new model with the entities and entity references they used (and the xrefs, organisms)
+     */
+    public Model select(Collection<CTDInteractionConverter> converters) {
+        Model selected = BioPAXLevel.L3.getDefaultFactory().createModel();
+        selected.setXmlBase(model.getXmlBase());
+        entities.forEach((entity, key) -> {
+            boolean entityUsed = false;
+            boolean referenceUsed = false;
+            for (CTDInteractionConverter converter : converters) {
+                entityUsed |= converter.getUsedEntities().contains(key);
+                referenceUsed |= converter.getUsedReferences().contains(key);
+            }
+            if (entityUsed) {
+                add(selected, entity);
+            }
+            EntityReference reference = entity.getEntityReference();
+            if (referenceUsed && !selected.contains(reference)) {
+                add(selected, reference);
+                if (reference instanceof SequenceEntityReference
+                    && ((SequenceEntityReference) reference).getOrganism() != null)
+                {
+                    add(selected, ((SequenceEntityReference) reference).getOrganism());
+                }
+            }
+        });
+        return selected;
+    }
+
+    // adds the element and its xrefs, unless they're there already
+    private static void add(Model model, BioPAXElement bpe) {
+        if (!model.contains(bpe)) {
+            model.add(bpe);
+        }
+        if (bpe instanceof XReferrable) {
+            for (Xref xref : ((XReferrable) bpe).getXref()) {
+                if (!model.contains(xref)) {
+                    model.add(xref);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.ctdbase.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXFactory;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A BioPAX model that several converters (threads) can fill at the same time.
+ *
+ * The elements are got or created by URI atomically (a concurrent map's computeIfAbsent),
+ * so that each is created and initialized once, by one thread, and then added to the model.
+ * A Paxtools model or element is not thread-safe, and setting an object property value also updates
+ * the value's inverse property (e.g. adding a shared xref to an entity adds the entity to the xref's 'xrefOf'),
+ * so any change that links elements, or touches an element other threads can get, is to be made
+ * in {@link #update(Runnable)}, which is serialized with the additions to the model.
+ */
+public final class TargetModel {
+
+    private static final BioPAXFactory factory = BioPAXLevel.L3.getDefaultFactory();
+
+    private final Model model;
+    private final ConcurrentHashMap<String, BioPAXElement> elements = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+
+    /**
+     * @param model the model to fill (its current elements are indexed)
+     */
+    public TargetModel(Model model) {
+        this.model = model;
+        for (BioPAXElement bpe : model.getObjects()) {
+            elements.put(bpe.getUri(), bpe);
+        }
+    }
+
+    /**
+     * @return the model; not to be changed or read directly while the converters are filling it
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    public String getXmlBase() {
+        return model.getXmlBase();
+    }
+
+    /**
+     * @return the element, or null if there is no such one (yet)
+     */
+    public BioPAXElement get(String uri) {
+        return elements.get(uri);
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * Gets the element by URI, or creates, initializes and adds a new one, atomically.
+     *
+     * @param type BioPAX type of the element
+     * @param uri absolute URI
+     * @param init sets the new element's own data values (e.g. names, db and id), or null;
+     *             it must not get or create other elements nor link them (see {@link #update(Runnable)})
+     * @return the existing or new element
+     * @throws IllegalArgumentException when the existing element is of another type
+     */
+    public <T extends BioPAXElement> T getOrCreate(Class<T> type, String uri, Consumer<? super T> init) {
+        BioPAXElement bpe = elements.get(uri);
+        if (bpe == null) {
+            BioPAXElement[] created = new BioPAXElement[1];
+            bpe = elements.computeIfAbsent(uri, u -> created[0] = newElement(type, u, init));
+            if (created[0] != null) {
+                add(created[0]);
+            }
+        }
+        if (!type.isInstance(bpe)) {
+            throw new IllegalArgumentException(uri + " is a " + bpe.getModelInterface().getSimpleName()
+                + ", not a " + type.getSimpleName());
+        }
+        return type.cast(bpe);
+    }
+
+    /**
+     * Like {@link #getOrCreate(Class, String, Consumer)}, but only creates.
+     *
+     * @return the new element, or null if there is one with the URI already
+     */
+    public <T extends BioPAXElement> T createIfAbsent(Class<T> type, String uri, Consumer<? super T> init) {
+        if (elements.containsKey(uri)) {
+            return null;
+        }
+        Object[] created = new Object[1];
+        elements.computeIfAbsent(uri, u -> {
+            T bpe = newElement(type, u, init);
+            created[0] = bpe;
+            return bpe;
+        });
+        if (created[0] == null) {
+            return null;
+        }
+        T bpe = type.cast(created[0]);
+        add(bpe);
+        return bpe;
+    }
+
+    /**
+     * Removes the element, e.g. one the caller has made and then found unneeded, or passed on to another model.
+     *
+     * @return whether the element was there
+     */
+    public boolean remove(BioPAXElement bpe) {
+        if (!elements.remove(bpe.getUri(), bpe)) {
+            return false;
+        }
+        synchronized (lock) {
+            model.remove(bpe);
+        }
+        return true;
+    }
+
+    /**
+     * Makes the change (e.g. setting object property values) exclusively; can be nested,
+     * and can get or create elements.
+     */
+    public void update(Runnable change) {
+        synchronized (lock) {
+            change.run();
+        }
+    }
+
+    private static <T extends BioPAXElement> T newElement(Class<T> type, String uri, Consumer<? super T> init) {
+        T bpe = factory.create(type, uri);
+        if (init != null) {
+            init.accept(bpe);
+        }
+        return bpe;
+    }
+
+    // not within computeIfAbsent, so that a thread never waits for the lock holding a map bin
+    private void add(BioPAXElement bpe) {
+        synchronized (lock) {
+            model.add(bpe);
+        }
+    }
+}
@@ -0,0 +1,613 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.model.IxnRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the CTD_chem_gene_ixns_structured.xml ixn elements into {@link IxnRecord}s, the same as {@link XmlIxnReader},
+ * with a parser specialized to the schema (CTD_chem_gene_ixns_structured.xsd) instead of a general-purpose XML stack:
+ * it scans the (UTF-8) bytes itself, recognizes the ixn, taxon, reference, axn and actor elements and their attributes
+ * by comparing the name bytes, and makes strings only of the attribute values and texts the records keep;
+ * no per-element events or objects.
+ *
+ * The comments, CDATA sections, processing instructions, DOCTYPE (with no entity declarations),
+ * character and predefined entity references, and line ends are handled as by an XML parser;
+ * the tag syntax and the end tags within an ixn element are checked, but not all the well-formedness rules.
+ */
+public class ByteXmlIxnReader implements IxnRecordReader {
+    private static Logger log = LoggerFactory.getLogger(ByteXmlIxnReader.class);
+
+    private static final byte[] IXN = bytes("ixn");
+    private static final byte[] ACTOR = bytes("actor");
+    private static final byte[] AXN = bytes("axn");
+    private static final byte[] TAXON = bytes("taxon");
+    private static final byte[] REFERENCE = bytes("reference");
+
+    // the attributes used, by slot
+    private static final byte[][] ATTRIBUTES = {
+        bytes("id"), bytes("type"), bytes("form"), bytes("formqualifier"), bytes("code"), bytes("degreecode"), bytes("pmid")
+    };
+    private static final int ID = 0;
+    private static final int TYPE = 1;
+    private static final int FORM = 2;
+    private static final int FORM_QUALIFIER = 3;
+    private static final int CODE = 4;
+    private static final int DEGREE_CODE = 5;
+    private static final int PMID = 6;
+
+    private static final byte[] COMMENT_END = bytes("-->");
+    private static final byte[] CDATA_START = bytes("CDATA[");
+    private static final byte[] CDATA_END = bytes("]]>");
+    private static final byte[] PI_END = bytes("?>");
+
+    // the tokens
+    private static final int EOF = 0;
+    private static final int START = 1;
+    private static final int END = 2;
+
+    private final InputStream in;
+    private final byte[] buf = new byte[1 << 16];
+    private int pos;
+    private int limit;
+    private long consumed; //bytes before the buffer
+    private boolean started;
+    private long tagStart; //offset of the last tag read
+    private long recordStart = -1;
+    private long recordEnd = -1;
+    private final IxnRecord.Builder builder = new IxnRecord.Builder();
+
+    // the last start or end tag's name, and the start tag's attribute values (by slot)
+    private byte[] name = new byte[32];
+    private int nameLength;
+    private byte[] attributeName = new byte[32];
+    private int nameRead;
+    private final String[] attributes = new String[ATTRIBUTES.length];
+    private boolean emptyElement; //the last start tag was <.../>, the next token is its end
+    private int open; //elements open outside an ixn
+
+    // where the character data goes (or nowhere)
+    private Bytes out;
+    private final Bytes text = new Bytes();
+    private final Bytes value = new Bytes();
+    // the few distinct values (e.g. actor types, forms, axn codes, taxa), made into strings once
+    private final StringCache values = new StringCache();
+
+    /**
+     * @param inputStream the XML document (uncompressed), buffered by this reader; closed by {@link #close()}
+     */
+    public ByteXmlIxnReader(InputStream inputStream) {
+        this.in = inputStream;
+    }
+
+    @Override
+    public IxnRecord read() throws IOException {
+        out = null;
+        try {
+            while (true) {
+                switch (next()) {
+                    case START:
+                        if (is(IXN)) {
+                            recordStart = tagStart;
+                            IxnRecord rec = readIxn();
+                            recordEnd = consumed + pos;
+                            return rec;
+                        }
+                        open++;
+                        break;
+                    case END:
+                        if (--open < 0) {
+                            throw new IOException("Unexpected end tag: " + name());
+                        }
+                        break;
+                    default:
+                        if (open > 0) {
+                            throw new IOException("Unexpected end of document");
+                        }
+                        return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Failed parsing the XML: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the byte offset, in the input, of the last record's ixn start tag, or -1
+     */
+    public long getRecordStart() {
+        return recordStart;
+    }
+
+    /**
+     * @return the byte offset, in the input, after the last record's ixn end tag, or -1
+     */
+    public long getRecordEnd() {
+        return recordEnd;
+    }
+
+    private IxnRecord readIxn() throws IOException {
+        builder.begin(Long.parseLong(attributes[ID]));
+        text.clear();
+        out = text;
+        int depth = 1; //open ixn and actor elements
+        while (depth > 0) {
+            switch (next()) {
+                case START:
+                    if (is(ACTOR)) {
+                        builder.startActor(attributes[TYPE], attributes[ID],
+                            attributes[FORM], attributes[FORM_QUALIFIER]);
+                        text.clear();
+                        depth++;
+                    } else if (is(AXN)) {
+                        String code = attributes[CODE];
+                        String degree = attributes[DEGREE_CODE];
+                        elementText(AXN);
+                        builder.axn(code, degree, value.string());
+                    } else if (is(TAXON)) {
+                        String id = attributes[ID];
+                        elementText(TAXON);
+                        builder.taxon(id, values.get(value));
+                    } else if (is(REFERENCE)) {
+                        String pmid = attributes[PMID];
+                        long id = CtdUtil.parseId(pmid);
+                        if (id >= 0) {
+                            builder.pmid(id);
+                        } else {
+                            log.warn("Ignored invalid pmid: " + pmid);
+                        }
+                        elementText(REFERENCE);
+                    } else {
+                        skipElement();
+                    }
+                    break;
+                case END:
+                    if (!is((depth > 1) ? ACTOR : IXN)) {
+                        throw new IOException("Unexpected end tag: " + name());
+                    }
+                    if (depth > 1) {
+                        builder.actorText(text.string());
+                        builder.endActor();
+                        text.clear();
+                    }
+                    depth--;
+                    break;
+                default:
+                    throw new IOException("Unexpected end of document");
+            }
+        }
+        out = null;
+        return builder.build();
+    }
+
+    // reads the text of the element just started, up to its end tag, into the value
+    private void elementText(byte[] element) throws IOException {
+        Bytes saved = out;
+        value.clear();
+        out = value;
+        int token = next();
+        out = saved;
+        if (token == START) {
+            throw new IOException("Unexpected element in " + new String(element, StandardCharsets.US_ASCII)
+                + ": " + name());
+        } else if (token == EOF) {
+            throw new IOException("Unexpected end of document");
+        } else if (!is(element)) {
+            throw new IOException("Unexpected end tag: " + name());
+        }
+    }
+
+    private void skipElement() throws IOException {
+        Bytes saved = out;
+        out = null;
+        int depth = 1;
+        while (depth > 0) {
+            switch (next()) {
+                case START:
+                    depth++;
+                    break;
+                case END:
+                    depth--;
+                    break;
+                default:
+                    throw new IOException("Unexpected end of document");
+            }
+        }
+        out = saved;
+    }
+
+    /*
+     * Reads up to the next start or end tag (an empty element tag is both), passing the character data
+     * to the current output, if any, and skipping the comments, processing instructions and declarations.
+     */
+    private int next() throws IOException {
+        if (emptyElement) {
+            emptyElement = false;
+            return END;
+        }
+        while (true) {
+            if (pos == limit && !fill()) {
+                return EOF;
+            }
+            int from = pos;
+            while (pos < limit) {
+                byte b = buf[pos];
+                if (b == '<' || b == '&' || b == '\r') {
+                    break;
+                }
+                pos++;
+            }
+            if (out != null) {
+                out.add(buf, from, pos);
+            }
+            if (pos == limit) {
+                continue;
+            }
+            byte b = buf[pos++];
+            if (b == '&') {
+                if (out != null) {
+                    reference(out);
+                }
+            } else if (b == '\r') {
+                if (out != null) {
+                    out.add('\n');
+                }
+                if (peek() == '\n') {
+                    pos++;
+                }
+            } else {
+                tagStart = consumed + pos - 1;
+                int c = readByte();
+                if (c == '/') {
+                    readName(readByte());
+                    if (skipSpace() != '>') {
+                        throw new IOException("Bad end tag: " + name());
+                    }
+                    return END;
+                } else if (c == '?') {
+                    skip(PI_END, null);
+                } else if (c == '!') {
+                    declaration();
+                } else {
+                    return startTag(c);
+                }
+            }
+        }
+    }
+
+    private int startTag(int first) throws IOException {
+        readName(first);
+        Arrays.fill(attributes, null);
+        while (true) {
+            int b = skipSpace();
+            if (b == '>') {
+                return START;
+            } else if (b == '/') {
+                if (readByte() != '>') {
+                    throw new IOException("Bad start tag: " + name());
+                }
+                emptyElement = true;
+                return START;
+            }
+            int slot = attribute(b);
+            if (skipSpace() != '=') {
+                throw new IOException("Bad attribute in start tag: " + name());
+            }
+            int quote = skipSpace();
+            if (quote != '"' && quote != '\'') {
+                throw new IOException("Bad attribute value in start tag: " + name());
+            }
+            if (slot >= 0) {
+                value.clear();
+            }
+            while ((b = readByte()) != quote) {
+                if (b < 0 || b == '<') {
+                    throw new IOException("Bad attribute value in start tag: " + name());
+                } else if (slot < 0) {
+                    continue;
+                } else if (b == '&') {
+                    reference(value);
+                } else if (b == '\r') {
+                    value.add(' ');
+                    if (peek() == '\n') {
+                        pos++;
+                    }
+                } else if (b == '\n' || b == '\t') {
+                    value.add(' ');
+                } else {
+                    value.add(b);
+                }
+            }
+            if (slot >= 0) {
+                attributes[slot] = (slot == ID || slot == PMID) ? value.string() : values.get(value);
+            }
+        }
+    }
+
+    // reads an attribute name, starting with the byte; returns the slot of the attribute, or -1 if it's not used
+    private int attribute(int first) throws IOException {
+        attributeName = readName(first, attributeName);
+        for (int i = 0; i < ATTRIBUTES.length; i++) {
+            if (equals(attributeName, nameRead, ATTRIBUTES[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void readName(int first) throws IOException {
+        name = readName(first, name);
+        nameLength = nameRead;
+    }
+
+    // reads a name, starting with the byte, into the array (or a larger copy), which it returns; sets nameRead
+    private byte[] readName(int first, byte[] to) throws IOException {
+        if (first < 0 || isNameEnd(first)) {
+            throw new IOException((first < 0) ? "Unexpected end of document" : "Bad tag");
+        }
+        int n = 0;
+        int b = first;
+        do {
+            if (n == to.length) {
+                to = Arrays.copyOf(to, 2 * n);
+            }
+            to[n++] = (byte) b;
+            b = readByte();
+        } while (b >= 0 && !isNameEnd(b));
+        if (b >= 0) {
+            pos--; //the byte just read from the buffer
+        }
+        nameRead = n;
+        return to;
+    }
+
+    // after '<!': a comment, CDATA section (character data) or DOCTYPE
+    private void declaration() throws IOException {
+        int b = readByte();
+        if (b == '-') {
+            if (readByte() != '-') {
+                throw new IOException("Bad comment");
+            }
+            skip(COMMENT_END, null);
+        } else if (b == '[') {
+            for (byte c : CDATA_START) {
+                if (readByte() != c) {
+                    throw new IOException("Bad CDATA section");
+                }
+            }
+            skip(CDATA_END, out);
+        } else {
+            // up to the '>' outside of quotes and the internal subset
+            int quote = 0;
+            int brackets = 0;
+            while (b != '>' || quote != 0 || brackets > 0) {
+                if (b < 0) {
+                    throw new IOException("Unexpected end of document");
+                } else if (quote != 0) {
+                    if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '[') {
+                    brackets++;
+                } else if (b == ']') {
+                    brackets--;
+                }
+                b = readByte();
+            }
+        }
+    }
+
+    /*
+     * Skips up to and including the end marker (e.g. "-->"; all its bytes but the last one are the same),
+     * passing the bytes before it, with the line ends normalized, to the output, if any.
+     */
+    private void skip(byte[] end, Bytes output) throws IOException {
+        int matched = 0;
+        while (matched < end.length) {
+            int b = readByte();
+            if (b < 0) {
+                throw new IOException("Unexpected end of document");
+            }
+            if (b == end[matched]) {
+                matched++;
+            } else if (b != end[0]) {
+                matched = 0;
+            }
+            if (output != null) {
+                if (b == '\r') {
+                    output.add('\n');
+                    if (peek() == '\n') {
+                        pos++;
+                    }
+                } else {
+                    output.add(b);
+                }
+            }
+        }
+        if (output != null) {
+            output.length -= end.length;
+        }
+    }
+
+    // after '&': a character or predefined entity reference
+    private void reference(Bytes output) throws IOException {
+        int from = output.length;
+        int b;
+        while ((b = readByte()) != ';') {
+            if (b < 0 || b == '<' || output.length - from > 10) {
+                throw new IOException("Bad reference");
+            }
+            output.add(b);
+        }
+        String ref = new String(output.bytes, from, output.length - from, StandardCharsets.US_ASCII);
+        output.length = from;
+        switch (ref) {
+            case "lt":
+                output.add('<');
+                break;
+            case "gt":
+                output.add('>');
+                break;
+            case "amp":
+                output.add('&');
+                break;
+            case "apos":
+                output.add('\'');
+                break;
+            case "quot":
+                output.add('"');
+                break;
+            default:
+                if (!ref.startsWith("#") || ref.length() < 2) {
+                    throw new IOException("Undeclared entity: " + ref);
+                }
+                int codePoint;
+                try {
+                    codePoint = (ref.charAt(1) == 'x')
+                        ? Integer.parseInt(ref.substring(2), 16) : Integer.parseInt(ref.substring(1));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad character reference: " + ref);
+                }
+                if (!Character.isValidCodePoint(codePoint)) {
+                    throw new IOException("Bad character reference: " + ref);
+                }
+                for (byte c : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+                    output.add(c);
+                }
+        }
+    }
+
+    private int skipSpace() throws IOException {
+        int b;
+        do {
+            b = readByte();
+        } while (b == ' ' || b == '\n' || b == '\t' || b == '\r');
+        return b;
+    }
+
+    private boolean is(byte[] s) {
+        return equals(name, nameLength, s);
+    }
+
+    private static boolean equals(byte[] b, int length, byte[] s) {
+        if (length != s.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (b[i] != s[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String name() {
+        return new String(name, 0, nameLength, StandardCharsets.UTF_8);
+    }
+
+    private int readByte() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf[pos] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buf, 0, buf.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        consumed += limit;
+        pos = 0;
+        limit = n;
+        if (!started) {
+            started = true;
+            if (n >= 3 && buf[0] == (byte) 0xEF && buf[1] == (byte) 0xBB && buf[2] == (byte) 0xBF) {
+                pos = 3; //the UTF-8 byte order mark
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(int b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '>' || b == '/' || b == '=';
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // the strings by UTF-8 bytes, in a small direct-mapped table (a value replaces the other one in its entry)
+    private static final class StringCache {
+        private static final int SIZE = 256;
+        private final byte[][] keys = new byte[SIZE][];
+        private final String[] strings = new String[SIZE];
+
+        String get(Bytes b) {
+            int hash = 0;
+            for (int i = 0; i < b.length; i++) {
+                hash = 31 * hash + b.bytes[i];
+            }
+            int i = (hash ^ (hash >>> 16)) & (SIZE - 1);
+            byte[] key = keys[i];
+            if (key == null || !ByteXmlIxnReader.equals(b.bytes, b.length, key)) {
+                keys[i] = Arrays.copyOf(b.bytes, b.length);
+                strings[i] = b.string();
+            }
+            return strings[i];
+        }
+    }
+
+    // a growable byte array, for the UTF-8 text
+    private static final class Bytes {
+        byte[] bytes = new byte[256];
+        int length;
+
+        void add(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * length);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        void add(byte[] b, int from, int to) {
+            int n = to - from;
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + n));
+            }
+            System.arraycopy(b, from, bytes, length, n);
+            length += n;
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        String string() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package org.ctdbase.io;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.model.Actor;
+import org.ctdbase.util.model.IxnRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Index of an (uncompressed) CTD_chem_gene_ixns_structured.xml file: the byte range of every top-level ixn element
+ * by the ixn id, and by the id of each chemical and gene actor in it (nested ones too), so that the interactions
+ * of a few ids can be converted without parsing the whole file (see {@link #select(long[])}).
+ *
+ * The index file, next to the XML file, starts with a fixed-size header: magic, format version, XML file size
+ * and last modification time, and the number of entries; then come the fixed-size entries (key, offset, length),
+ * sorted by the key, and by the offset for the same key, which is looked up by binary search.
+ * A key is an ixn id (less than 2^44), or a packed actor id (see {@link CtdUtil#packActorId(String)}).
+ */
+public final class IxnIndex {
+    private static Logger log = LoggerFactory.getLogger(IxnIndex.class);
+
+    static final int MAGIC = 0x43544449; // "CTDI"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int ENTRY_SIZE = 20;
+
+    public static final String EXTENSION = ".ixni";
+
+    private static final byte[] IXN_START = "<ixn".getBytes(StandardCharsets.US_ASCII);
+    // max. size of the mapped XML file region
+    private static final long WINDOW = 1 << 28;
+
+    private final Path xml;
+    private final Path index;
+    private final long entries;
+
+    private IxnIndex(Path xml, Path index, long entries) {
+        this.xml = xml;
+        this.index = index;
+        this.entries = entries;
+    }
+
+    /**
+     * @param xml uncompressed CTD interactions file
+     * @return the index file path for the XML file, i.e. next to it
+     */
+    public static Path indexFile(Path xml) {
+        return xml.resolveSibling(xml.getFileName() + EXTENSION);
+    }
+
+    /**
+     * @param source CTD interactions file, possibly compressed (.gz)
+     * @return the source itself if it's not compressed, or else its uncompressed copy next to it
+     *         (the same name without '.gz')
+     */
+    public static Path uncompressedFile(Path source) {
+        String name = source.getFileName().toString();
+        return (StringUtils.endsWith(name, ".gz")) ? source.resolveSibling(name.substring(0, name.length() - 3)) : source;
+    }
+
+    /**
+     * Makes the uncompressed copy of the source (see {@link #uncompressedFile(Path)}),
+     * unless it's there and is not older than the source.
+     *
+     * @return the uncompressed file
+     */
+    public static Path uncompressedCopy(Path source) throws IOException {
+        Path copy = uncompressedFile(source);
+        if (copy.equals(source) || isUpToDate(copy, source)) {
+            return copy;
+        }
+        log.info("Decompressing " + source + " to " + copy);
+        Path tmp = Files.createTempFile(copy.toAbsolutePath().getParent(), copy.getFileName().toString(), ".tmp");
+        try {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(source), 1 << 16)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmp, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return copy;
+    }
+
+    /**
+     * Parses the whole XML file (the uncompressed copy of a compressed one, made if needed) and (re-)writes its index.
+     *
+     * @param source CTD interactions file, possibly compressed
+     * @return the number of the index entries
+     */
+    public static long build(Path source) throws IOException {
+        Path xml = uncompressedCopy(source);
+        long size = Files.size(xml);
+        long modified = Files.getLastModifiedTime(xml).toMillis();
+        // the keys (and their record numbers) and the records' byte ranges, in the file order
+        long[] keys = new long[1 << 16];
+        int[] keyRecords = new int[keys.length];
+        int keyCount = 0;
+        long[] offsets = new long[1 << 14];
+        int[] lengths = new int[offsets.length];
+        int records = 0;
+        long[] recordKeys = new long[16];
+        try (ByteXmlIxnReader reader =
+                 new ByteXmlIxnReader(new BufferedInputStream(Files.newInputStream(xml), 1 << 16))) {
+            IxnRecord rec;
+            while ((rec = reader.read()) != null) {
+                if (records == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, 2 * records);
+                    lengths = Arrays.copyOf(lengths, 2 * records);
+                }
+                long length = reader.getRecordEnd() - reader.getRecordStart();
+                if (rec.getId() < 0 || rec.getId() >= (1L << 44) || length > Integer.MAX_VALUE) {
+                    throw new IOException("Cannot index the ixn " + rec.getId() + " at " + reader.getRecordStart());
+                }
+                offsets[records] = reader.getRecordStart();
+                lengths[records] = (int) length;
+                // the distinct keys of the record
+                int n = 0;
+                recordKeys[n++] = rec.getId();
+                for (int a = 0; a < rec.getActorCount(); a++) {
+                    Actor type = rec.getActorType(a);
+                    long key = (type == Actor.CHEMICAL || type == Actor.GENE)
+                        ? CtdUtil.packActorId(rec.getActorId(a)) : -1;
+                    if (key >= 0 && !contains(recordKeys, n, key)) {
+                        if (n == recordKeys.length) {
+                            recordKeys = Arrays.copyOf(recordKeys, 2 * n);
+                        }
+                        recordKeys[n++] = key;
+                    }
+                }
+                if (keyCount + n > keys.length) {
+                    int capacity = Math.max(2 * keys.length, keyCount + n);
+                    keys = Arrays.copyOf(keys, capacity);
+                    keyRecords = Arrays.copyOf(keyRecords, capacity);
+                }
+                for (int i = 0; i < n; i++) {
+                    keys[keyCount] = recordKeys[i];
+                    keyRecords[keyCount++] = records;
+                }
+                records++;
+            }
+        }
+
+        // sort the entries by the key rank (in the distinct keys) and the record number, packed into longs
+        long[] distinct = Arrays.copyOf(keys, keyCount);
+        Arrays.sort(distinct);
+        int distinctCount = 0;
+        for (int i = 0; i < keyCount; i++) {
+            if (distinctCount == 0 || distinct[i] != distinct[distinctCount - 1]) {
+                distinct[distinctCount++] = distinct[i];
+            }
+        }
+        long[] sorted = new long[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            long rank = Arrays.binarySearch(distinct, 0, distinctCount, keys[i]);
+            sorted[i] = (rank << 32) | keyRecords[i];
+        }
+        Arrays.sort(sorted);
+
+        Path index = indexFile(xml);
+        Path tmp = Files.createTempFile(index.toAbsolutePath().getParent(), index.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeLong(keyCount);
+                for (long entry : sorted) {
+                    int record = (int) entry;
+                    out.writeLong(distinct[(int) (entry >>> 32)]);
+                    out.writeLong(offsets[record]);
+                    out.writeInt(lengths[record]);
+                }
+            }
+            Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        log.info("Indexed " + records + " interactions of " + xml + " by " + distinctCount + " ids: " + index);
+        return keyCount;
+    }
+
+    /**
+     * Opens the index of the XML file (the uncompressed copy of a compressed one)
+     * if it is of the current format version and up to date.
+     *
+     * @param source CTD interactions file, possibly compressed
+     * @return the index, or null if there is none or it is stale
+     */
+    public static IxnIndex open(Path source) throws IOException {
+        Path xml = uncompressedFile(source);
+        Path index = indexFile(xml);
+        if (!Files.isRegularFile(index)) {
+            return null;
+        }
+        if (!xml.equals(source) && !isUpToDate(xml, source)) {
+            log.warn("Ignored " + index + ": " + xml + " is missing or older than " + source);
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0);
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            log.warn("Ignored " + index + ": not an index file");
+            return null;
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            log.warn("Ignored " + index + ": format version " + version + " (expected " + VERSION + ")");
+            return null;
+        }
+        if (header.getLong() != Files.size(xml) || header.getLong() != Files.getLastModifiedTime(xml).toMillis()) {
+            log.warn("Ignored " + index + ": stale, made of a different " + xml);
+            return null;
+        }
+        long entries = header.getLong();
+        if (Files.size(index) != HEADER_SIZE + entries * ENTRY_SIZE) {
+            log.warn("Ignored " + index + ": truncated");
+            return null;
+        }
+        return new IxnIndex(xml, index, entries);
+    }
+
+    /**
+     * @param id an ixn id (decimal), or a chemical or gene actor id, e.g. 'MESH:D000001' or 'GENE:7157'
+     * @return the index key, or -1 if the id has other format
+     */
+    public static long key(String id) {
+        long ixnId = CtdUtil.parseId(id);
+        if (ixnId >= 0) {
+            return (ixnId < (1L << 44)) ? ixnId : -1;
+        }
+        return CtdUtil.packActorId(id);
+    }
+
+    /**
+     * Reads the ids (see {@link #key(String)}), one per line, except for the empty and #comment lines.
+     *
+     * @return the distinct keys, sorted
+     */
+    public static long[] readKeys(Path file) throws IOException {
+        long[] keys = new long[16];
+        int n = 0;
+        int lineNo = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            long key = key(line);
+            if (key < 0) {
+                throw new IOException(file + ":" + lineNo + ": not an ixn, chemical or gene id: " + line);
+            }
+            if (n == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * n);
+            }
+            keys[n++] = key;
+        }
+        return Arrays.stream(keys, 0, n).sorted().distinct().toArray();
+    }
+
+    public Path getXml() {
+        return xml;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * Looks up the keys, and reads the interactions that have any of them, in the file order,
+     * from the memory-mapped XML file, each one once.
+     *
+     * @param keys index keys (see {@link #key(String)})
+     * @return the records reader
+     */
+    public Selection select(long[] keys) throws IOException {
+        long[] offsets = new long[16];
+        int[] lengths = new int[16];
+        int n = 0;
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            for (long key : keys) {
+                // the first entry with the key
+                long lo = 0;
+                long hi = entries;
+                while (lo < hi) {
+                    long mid = (lo + hi) >>> 1;
+                    if (readEntry(channel, mid, entry).getLong(0) < key) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                for (long i = lo; i < entries && readEntry(channel, i, entry).getLong(0) == key; i++) {
+                    if (n == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, 2 * n);
+                        lengths = Arrays.copyOf(lengths, 2 * n);
+                    }
+                    offsets[n] = entry.getLong(8);
+                    lengths[n++] = entry.getInt(16);
+                }
+            }
+        }
+        // in the file order, each record once
+        long[][] ranges = new long[n][];
+        for (int i = 0; i < n; i++) {
+            ranges[i] = new long[] {offsets[i], lengths[i]};
+        }
+        Arrays.sort(ranges, (a, b) -> Long.compare(a[0], b[0]));
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (count == 0 || ranges[i][0] != ranges[count - 1][0]) {
+                ranges[count++] = ranges[i];
+            }
+        }
+        return new Selection(xml, Arrays.copyOf(ranges, count));
+    }
+
+    private static ByteBuffer readEntry(FileChannel channel, long i, ByteBuffer entry) throws IOException {
+        entry.clear();
+        long position = HEADER_SIZE + i * ENTRY_SIZE;
+        while (entry.hasRemaining()) {
+            if (channel.read(entry, position + entry.position()) < 0) {
+                throw new IOException("Truncated index entry " + i);
+            }
+        }
+        return entry;
+    }
+
+    private static boolean isUpToDate(Path copy, Path source) throws IOException {
+        return Files.isRegularFile(copy)
+            && Files.getLastModifiedTime(copy).compareTo(Files.getLastModifiedTime(source)) >= 0;
+    }
+
+    private static boolean contains(long[] keys, int n, long key) {
+        for (int i = 0; i < n; i++) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The interactions selected from the index, parsed from the XML file byte ranges
+     * (mapped in windows, so that files larger than 2 GB are fine too).
+     */
+    public static final class Selection implements IxnRecordReader {
+        private final Path xml;
+        private final FileChannel channel;
+        private final long[][] ranges;
+        private final IxnRecordReader reader;
+
+        private Selection(Path xml, long[][] ranges) throws IOException {
+            this.xml = xml;
+            this.channel = FileChannel.open(xml, StandardOpenOption.READ);
+            this.ranges = ranges;
+            // the ixn elements, one after another, are parsed as if they were a document
+            this.reader = new ByteXmlIxnReader(new RangesInputStream());
+        }
+
+        /**
+         * @return the number of the interactions selected
+         */
+        public int size() {
+            return ranges.length;
+        }
+
+        @Override
+        public IxnRecord read() throws IOException {
+            return reader.read();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private final class RangesInputStream extends InputStream {
+            private MappedByteBuffer window;
+            private long windowStart;
+            private int range = -1;
+            private int remaining;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                while (remaining == 0) {
+                    if (++range == ranges.length) {
+                        return -1;
+                    }
+                    map(ranges[range][0], (int) ranges[range][1]);
+                }
+                int n = Math.min(len, remaining);
+                window.get(b, off, n);
+                remaining -= n;
+                return n;
+            }
+
+            // positions the window at the range, mapping another part of the file if needed
+            private void map(long offset, int length) throws IOException {
+                if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+                    long size = Math.min(channel.size() - offset, Math.max(WINDOW, length));
+                    if (size < length) {
+                        throw new IOException(xml + " is shorter than indexed");
+                    }
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                    windowStart = offset;
+                }
+                window.position((int) (offset - windowStart));
+                for (int i = 0; i < IXN_START.length; i++) {
+                    if (i >= length || window.get(window.position() + i) != IXN_START[i]) {
+                        throw new IOException("No ixn element at " + offset + " of " + xml + " (changed since indexed?)");
+                    }
+                }
+                remaining = length;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        }
+    }
+}
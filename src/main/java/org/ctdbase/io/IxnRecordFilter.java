@@ -0,0 +1,132 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.LongSet;
+import org.ctdbase.util.model.IxnRecord;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Passes only some of the source's interaction records, e.g. for a quick validation run
+ * on a new CTD release: the listed ixn ids, a random sample, and/or the first N of these.
+ * The records it skips are not converted at all, and it stops reading the source once the limit is reached.
+ *
+ * The sample is deterministic: whether a record is in it depends only on the record id, the seed and the rate,
+ * so that the same records are picked from a snapshot as from the XML, and a larger rate picks a superset.
+ */
+public class IxnRecordFilter implements IxnRecordReader {
+    private final IxnRecordReader source;
+    private long limit = -1;
+    private double sampleRate = 1.0;
+    private long seed;
+    private LongSet ids;
+    private long read;
+    private long passed;
+
+    public IxnRecordFilter(IxnRecordReader source) {
+        this.source = source;
+    }
+
+    /**
+     * @param limit max. number of records to pass, or -1 (no limit)
+     */
+    public IxnRecordFilter limit(long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @param sampleRate probability for a record to pass, from 0 to 1
+     * @param seed sampling seed (the same seed and rate pick the same records)
+     */
+    public IxnRecordFilter sample(double sampleRate, long seed) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sample rate: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param ids top-level ixn ids to pass, or null (any)
+     */
+    public IxnRecordFilter ids(LongSet ids) {
+        this.ids = ids;
+        return this;
+    }
+
+    @Override
+    public IxnRecord read() throws IOException {
+        while (limit < 0 || passed < limit) {
+            IxnRecord rec = source.read();
+            if (rec == null) {
+                return null;
+            }
+            read++;
+            if ((ids == null || ids.contains(rec.getId())) && sampled(rec.getId())) {
+                passed++;
+                return rec;
+            }
+        }
+        return null;
+    }
+
+    private boolean sampled(long id) {
+        if (sampleRate >= 1.0) {
+            return true;
+        }
+        // SplitMix64 finalizer of the id and seed, top 53 bits as a double in [0, 1)
+        long z = id * 0x9E3779B97F4A7C15L + seed;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53 < sampleRate;
+    }
+
+    /**
+     * @return the number of records read from the source so far
+     */
+    public long getRead() {
+        return read;
+    }
+
+    /**
+     * @return the number of records passed so far
+     */
+    public long getPassed() {
+        return passed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * Reads a list of ixn ids, one per line; empty lines and #comments are ignored.
+     *
+     * @param file ixn ids file
+     * @return the ids
+     * @throws IOException when the file cannot be read, or has a line that is not a number
+     */
+    public static LongSet readIds(Path file) throws IOException {
+        LongSet ids = new LongSet();
+        int lineNo = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                ids.add(Long.parseLong(line));
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ":" + lineNo + ": not an ixn id: " + line);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,18 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.model.IxnRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of parsed CTD chemical-gene interaction records, in the input order.
+ */
+public interface IxnRecordReader extends Closeable {
+
+    /**
+     * @return the next top-level ixn record, or null when there are no more
+     * @throws IOException when the input cannot be read or parsed
+     */
+    IxnRecord read() throws IOException;
+}
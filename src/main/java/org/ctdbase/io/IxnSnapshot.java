@@ -0,0 +1,104 @@
+package org.ctdbase.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of the parsed CTD interaction records, so that the same XML release
+ * can be converted many times (e.g. with different taxonomy filters) without parsing it again.
+ *
+ * The file starts with a fixed-size header: magic, format version, source file size and CRC32C,
+ * and the number of records (-1 until the snapshot is complete). Then come the records, each one
+ * prefixed with its length; numbers are variable-length encoded and strings are stored
+ * once, at the first use, and then referred to by index (see {@link IxnSnapshotWriter}).
+ */
+public final class IxnSnapshot {
+    private static Logger log = LoggerFactory.getLogger(IxnSnapshot.class);
+
+    static final int MAGIC = 0x43544458; // "CTDX"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int COUNT_OFFSET = 24;
+
+    // string references: 0 - null, 1 - a new string follows, n > 1 - the (n-2)th string
+    static final int NULL_STRING = 0;
+    static final int NEW_STRING = 1;
+
+    // actor type byte for an unknown actor type
+    static final byte UNKNOWN_ACTOR = -1;
+
+    public static final String EXTENSION = ".ixns";
+
+    private IxnSnapshot() {
+    }
+
+    /**
+     * @param source CTD interactions file
+     * @return the snapshot file path for the source, i.e. next to it
+     */
+    public static Path snapshotFile(Path source) {
+        return source.resolveSibling(source.getFileName() + EXTENSION);
+    }
+
+    /**
+     * @return CRC32C of the file content
+     */
+    public static long checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Opens the snapshot if it is complete, of the current format version
+     * and was made from exactly this source file content.
+     *
+     * @param snapshot snapshot file
+     * @param source CTD interactions file the snapshot is expected to be made of
+     * @param sourceChecksum CRC32C of the source (see {@link #checksum(Path)})
+     * @return the snapshot records reader, or null if there is no snapshot or it is stale or incomplete
+     */
+    public static IxnSnapshotReader open(Path snapshot, Path source, long sourceChecksum) throws IOException {
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0);
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            log.warn("Ignored " + snapshot + ": not a snapshot file");
+            return null;
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            log.warn("Ignored " + snapshot + ": format version " + version + " (expected " + VERSION + ")");
+            return null;
+        }
+        if (header.getLong() != Files.size(source) || header.getLong() != sourceChecksum) {
+            log.warn("Ignored " + snapshot + ": stale, made of a different " + source);
+            return null;
+        }
+        if (header.getLong() < 0) {
+            log.warn("Ignored " + snapshot + ": incomplete");
+            return null;
+        }
+        return new IxnSnapshotReader(snapshot);
+    }
+}
@@ -0,0 +1,159 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.model.Actor;
+import org.ctdbase.util.model.AxnCode;
+import org.ctdbase.util.model.IxnRecord;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads {@link IxnRecord}s from a snapshot file (see {@link IxnSnapshot}, {@link IxnSnapshotWriter}),
+ * which is memory-mapped in windows, so that files larger than 2 GB are fine too.
+ * Equal strings come back as the same instance.
+ * Use {@link IxnSnapshot#open(Path, Path, long)} to check the snapshot is up to date first.
+ */
+public class IxnSnapshotReader implements IxnRecordReader {
+    private static final int DEFAULT_WINDOW = 1 << 28;
+    private static final AxnCode[] AXN_CODES = AxnCode.values();
+    private static final Actor[] ACTORS = Actor.values();
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final IxnRecord.Builder builder = new IxnRecord.Builder();
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position = IxnSnapshot.HEADER_SIZE;
+    private int pos; // position in the window
+    private String[] strings = new String[1024];
+    private int stringCount;
+    private byte[] bytes = new byte[256];
+
+    public IxnSnapshotReader(Path snapshot) throws IOException {
+        this(snapshot, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param snapshot snapshot file
+     * @param windowSize max. size of the mapped file region (bytes); a record must fit into it
+     */
+    public IxnSnapshotReader(Path snapshot, int windowSize) throws IOException {
+        this.channel = FileChannel.open(snapshot, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public IxnRecord read() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        try {
+            map(position, 10);
+            int length = (int) readVarLong();
+            map(windowStart + pos, length);
+            position = windowStart + pos + length;
+
+            builder.begin(readVarLong());
+            for (int i = readVarInt(); i > 0; i--) {
+                builder.taxon(readString(), readString());
+            }
+            for (int i = readVarInt(); i > 0; i--) {
+                builder.pmid(readVarLong());
+            }
+            String unknownTerm = readString();
+            String unknownValue = readString();
+            if (unknownTerm != null) {
+                builder.unknown(unknownTerm, unknownValue);
+            }
+            readNode();
+            if (windowStart + pos != position) {
+                throw new IOException("Corrupted snapshot record at " + (windowStart + pos));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated snapshot record at " + position, e);
+        }
+        return builder.build();
+    }
+
+    private void readNode() {
+        for (int i = readVarInt(); i > 0; i--) {
+            builder.axn(AXN_CODES[window.get(pos++)], (char) readVarInt(), readString());
+        }
+        for (int i = readVarInt(); i > 0; i--) {
+            byte type = window.get(pos++);
+            Actor actor = (type == IxnSnapshot.UNKNOWN_ACTOR) ? null : ACTORS[type];
+            builder.startActor(actor, readString(), readString(), readString());
+            if (actor == Actor.IXN) {
+                readNode();
+            } else {
+                builder.actorText(readString());
+            }
+            builder.endActor();
+        }
+    }
+
+    // makes sure the window covers the bytes from the (absolute) start, or up to the end of file
+    private void map(long start, int length) throws IOException {
+        if (window == null || start < windowStart
+            || start + length > windowStart + window.limit() && windowStart + window.limit() < size)
+        {
+            if (length > windowSize) {
+                throw new IOException("Snapshot record at " + start + " is larger than the mapping window");
+            }
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+        }
+        pos = (int) (start - windowStart);
+    }
+
+    private String readString() {
+        int ref = readVarInt();
+        if (ref == IxnSnapshot.NULL_STRING) {
+            return null;
+        }
+        if (ref != IxnSnapshot.NEW_STRING) {
+            return strings[ref - 2];
+        }
+        int length = readVarInt();
+        if (length > bytes.length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        window.get(pos, bytes, 0, length);
+        pos += length;
+        String s = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        strings[stringCount++] = s;
+        return s;
+    }
+
+    private int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    private long readVarLong() {
+        long n = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = window.get(pos++);
+            n |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
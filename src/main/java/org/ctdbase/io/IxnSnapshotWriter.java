@@ -0,0 +1,218 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.model.Actor;
+import org.ctdbase.util.model.AxnCode;
+import org.ctdbase.util.model.IxnRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes {@link IxnRecord}s to a snapshot file (see {@link IxnSnapshot} for the format).
+ *
+ * The records go to a temporary file, which replaces the snapshot only on {@link #commit()};
+ * closing an uncommitted writer deletes it, so that a failed run does not leave a partial snapshot.
+ *
+ * A record is written as its tree of ixn nodes, in the order the {@link IxnRecord.Builder} takes them:
+ * id, taxa, PubMed ids, unknown term and its value, then the top node - its axns (code, degree, text) and actors
+ * (type, id, form, form qualifier, and then either the nested node or the actor's text).
+ */
+public class IxnSnapshotWriter implements Closeable {
+    private final Path snapshot;
+    private final Path tmp;
+    private final OutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private byte[] buf = new byte[4096];
+    private int len;
+    private long count;
+    private boolean closed;
+
+    /**
+     * @param snapshot the snapshot file to (re-)create
+     * @param sourceSize source file size
+     * @param sourceChecksum source file CRC32C (see {@link IxnSnapshot#checksum(Path)})
+     */
+    public IxnSnapshotWriter(Path snapshot, long sourceSize, long sourceChecksum) throws IOException {
+        this.snapshot = snapshot;
+        // unique, so that concurrent runs do not write the same temporary file
+        this.tmp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(), ".tmp");
+        this.out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16);
+        ByteBuffer header = ByteBuffer.allocate(IxnSnapshot.HEADER_SIZE);
+        header.putInt(IxnSnapshot.MAGIC).putInt(IxnSnapshot.VERSION)
+            .putLong(sourceSize).putLong(sourceChecksum).putLong(-1L);
+        out.write(header.array());
+    }
+
+    public void write(IxnRecord rec) throws IOException {
+        len = 0;
+        writeVarLong(rec.getId());
+        writeVarInt(rec.getTaxonCount());
+        for (int i = 0; i < rec.getTaxonCount(); i++) {
+            writeString(rec.getTaxonId(i));
+            writeString(rec.getTaxonName(i));
+        }
+        writeVarInt(rec.getPmidCount());
+        for (int i = 0; i < rec.getPmidCount(); i++) {
+            writeVarLong(rec.getPmid(i));
+        }
+        writeString(rec.getUnknownTerm());
+        writeString(rec.getUnknownValue());
+        writeNode(rec, 0);
+
+        // record length prefix, then the record
+        int body = len;
+        long n = body;
+        do {
+            int b = (int) (n & 0x7F);
+            n >>>= 7;
+            out.write((n != 0) ? (b | 0x80) : b);
+        } while (n != 0);
+        out.write(buf, 0, body);
+        count++;
+    }
+
+    private void writeNode(IxnRecord rec, int node) {
+        int axnStart = rec.getAxnStart(node);
+        int axns = rec.getAxnCount(node);
+        writeVarInt(axns);
+        for (int i = axnStart; i < axnStart + axns; i++) {
+            AxnCode code = rec.getAxnCode(i);
+            writeByte(code.ordinal());
+            writeVarInt(rec.getAxnDegree(i));
+            writeString(rec.getAxnText(i));
+        }
+        int actorStart = rec.getActorStart(node);
+        int actors = rec.getActorCount(node);
+        writeVarInt(actors);
+        for (int a = actorStart; a < actorStart + actors; a++) {
+            int child = rec.getActorNode(a);
+            Actor type = rec.getActorType(a);
+            // an unknown type is stored as IXN in the record, but does not have the nested node
+            writeByte((type == Actor.IXN && child < 0) ? IxnSnapshot.UNKNOWN_ACTOR : type.ordinal());
+            writeString(rec.getActorId(a));
+            writeString(rec.getActorForm(a));
+            writeString(rec.getActorFormQualifier(a));
+            if (child >= 0) {
+                writeNode(rec, child);
+            } else {
+                writeString(rec.getActorName(a));
+            }
+        }
+    }
+
+    /**
+     * Completes the snapshot: sets the number of records in the header
+     * and moves the file in place of the previous snapshot, if any.
+     *
+     * @return the number of records written
+     */
+    public long commit() throws IOException {
+        out.close();
+        closed = true;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ByteBuffer n = ByteBuffer.allocate(8).putLong(0, count);
+            channel.write(n, IxnSnapshot.COUNT_OFFSET);
+            channel.force(true);
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * @return a reader that writes all the records it reads from the source to this snapshot,
+     *         and commits it at the end of the source; closing the reader closes both the source and this writer.
+     */
+    public IxnRecordReader tee(IxnRecordReader source) {
+        return new IxnRecordReader() {
+            @Override
+            public IxnRecord read() throws IOException {
+                IxnRecord rec = source.read();
+                if (rec != null) {
+                    write(rec);
+                } else if (!closed) {
+                    commit();
+                }
+                return rec;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    source.close();
+                } finally {
+                    IxnSnapshotWriter.this.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Discards the snapshot unless it has been committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private void writeString(String s) {
+        if (s == null) {
+            writeVarInt(IxnSnapshot.NULL_STRING);
+            return;
+        }
+        Integer index = strings.get(s);
+        if (index != null) {
+            writeVarInt(index + 2);
+            return;
+        }
+        strings.put(s, strings.size());
+        writeVarInt(IxnSnapshot.NEW_STRING);
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+    }
+
+    private void writeByte(int b) {
+        ensure(1);
+        buf[len++] = (byte) b;
+    }
+
+    private void writeVarInt(int n) {
+        writeVarLong(n & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long n) {
+        ensure(10);
+        while ((n & ~0x7FL) != 0) {
+            buf[len++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        buf[len++] = (byte) n;
+    }
+
+    private void ensure(int bytes) {
+        if (len + bytes > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + bytes));
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXFactory;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.util.CanonicalOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a BioPAX L3 model, which loads much faster than the RDF/XML (OWL) file.
+ *
+ * Format: magic, version, xml:base; then the elements - BioPAX type and URI, in the canonical order
+ * (see {@link CanonicalOrder}); then each element's property values, in that order too - the property name and either the index of the element value,
+ * or a tagged data value (see {@link ValueCodec}). All strings (names, types, properties, URIs) are stored once, at the first use,
+ * and then referred to by index; numbers are variable-length encoded.
+ */
+public final class ModelSnapshot {
+    private static Logger log = LoggerFactory.getLogger(ModelSnapshot.class);
+
+    static final int MAGIC = 0x4354444D; // "CTDM"
+    static final int VERSION = 1;
+
+    public static final String EXTENSION = ".bpxs";
+
+    // string references: 0 - null, 1 - a new string follows, n > 1 - the (n-2)th string
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
+
+    private static final EditorMap editorMap = SimpleEditorMap.L3;
+
+    private ModelSnapshot() {
+    }
+
+    /**
+     * Writes the model to the file (via a temporary file, which then replaces it).
+     *
+     * @param model BioPAX L3 model
+     * @param file snapshot file
+     */
+    public static void write(Model model, Path file) throws IOException {
+        // unique, so that concurrent jobs do not write the same temporary file
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            write(model, out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the model to the stream (it's flushed but not closed).
+     */
+    public static void write(Model model, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+        new Encoder(out).write(model);
+        out.flush();
+    }
+
+    /**
+     * Rebuilds the model from the snapshot.
+     *
+     * @param file snapshot file
+     * @return new BioPAX L3 model
+     */
+    public static Model load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return load(in);
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + ": " + file, e);
+        }
+    }
+
+    /**
+     * Rebuilds the model from the snapshot stream (not closed).
+     *
+     * @return new BioPAX L3 model
+     */
+    public static Model load(InputStream in) throws IOException {
+        Decoder decoder = new Decoder(in);
+        if (decoder.readInt() != MAGIC) {
+            throw new IOException("Not a BioPAX model snapshot");
+        }
+        int version = decoder.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model snapshot version " + version + " (expected " + VERSION + ")");
+        }
+        return decoder.read();
+    }
+
+    private static final class Encoder extends ValueCodec.Writer {
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<BioPAXElement, Integer> elements = new IdentityHashMap<>();
+        private int skipped;
+
+        Encoder(DataOutputStream out) {
+            super(out);
+        }
+
+        void write(Model model) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(model.getXmlBase());
+            List<BioPAXElement> objects = CanonicalOrder.objects(model);
+            writeVarInt(objects.size());
+            for (BioPAXElement bpe : objects) {
+                elements.put(bpe, elements.size());
+                writeString(bpe.getModelInterface().getSimpleName());
+                writeString(bpe.getUri());
+            }
+            for (BioPAXElement bpe : objects) {
+                writeValues(bpe);
+            }
+            if (skipped > 0) {
+                log.warn("Skipped " + skipped + " references to objects not in the model");
+            }
+        }
+
+        private void writeValues(BioPAXElement bpe) throws IOException {
+            List<PropertyEditor<?, ?>> editors = CanonicalOrder.editors(bpe.getModelInterface());
+            List<List<Object>> values = new ArrayList<>(editors.size());
+            int count = 0;
+            for (PropertyEditor<?, ?> editor : editors) {
+                List<Object> known = CanonicalOrder.values(editor, bpe);
+                values.add(known);
+                for (Object value : known) {
+                    if (isWritten(value)) {
+                        count++;
+                    }
+                }
+            }
+            writeVarInt(count);
+            for (int i = 0; i < editors.size(); i++) {
+                for (Object value : values.get(i)) {
+                    if (isWritten(value)) {
+                        writeString(editors.get(i).getProperty());
+                        writeValue(value);
+                    }
+                }
+            }
+        }
+
+        private boolean isWritten(Object value) {
+            if (value instanceof BioPAXElement && !elements.containsKey(value)) {
+                skipped++;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean isElement(Object value) {
+            return value instanceof BioPAXElement;
+        }
+
+        @Override
+        void writeElement(Object element) throws IOException {
+            writeVarInt(elements.get(element));
+        }
+
+        @Override
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                writeVarInt(NULL_STRING);
+                return;
+            }
+            Integer index = strings.get(s);
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+            strings.put(s, strings.size());
+            writeVarInt(NEW_STRING);
+            writeUtf8(s);
+        }
+    }
+
+    private static final class Decoder extends ValueCodec.Reader {
+        private final InputStream in;
+        private final byte[] buf = new byte[1 << 16];
+        private int pos;
+        private int limit;
+        private final BioPAXFactory factory = BioPAXLevel.L3.getDefaultFactory();
+        private final Map<String, Class<? extends BioPAXElement>> types = new HashMap<>();
+        private final Map<Class<?>, Map<String, PropertyEditor<?, ?>>> editors = new HashMap<>();
+        private String[] strings = new String[1024];
+        private int stringCount;
+        private BioPAXElement[] elements;
+
+        Decoder(InputStream in) {
+            super("model snapshot");
+            this.in = in;
+        }
+
+        Model read() throws IOException {
+            Model model = factory.createModel();
+            model.setXmlBase(readString());
+            elements = new BioPAXElement[readVarInt()];
+            for (int i = 0; i < elements.length; i++) {
+                String type = readString();
+                Class<? extends BioPAXElement> clazz = types.computeIfAbsent(type, BioPAXLevel.L3::getInterfaceForName);
+                if (clazz == null) {
+                    throw new IOException("Unknown BioPAX type: " + type);
+                }
+                elements[i] = factory.create(clazz, readString());
+                model.add(elements[i]);
+            }
+            for (BioPAXElement bpe : elements) {
+                Map<String, PropertyEditor<?, ?>> classEditors = editors.computeIfAbsent(bpe.getModelInterface(), c -> new HashMap<>());
+                for (int n = readVarInt(); n > 0; n--) {
+                    String property = readString();
+                    PropertyEditor<?, ?> editor = classEditors.computeIfAbsent(property,
+                        p -> editorMap.getEditorForProperty(p, bpe.getModelInterface()));
+                    if (editor == null) {
+                        throw new IOException("Unknown property " + property + " of " + bpe.getModelInterface().getSimpleName());
+                    }
+                    Object value = readValue(editor);
+                    try {
+                        // the property's set or add method, as the editor would do, but without its
+                        // per-value debug logging and range checks (the values were checked when the model was built)
+                        editor.getPrimarySetMethod().invoke(bpe, value);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IOException("Failed to set " + property + " of " + bpe.getUri(), e);
+                    }
+                }
+            }
+            return model;
+        }
+
+        @Override
+        Object readElement() throws IOException {
+            return elements[readVarInt()];
+        }
+
+        @Override
+        String readString() throws IOException {
+            int ref = readVarInt();
+            if (ref == NULL_STRING) {
+                return null;
+            }
+            if (ref != NEW_STRING) {
+                return strings[ref - 2];
+            }
+            String s = readUtf8();
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, stringCount * 2);
+            }
+            strings[stringCount++] = s;
+            return s;
+        }
+
+        @Override
+        byte readByte() throws IOException {
+            if (pos == limit) {
+                fill();
+            }
+            return buf[pos++];
+        }
+
+        @Override
+        void readFully(byte[] dest, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                if (pos == limit) {
+                    fill();
+                }
+                int n = Math.min(length - done, limit - pos);
+                System.arraycopy(buf, pos, dest, done, n);
+                pos += n;
+                done += n;
+            }
+        }
+
+        private void fill() throws IOException {
+            int n = in.read(buf, 0, buf.length);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of the model snapshot");
+            }
+            pos = 0;
+            limit = n;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.ctdbase.io;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Named;
+import org.ctdbase.util.CanonicalOrder;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes BioPAX L3 elements to an RDF/XML (OWL) document, one at a time, in the canonical order
+ * of their properties and values (see {@link CanonicalOrder}). The document is the same as {@link SimpleIOHandler}
+ * writes, but for the order of the elements and of their property values.
+ *
+ * <pre>
+ * OwlWriter owl = new OwlWriter(out, xmlBase);
+ * for (BioPAXElement bpe : elements) {
+ *     owl.write(bpe);
+ * }
+ * owl.finish();
+ * </pre>
+ */
+public final class OwlWriter {
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    private final Writer writer;
+    private final String xmlBase;
+    private final String end;
+    private long count;
+
+    /**
+     * Writes the document header.
+     *
+     * @param out output (flushed by {@link #finish()}, but not closed)
+     * @param xmlBase xml:base of the document, which the elements' URIs are written relative to
+     */
+    public OwlWriter(OutputStream out, String xmlBase) throws IOException {
+        // the same header and closing as the OWL exporter writes for a model with this xml:base
+        Model empty = BioPAXLevel.L3.getDefaultFactory().createModel();
+        empty.setXmlBase(xmlBase);
+        ByteArrayOutputStream document = new ByteArrayOutputStream();
+        new SimpleIOHandler().convertToOWL(empty, document);
+        String emptyDocument = document.toString("UTF-8");
+        int headerEnd = emptyDocument.lastIndexOf("</owl:Ontology>") + "</owl:Ontology>".length();
+
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        this.xmlBase = xmlBase;
+        this.end = emptyDocument.substring(headerEnd);
+        writer.write(emptyDocument, 0, headerEnd);
+    }
+
+    /**
+     * Writes the model's objects, sorted, to the document (the stream is flushed but not closed).
+     *
+     * @param model BioPAX L3 model
+     * @param out output
+     * @return the number of the elements written
+     */
+    public static long write(Model model, OutputStream out) throws IOException {
+        OwlWriter owl = new OwlWriter(out, model.getXmlBase());
+        for (BioPAXElement bpe : CanonicalOrder.objects(model)) {
+            owl.write(bpe);
+        }
+        owl.finish();
+        return owl.count;
+    }
+
+    /**
+     * Writes the element with its property values (the element values, just by URI).
+     */
+    public void write(BioPAXElement bpe) throws IOException {
+        String tag = "bp:" + bpe.getModelInterface().getSimpleName();
+        String uri = bpe.getUri();
+        writer.write(NEWLINE + NEWLINE + "<" + tag + " ");
+        if (xmlBase != null && uri.startsWith(xmlBase)) {
+            writer.write("rdf:ID=\"" + uri.substring(xmlBase.length()) + "\">");
+        } else {
+            writer.write("rdf:about=\"" + uri + "\">");
+        }
+        for (PropertyEditor<?, ?> editor : CanonicalOrder.editors(bpe.getModelInterface())) {
+            List<Object> values = CanonicalOrder.values(editor, bpe);
+            for (Object value : values) {
+                if (isWritten(bpe, editor, value)) {
+                    writeStatement(editor, value);
+                }
+            }
+        }
+        writer.write(NEWLINE + "</" + tag + ">");
+        count++;
+    }
+
+    /**
+     * Writes the end of the document and flushes the stream.
+     */
+    public void finish() throws IOException {
+        writer.write(end);
+        writer.flush();
+    }
+
+    /**
+     * @return the number of the elements written so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    // as the OWL exporter, skips the names that are the display or standard name
+    private static boolean isWritten(BioPAXElement bpe, PropertyEditor<?, ?> editor, Object value) {
+        if (bpe instanceof Named && "name".equalsIgnoreCase(editor.getProperty())) {
+            Named named = (Named) bpe;
+            return !value.equals(named.getDisplayName()) && !value.equals(named.getStandardName());
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void writeStatement(PropertyEditor<?, ?> editor, Object value) throws IOException {
+        String tag = "bp:" + editor.getProperty();
+        writer.write(NEWLINE + " <" + tag);
+        if (value instanceof BioPAXElement) {
+            String uri = ((BioPAXElement) value).getUri();
+            if (xmlBase != null && uri.startsWith(xmlBase)) {
+                uri = "#" + uri.substring(xmlBase.length());
+            }
+            writer.write(" rdf:resource=\"" + uri + "\" />");
+        } else {
+            writer.write(" rdf:datatype = \"xsd:" + literalType(editor.getRange()) + "\">"
+                + StringEscapeUtils.escapeXml(value.toString()) + "</" + tag + ">");
+        }
+    }
+
+    private static String literalType(Class<?> range) {
+        if (range.isEnum() || range.equals(String.class)) {
+            return "string";
+        } else if (range.equals(Double.TYPE) || range.equals(Double.class)) {
+            return "double";
+        } else if (range.equals(Integer.TYPE) || range.equals(Integer.class)) {
+            return "int";
+        } else if (range.equals(Float.TYPE) || range.equals(Float.class)) {
+            return "float";
+        } else if (range.equals(Boolean.TYPE) || range.equals(Boolean.class)) {
+            return "boolean";
+        } else if (range.equals(Long.TYPE) || range.equals(Long.class)) {
+            return "long";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,339 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.model.IxnRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses the CTD_chem_gene_ixns_structured.xml with several threads: one thread scans the (uncompressed) bytes
+ * for the top-level {@code <ixn} element boundaries, outside of the comments, CDATA sections and processing
+ * instructions, and cuts the document into byte ranges of whole ixn elements; each range is then parsed
+ * by a {@link ByteXmlIxnReader} on its own (wrapped in the document's XML declaration and root element start tag,
+ * copied as they are, so that it parses the same as in the whole document), in a pool of threads.
+ * The records are read in the document order, the same as from one reader.
+ *
+ * The byte scan assumes an ASCII-compatible encoding (e.g. UTF-8, as the CTD files are).
+ * The number of ranges parsed or waiting to be read is bounded, and so is the memory.
+ */
+public class ParallelXmlIxnReader implements IxnRecordReader {
+
+    public static final int DEFAULT_RANGE_SIZE = 1 << 23;
+
+    private static final byte[] COMMENT = bytes("<!--");
+    private static final byte[] COMMENT_END = bytes("-->");
+    private static final byte[] CDATA = bytes("<![CDATA[");
+    private static final byte[] CDATA_END = bytes("]]>");
+    private static final byte[] PI = bytes("<?");
+    private static final byte[] PI_END = bytes("?>");
+    private static final byte[] DECLARATION = bytes("<!");
+    private static final byte[] DECLARATION_END = bytes(">");
+    private static final byte[] IXN = bytes("<ixn");
+    // the longest start marker
+    private static final int LOOKAHEAD = CDATA.length;
+
+    private static final Future<List<IxnRecord>> END = CompletableFuture.completedFuture(null);
+
+    private final InputStream in;
+    private final int rangeSize;
+    private final ExecutorService parsers;
+    private final Thread scanner;
+    // the ranges' records, in the document order, then END
+    private final BlockingQueue<Future<List<IxnRecord>>> ranges;
+    private Iterator<IxnRecord> records = Collections.emptyIterator();
+    private volatile boolean done;
+    private volatile int rangeCount;
+
+    // the scanner's state: the bytes of the document's XML declaration and root element start tag,
+    // and the markup it's in
+    private byte[] prolog;
+    private byte[] rootEnd;
+    private int xmlDeclarationEnd;
+    private byte[] inside;
+
+    /**
+     * @param in the XML document (uncompressed); it's read by the scanner thread, and closed by {@link #close()}
+     * @param threads number of the parse threads
+     */
+    public ParallelXmlIxnReader(InputStream in, int threads) {
+        this(in, threads, DEFAULT_RANGE_SIZE);
+    }
+
+    /**
+     * @param in the XML document (uncompressed); it's read by the scanner thread, and closed by {@link #close()}
+     * @param threads number of the parse threads
+     * @param rangeSize about how many bytes each thread parses at a time (more, if an ixn element is larger)
+     */
+    public ParallelXmlIxnReader(InputStream in, int threads, int rangeSize) {
+        if (threads < 1 || rangeSize < 1) {
+            throw new IllegalArgumentException("threads: " + threads + ", range size: " + rangeSize);
+        }
+        this.in = in;
+        this.rangeSize = rangeSize;
+        this.ranges = new ArrayBlockingQueue<>(2 * threads + 1);
+        AtomicInteger threadNo = new AtomicInteger();
+        this.parsers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "xml-parse-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scanner = new Thread(this::scan, "xml-scan");
+        scanner.setDaemon(true);
+        scanner.start();
+    }
+
+    @Override
+    public IxnRecord read() throws IOException {
+        while (!records.hasNext()) {
+            if (done) {
+                return null;
+            }
+            List<IxnRecord> range;
+            try {
+                range = ranges.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            } catch (ExecutionException e) {
+                done = true;
+                Throwable cause = e.getCause();
+                throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+            }
+            if (range == null) {
+                done = true;
+                return null;
+            }
+            records = range.iterator();
+        }
+        return records.next();
+    }
+
+    /**
+     * @return the number of byte ranges cut so far
+     */
+    public int getRanges() {
+        return rangeCount;
+    }
+
+    /**
+     * Stops the threads, and closes the input.
+     */
+    @Override
+    public void close() throws IOException {
+        done = true;
+        scanner.interrupt();
+        parsers.shutdownNow();
+        in.close();
+    }
+
+    // the scanner thread: cuts the document into ranges of whole ixn elements, and submits them to the parsers
+    private void scan() {
+        try {
+            byte[] buf = new byte[rangeSize + LOOKAHEAD];
+            int len = 0;
+            int pos = 0; //where to scan from
+            int boundary = 0; //the last ixn element start (a cut point), if > 0
+            boolean first = true;
+            boolean eof = false;
+            while (!eof) {
+                int n = in.read(buf, len, buf.length - len);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    len += n;
+                }
+                int end = (eof) ? len : len - LOOKAHEAD;
+                while (pos < end) {
+                    int ixn = next(buf, pos, end, len, eof);
+                    if (ixn < 0) {
+                        pos = -ixn - 1;
+                        break;
+                    }
+                    if (ixn > 0) {
+                        boundary = ixn;
+                    }
+                    pos = ixn + IXN.length;
+                }
+                if (!eof && len == buf.length) {
+                    if (boundary > 0 && prolog != null) {
+                        submit(Arrays.copyOf(buf, boundary), first, false);
+                        first = false;
+                        System.arraycopy(buf, boundary, buf, 0, len - boundary);
+                        len -= boundary;
+                        pos -= boundary;
+                        boundary = 0;
+                    }
+                    if (len > buf.length - LOOKAHEAD) {
+                        buf = Arrays.copyOf(buf, 2 * buf.length); //an ixn larger than the range
+                    }
+                }
+            }
+            submit(Arrays.copyOf(buf, len), first, true);
+            ranges.put(END);
+        } catch (InterruptedException e) {
+            //closed
+        } catch (Exception e) {
+            // queued after the ranges cut before it (waits for the room, unless the reader's closed)
+            try {
+                ranges.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException closed) {
+                //closed
+            }
+        }
+    }
+
+    /*
+     * Scans the bytes from the position to the end, skipping the markup, for the next top-level ixn start tag.
+     * Returns its position, or -(position to resume from)-1 if there is none or more bytes are needed
+     * (the scan never needs more than LOOKAHEAD bytes after the end, unless it's the end of the document).
+     */
+    private int next(byte[] buf, int pos, int end, int len, boolean eof) {
+        int i = pos;
+        while (i < end) {
+            if (inside != null) {
+                int close = indexOf(buf, inside, i, len);
+                if (close < 0) {
+                    return -Math.max(i, len - inside.length + 1) - 1;
+                }
+                i = close + inside.length;
+                if (inside == PI_END && prolog == null && xmlDeclarationEnd == 0 && startsWith(buf, 0, len, PI)) {
+                    xmlDeclarationEnd = i; //the XML declaration at the start
+                }
+                inside = null;
+            } else if (buf[i] != '<') {
+                i++;
+            } else if (startsWith(buf, i, len, COMMENT)) {
+                inside = COMMENT_END;
+                i += COMMENT.length;
+            } else if (startsWith(buf, i, len, CDATA)) {
+                inside = CDATA_END;
+                i += CDATA.length;
+            } else if (startsWith(buf, i, len, PI)) {
+                inside = PI_END;
+                i += PI.length;
+            } else if (startsWith(buf, i, len, DECLARATION)) {
+                inside = DECLARATION_END; //a DOCTYPE (without an internal subset)
+                i += DECLARATION.length;
+            } else if (prolog == null && i + 1 < len && buf[i + 1] != '/') {
+                // the root element's start tag
+                int tagEnd = tagEnd(buf, i, len);
+                if (tagEnd < 0) {
+                    if (eof) {
+                        return -len - 1;
+                    }
+                    return -i - 1;
+                }
+                byte[] declaration = Arrays.copyOf(buf, xmlDeclarationEnd);
+                int nameEnd = i + 1;
+                while (nameEnd < tagEnd && !isNameEnd(buf[nameEnd])) {
+                    nameEnd++;
+                }
+                prolog = concat(declaration, Arrays.copyOfRange(buf, i, tagEnd));
+                rootEnd = concat(bytes("</"), Arrays.copyOfRange(buf, i + 1, nameEnd), bytes(">"));
+                i = tagEnd;
+            } else if (startsWith(buf, i, len, IXN) && i + IXN.length < len && isNameEnd(buf[i + IXN.length])) {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return -i - 1;
+    }
+
+    private void submit(byte[] range, boolean first, boolean last) throws InterruptedException {
+        byte[] prefix = (first || prolog == null) ? new byte[0] : prolog;
+        byte[] suffix = (last || rootEnd == null) ? new byte[0] : rootEnd;
+        ranges.put(parsers.submit(() -> parse(prefix, range, suffix)));
+        rangeCount++;
+    }
+
+    private static List<IxnRecord> parse(byte[] prefix, byte[] range, byte[] suffix) throws IOException {
+        List<IxnRecord> records = new ArrayList<>();
+        InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+            new ByteArrayInputStream(prefix), new ByteArrayInputStream(range), new ByteArrayInputStream(suffix))));
+        try (IxnRecordReader reader = new ByteXmlIxnReader(in)) {
+            IxnRecord rec;
+            while ((rec = reader.read()) != null) {
+                records.add(rec);
+            }
+        }
+        return records;
+    }
+
+    // the position after the start tag's '>' (which can be in a quoted attribute value), or -1
+    private static int tagEnd(byte[] buf, int from, int len) {
+        byte quote = 0;
+        for (int i = from; i < len; i++) {
+            byte b = buf[i];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '>' || b == '/';
+    }
+
+    private static boolean startsWith(byte[] buf, int from, int len, byte[] prefix) {
+        if (from + prefix.length > len) {
+            return false;
+        }
+        for (int j = 0; j < prefix.length; j++) {
+            if (buf[from + j] != prefix[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buf, byte[] s, int from, int len) {
+        for (int i = from; i <= len - s.length; i++) {
+            if (buf[i] == s[0] && startsWith(buf, i, len, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int n = 0;
+        for (byte[] part : parts) {
+            n += part.length;
+        }
+        byte[] all = new byte[n];
+        n = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, all, n, part.length);
+            n += part.length;
+        }
+        return all;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
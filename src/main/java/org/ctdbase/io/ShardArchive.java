@@ -0,0 +1,287 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.controller.Fetcher;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.LongObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An archive of BioPAX (RDF/XML) documents, one per chemical: the interactions it controls
+ * (see {@link CtdUtil#controllerChemical}) with all the objects they refer to - entities, entity references,
+ * organisms, xrefs, vocabularies - so that a chemical's BioPAX can be served without slicing the whole model.
+ * The objects shared by the interactions of different chemicals are in each of their documents.
+ *
+ * The file starts with a fixed-size header: magic, format version, the number of documents and index slots,
+ * and the index offset; then come the documents (UTF-8), sorted by the chemical, and the index:
+ * an open-addressing hash table of fixed-size slots (packed chemical id, document offset, length),
+ * probed linearly from the id's hash, so that a lookup reads a slot (or a few) and then the document.
+ */
+public final class ShardArchive implements Closeable {
+    private static Logger log = LoggerFactory.getLogger(ShardArchive.class);
+
+    static final int MAGIC = 0x43544453; // "CTDS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int SLOT_SIZE = 20;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int shards;
+    private final int mask;
+    private final long indexOffset;
+
+    private ShardArchive(Path file, FileChannel channel, int shards, int slots, long indexOffset) {
+        this.file = file;
+        this.channel = channel;
+        this.shards = shards;
+        this.mask = slots - 1;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * Writes the documents of the chemicals' interactions, extracted from the model by the threads, to the archive
+     * (a temporary file first, which then replaces the archive file).
+     *
+     * @param file archive file
+     * @param model the converted model, not to be changed while it's being written
+     * @param shards the URIs of the (top) interactions by the packed id of their chemical
+     *               (see {@link org.ctdbase.converter.CTDInteractionConverter#setShards})
+     * @param threads number of threads to make the documents with
+     * @return the number of documents written (a chemical whose interactions are not in the model has none)
+     */
+    public static int write(Path file, Model model, LongObjectMap<? extends Collection<String>> shards, int threads)
+        throws IOException
+    {
+        long[] keys = new long[shards.size()];
+        AtomicInteger n = new AtomicInteger();
+        shards.forEach((uris, key) -> keys[n.getAndIncrement()] = key);
+        Arrays.sort(keys);
+        int slots = Integer.highestOneBit(Math.max(4, 2 * keys.length - 1)) << 1;
+        long[] slotKeys = new long[slots];
+        long[] slotOffsets = new long[slots];
+        int[] slotLengths = new int[slots];
+        int written = 0;
+
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "shard-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(out.position(HEADER_SIZE)), 1 << 16));
+            long offset = HEADER_SIZE;
+            // the documents being made, in the key order, up to a few per thread (for bounded memory)
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            int next = 0;
+            for (int i = 0; i < keys.length; i++) {
+                while (next < keys.length && pending.size() < 2 * Math.max(1, threads)) {
+                    Collection<String> uris = shards.get(keys[next++]);
+                    pending.add(pool.submit(() -> document(model, uris)));
+                }
+                byte[] document = take(pending.remove());
+                if (document == null) {
+                    continue;
+                }
+                data.write(document);
+                int slot = slot(keys[i], slots - 1);
+                while (slotKeys[slot] != 0) {
+                    slot = (slot + 1) & (slots - 1);
+                }
+                slotKeys[slot] = keys[i];
+                slotOffsets[slot] = offset;
+                slotLengths[slot] = document.length;
+                offset += document.length;
+                written++;
+            }
+            for (int i = 0; i < slots; i++) {
+                data.writeLong(slotKeys[i]);
+                data.writeLong(slotOffsets[i]);
+                data.writeInt(slotLengths[i]);
+            }
+            data.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(written).putInt(slots).putLong(offset).flip();
+            while (header.hasRemaining()) {
+                out.write(header, header.position());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        log.info("Wrote " + written + " chemical documents to " + file);
+        return written;
+    }
+
+    /**
+     * @param file archive file
+     * @return the archive, to look up the documents in (until it's closed)
+     * @throws IOException when it cannot be read, or it's not an archive of the current format version
+     */
+    public static ShardArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            read(channel, header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a shard archive: " + file);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(file + ": format version " + header.getInt(4) + " (expected " + VERSION + ")");
+            }
+            int shards = header.getInt(8);
+            int slots = header.getInt(12);
+            long indexOffset = header.getLong(16);
+            if (Integer.bitCount(slots) != 1 || channel.size() != indexOffset + (long) slots * SLOT_SIZE) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            return new ShardArchive(file, channel, shards, slots, indexOffset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of documents (chemicals)
+     */
+    public int size() {
+        return shards;
+    }
+
+    /**
+     * @param chemicalId CTD chemical id, e.g. 'MESH:D000082'
+     * @return the chemical's BioPAX document, or null if there is none
+     */
+    public byte[] get(String chemicalId) throws IOException {
+        long key = CtdUtil.packActorId(chemicalId);
+        return (key < 0) ? null : get(key);
+    }
+
+    /**
+     * @param key packed chemical id (see {@link CtdUtil#packActorId(String)})
+     * @return the chemical's BioPAX document, or null if there is none
+     */
+    public byte[] get(long key) throws IOException {
+        if (key == 0) {
+            return null;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(SLOT_SIZE);
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            read(channel, entry, indexOffset + (long) slot * SLOT_SIZE);
+            long k = entry.getLong(0);
+            if (k == 0) {
+                return null;
+            } else if (k == key) {
+                ByteBuffer document = ByteBuffer.allocate(entry.getInt(16));
+                read(channel, document, entry.getLong(8));
+                return document.array();
+            }
+        }
+    }
+
+    /**
+     * @return the packed ids of the chemicals, sorted
+     */
+    public long[] keys() throws IOException {
+        ByteBuffer index = ByteBuffer.allocate((mask + 1) * SLOT_SIZE);
+        read(channel, index, indexOffset);
+        long[] keys = new long[shards];
+        int n = 0;
+        for (int slot = 0; slot <= mask && n < shards; slot++) {
+            long key = index.getLong(slot * SLOT_SIZE);
+            if (key != 0) {
+                keys[n++] = key;
+            }
+        }
+        Arrays.sort(keys, 0, n);
+        return Arrays.copyOf(keys, n);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // the interactions and everything they refer to (but not the next steps), as RDF/XML; or null if none's there
+    private static byte[] document(Model model, Collection<String> uris) throws IOException {
+        Model shard = BioPAXLevel.L3.getDefaultFactory().createModel();
+        shard.setXmlBase(model.getXmlBase());
+        Fetcher fetcher = new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter);
+        for (String uri : uris) {
+            BioPAXElement process = model.getByID(uri);
+            if (process != null) {
+                fetcher.fetch(process, shard);
+            }
+        }
+        if (shard.getObjects().isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 12);
+        OwlWriter.write(shard, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] take(Future<byte[]> document) throws IOException {
+        try {
+            return document.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the shard archive at " + (position + buffer.position()));
+            }
+        }
+    }
+}
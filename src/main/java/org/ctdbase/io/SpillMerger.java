@@ -0,0 +1,404 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXFactory;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.util.CanonicalOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Merges BioPAX models (e.g. of the interaction batches and the vocabularies) into the RDF/XML (OWL) output
+ * without having the whole merged model in memory: each model is spilled to a temporary file as a run
+ * of its elements sorted by URI, and then the runs are merge-sorted into the output, one element at a time,
+ * so that the memory it takes is about the size of the largest model added rather than of the output.
+ *
+ * The elements with the same URI in several runs (e.g. entity references and xrefs shared by many interactions)
+ * are merged the way {@link org.biopax.paxtools.controller.Merger} merges models in the order they were added:
+ * the first one's type and single values are kept, and the multiple-cardinality property values are added up.
+ * The output is the same as of the in-memory merged model written by {@link OwlWriter}.
+ *
+ * Run format: records of element URI, BioPAX type and property values - the property name and either
+ * the type and URI of the element value, or a tagged data value (see {@link ValueCodec}); an empty URI ends the run.
+ */
+public final class SpillMerger implements Closeable {
+    private static Logger log = LoggerFactory.getLogger(SpillMerger.class);
+
+    // max. number of runs merged at once; more are first merged into fewer, larger runs
+    public static final int MAX_FAN_IN = 64;
+
+    private static final EditorMap editorMap = SimpleEditorMap.L3;
+    private static final BioPAXFactory factory = BioPAXLevel.L3.getDefaultFactory();
+    private static final Comparator<BioPAXElement> URI_ORDER = Comparator.comparing(BioPAXElement::getUri)
+        .thenComparing(bpe -> bpe.getModelInterface().getName());
+
+    private final Path dir;
+    private final List<Path> runs = new ArrayList<>();
+    private final Map<String, Class<? extends BioPAXElement>> types = new HashMap<>();
+    private final Map<Class<?>, Map<String, PropertyEditor<?, ?>>> editors = new HashMap<>();
+    private long spilledElements;
+    private long spilledBytes;
+
+    /**
+     * @param tmpDir where to create the temporary directory for the runs
+     */
+    public SpillMerger(Path tmpDir) throws IOException {
+        this.dir = Files.createTempDirectory(tmpDir, "spill");
+    }
+
+    /**
+     * Writes the model's elements, sorted by URI, to a new run file.
+     * The runs are merged in the order they were added (which matters for the elements with the same URI).
+     *
+     * @param model BioPAX L3 model
+     */
+    public synchronized void add(Model model) throws IOException {
+        List<BioPAXElement> elements = new ArrayList<>(model.getObjects());
+        elements.sort(URI_ORDER);
+        Path run = dir.resolve("run-" + runs.size());
+        try (RunWriter out = new RunWriter(run)) {
+            for (BioPAXElement bpe : elements) {
+                out.write(toRecord(bpe));
+            }
+        }
+        runs.add(run);
+        spilledElements += elements.size();
+        spilledBytes += Files.size(run);
+    }
+
+    /**
+     * Merges the runs into the RDF/XML (OWL) document (the stream is flushed but not closed).
+     *
+     * @param out output
+     * @param xmlBase xml:base of the document
+     * @return the number of the (merged) elements written
+     */
+    public synchronized long writeOwl(OutputStream out, String xmlBase) throws IOException {
+        List<Path> toMerge = reduceRuns();
+        OwlWriter owl = new OwlWriter(out, xmlBase);
+        long count = merge(toMerge, record -> owl.write(toElement(record)));
+        owl.finish();
+        log.info("Merged " + runs.size() + " runs of " + spilledElements + " elements (" + spilledBytes
+            + " bytes) into " + count + " elements");
+        return count;
+    }
+
+    public synchronized int getRuns() {
+        return runs.size();
+    }
+
+    /**
+     * @return the total number of the elements in the runs (with the duplicates)
+     */
+    public synchronized long getSpilledElements() {
+        return spilledElements;
+    }
+
+    /**
+     * @return the total size of the run files
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Deletes the run files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    // merges the runs, MAX_FAN_IN at a time, into new ones until there are no more than MAX_FAN_IN left
+    private List<Path> reduceRuns() throws IOException {
+        List<Path> toMerge = new ArrayList<>(runs);
+        int n = 0;
+        while (toMerge.size() > MAX_FAN_IN) {
+            List<Path> first = toMerge.subList(0, MAX_FAN_IN);
+            Path run = dir.resolve("merged-" + n++);
+            try (RunWriter out = new RunWriter(run)) {
+                merge(first, out::write);
+            }
+            first.clear();
+            toMerge.add(0, run);
+        }
+        return toMerge;
+    }
+
+    // merge-sorts the runs, merging the records with the same URI; returns the number of the merged records
+    private long merge(List<Path> runFiles, RecordConsumer consumer) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        // by URI, then in the order of the runs
+        PriorityQueue<RunReader> heads = new PriorityQueue<>(Comparator.comparing((RunReader r) -> r.head.uri)
+            .thenComparingInt(r -> r.index));
+        long count = 0;
+        try {
+            for (Path file : runFiles) {
+                RunReader reader = new RunReader(file, readers.size());
+                readers.add(reader);
+                if (reader.next()) {
+                    heads.add(reader);
+                }
+            }
+            while (!heads.isEmpty()) {
+                RunReader reader = heads.poll();
+                Record merged = reader.head;
+                if (reader.next()) {
+                    heads.add(reader);
+                }
+                while (!heads.isEmpty() && heads.peek().head.uri.equals(merged.uri)) {
+                    reader = heads.poll();
+                    mergeInto(merged, reader.head);
+                    if (reader.next()) {
+                        heads.add(reader);
+                    }
+                }
+                consumer.accept(merged);
+                count++;
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        return count;
+    }
+
+    // like Merger does for an element with the URI already in the target model
+    private void mergeInto(Record target, Record source) {
+        for (int i = 0; i < source.properties.size(); i++) {
+            PropertyEditor<?, ?> editor = editor(target.type, source.properties.get(i));
+            if (editor == null) {
+                continue; //not a property of the target's type
+            }
+            Object value = source.values.get(i);
+            boolean has = false;
+            boolean same = false;
+            for (int j = 0; j < target.properties.size() && !same; j++) {
+                if (target.properties.get(j).equals(editor.getProperty())) {
+                    has = true;
+                    same = target.values.get(j).equals(value);
+                }
+            }
+            if (!same && (!has || editor.isMultipleCardinality())) {
+                target.properties.add(editor.getProperty());
+                target.values.add(value);
+            }
+        }
+    }
+
+    private Record toRecord(BioPAXElement bpe) {
+        Record record = new Record(bpe.getUri(), bpe.getModelInterface());
+        for (PropertyEditor<?, ?> editor : CanonicalOrder.editors(bpe.getModelInterface())) {
+            for (Object value : CanonicalOrder.values(editor, bpe)) {
+                record.properties.add(editor.getProperty());
+                record.values.add((value instanceof BioPAXElement) ? new Ref((BioPAXElement) value) : value);
+            }
+        }
+        return record;
+    }
+
+    // a new element with the record's values; the element values are new objects with just the type and URI
+    private BioPAXElement toElement(Record record) throws IOException {
+        BioPAXElement bpe = factory.create(record.type, record.uri);
+        for (int i = 0; i < record.properties.size(); i++) {
+            PropertyEditor<?, ?> editor = editor(record.type, record.properties.get(i));
+            Object value = record.values.get(i);
+            if (value instanceof Ref) {
+                Ref ref = (Ref) value;
+                value = factory.create(type(ref.type), ref.uri);
+            }
+            setValue(editor, value, bpe);
+        }
+        return bpe;
+    }
+
+    // the value was read for this property (see ValueCodec.Reader#readValue), so it's of the property's range
+    @SuppressWarnings("unchecked")
+    private static <D extends BioPAXElement, R> void setValue(PropertyEditor<D, R> editor, Object value, BioPAXElement bpe) {
+        editor.setValueToBean((R) value, editor.getDomain().cast(bpe));
+    }
+
+    private Class<? extends BioPAXElement> type(String name) throws IOException {
+        Class<? extends BioPAXElement> type = types.computeIfAbsent(name, BioPAXLevel.L3::getInterfaceForName);
+        if (type == null) {
+            throw new IOException("Unknown BioPAX type: " + name);
+        }
+        return type;
+    }
+
+    private PropertyEditor<?, ?> editor(Class<? extends BioPAXElement> type, String property) {
+        return editors.computeIfAbsent(type, c -> new HashMap<>())
+            .computeIfAbsent(property, p -> editorMap.getEditorForProperty(p, type));
+    }
+
+    @FunctionalInterface
+    private interface RecordConsumer {
+        void accept(Record record) throws IOException;
+    }
+
+    // an element: URI, type and property values (element values as refs)
+    private static final class Record {
+        final String uri;
+        final Class<? extends BioPAXElement> type;
+        final List<String> properties = new ArrayList<>();
+        final List<Object> values = new ArrayList<>();
+
+        Record(String uri, Class<? extends BioPAXElement> type) {
+            this.uri = uri;
+            this.type = type;
+        }
+    }
+
+    // an element value
+    private static final class Ref {
+        final String type;
+        final String uri;
+
+        Ref(BioPAXElement bpe) {
+            this(bpe.getModelInterface().getSimpleName(), bpe.getUri());
+        }
+
+        Ref(String type, String uri) {
+            this.type = type;
+            this.uri = uri;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref && ((Ref) o).uri.equals(uri) && ((Ref) o).type.equals(type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, uri);
+        }
+    }
+
+    private static final class RunWriter extends ValueCodec.Writer implements Closeable {
+
+        RunWriter(Path file) throws IOException {
+            super(new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)));
+        }
+
+        void write(Record record) throws IOException {
+            writeString(record.uri);
+            writeString(record.type.getSimpleName());
+            writeVarInt(record.properties.size());
+            for (int i = 0; i < record.properties.size(); i++) {
+                writeString(record.properties.get(i));
+                writeValue(record.values.get(i));
+            }
+        }
+
+        @Override
+        boolean isElement(Object value) {
+            return value instanceof Ref;
+        }
+
+        @Override
+        void writeElement(Object element) throws IOException {
+            writeString(((Ref) element).type);
+            writeString(((Ref) element).uri);
+        }
+
+        @Override
+        void writeString(String s) throws IOException {
+            writeUtf8(s);
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeVarInt(0); //end of the run
+            out.close();
+        }
+    }
+
+    private final class RunReader extends ValueCodec.Reader implements Closeable {
+        private final DataInputStream in;
+        private final Path file;
+        final int index;
+        Record head;
+
+        RunReader(Path file, int index) throws IOException {
+            super("run " + file);
+            this.file = file;
+            this.index = index;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        }
+
+        // reads the next record into the head; false at the end of the run
+        boolean next() throws IOException {
+            try {
+                String uri = readString();
+                if (uri.isEmpty()) {
+                    head = null;
+                    return false;
+                }
+                Record record = new Record(uri, type(readString()));
+                for (int n = readVarInt(); n > 0; n--) {
+                    String property = readString();
+                    record.properties.add(property);
+                    record.values.add(readValue(editor(record.type, property)));
+                }
+                head = record;
+                return true;
+            } catch (EOFException e) {
+                throw new IOException("Truncated run: " + file, e);
+            }
+        }
+
+        @Override
+        Object readElement() throws IOException {
+            return new Ref(readString(), readString());
+        }
+
+        @Override
+        String readString() throws IOException {
+            return readUtf8();
+        }
+
+        @Override
+        byte readByte() throws IOException {
+            return in.readByte();
+        }
+
+        @Override
+        void readFully(byte[] dest, int length) throws IOException {
+            in.readFully(dest, 0, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
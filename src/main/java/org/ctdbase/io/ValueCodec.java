@@ -0,0 +1,162 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.controller.PropertyEditor;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary encoding of BioPAX property values shared by {@link ModelSnapshot} and the {@link SpillMerger} runs:
+ * a value tag, then the data - a string, an enum constant name, a zig-zag variable-length int, a float or double
+ * (big-endian), or nothing for a boolean; or an element value. How the element values and the strings are
+ * referred to is up to each format (e.g. by index in a table).
+ */
+final class ValueCodec {
+
+    // value tags
+    static final int ELEMENT = 0;
+    static final int STRING = 1;
+    static final int ENUM = 2;
+    static final int INT = 3;
+    static final int FLOAT = 4;
+    static final int DOUBLE = 5;
+    static final int TRUE = 6;
+    static final int FALSE = 7;
+
+    private ValueCodec() {
+    }
+
+    abstract static class Writer {
+        protected final DataOutputStream out;
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (isElement(value)) {
+                out.writeByte(ELEMENT);
+                writeElement(value);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Enum) {
+                out.writeByte(ENUM);
+                writeString(((Enum<?>) value).name());
+            } else if (value instanceof Integer) {
+                out.writeByte(INT);
+                int n = (Integer) value;
+                writeVarInt((n << 1) ^ (n >> 31));
+            } else if (value instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+            } else {
+                throw new IOException("Unsupported property value type: " + value.getClass());
+            }
+        }
+
+        void writeVarInt(int n) throws IOException {
+            while ((n & ~0x7F) != 0) {
+                out.writeByte((n & 0x7F) | 0x80);
+                n >>>= 7;
+            }
+            out.writeByte(n);
+        }
+
+        // the length and UTF-8 bytes
+        void writeUtf8(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            out.write(bytes);
+        }
+
+        abstract boolean isElement(Object value);
+
+        abstract void writeElement(Object element) throws IOException;
+
+        abstract void writeString(String s) throws IOException;
+    }
+
+    abstract static class Reader {
+        private final String name;
+        private byte[] bytes = new byte[256];
+
+        /**
+         * @param name what is read, for the error messages
+         */
+        Reader(String name) {
+            this.name = name;
+        }
+
+        Object readValue(PropertyEditor<?, ?> editor) throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case ELEMENT:
+                    return readElement();
+                case STRING:
+                    return readString();
+                case ENUM:
+                    return enumValue(editor.getRange(), readString());
+                case INT:
+                    int n = readVarInt();
+                    return (n >>> 1) ^ -(n & 1);
+                case FLOAT:
+                    return Float.intBitsToFloat(readInt());
+                case DOUBLE:
+                    return Double.longBitsToDouble(((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL));
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                default:
+                    throw new IOException("Corrupted " + name + ": value tag " + tag);
+            }
+        }
+
+        // the property's range is an enum type
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Object enumValue(Class<?> range, String name) {
+            return Enum.valueOf((Class<Enum>) range, name);
+        }
+
+        int readVarInt() throws IOException {
+            int n = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                n |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return n;
+        }
+
+        int readInt() throws IOException {
+            return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 8 | (readByte() & 0xFF);
+        }
+
+        // as written by Writer.writeUtf8
+        String readUtf8() throws IOException {
+            int length = readVarInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            readFully(bytes, length);
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        abstract byte readByte() throws IOException;
+
+        abstract void readFully(byte[] dest, int length) throws IOException;
+
+        abstract Object readElement() throws IOException;
+
+        abstract String readString() throws IOException;
+    }
+}
@@ -0,0 +1,136 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.model.IxnRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams the CTD_chem_gene_ixns_structured.xml (see the XML schema) ixn elements
+ * straight into {@link IxnRecord}s, one at a time, without building the whole document tree.
+ */
+public class XmlIxnReader implements IxnRecordReader {
+    private static Logger log = LoggerFactory.getLogger(XmlIxnReader.class);
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private final XMLStreamReader xml;
+    private final IxnRecord.Builder builder = new IxnRecord.Builder();
+    private final StringBuilder text = new StringBuilder();
+
+    public XmlIxnReader(InputStream inputStream) throws IOException {
+        try {
+            synchronized (xmlInputFactory) {
+                xml = xmlInputFactory.createXMLStreamReader(inputStream);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read the XML", e);
+        }
+    }
+
+    @Override
+    public IxnRecord read() throws IOException {
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && "ixn".equals(xml.getLocalName())) {
+                    return readIxn();
+                }
+            }
+            return null;
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Failed parsing the XML: " + e.getMessage(), e);
+        }
+    }
+
+    private IxnRecord readIxn() throws XMLStreamException {
+        builder.begin(Long.parseLong(attribute("id")));
+        int depth = 1; //open ixn and actor elements
+        while (depth > 0) {
+            switch (xml.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    switch (xml.getLocalName()) {
+                        case "actor":
+                            builder.startActor(attribute("type"), attribute("id"),
+                                attribute("form"), attribute("formqualifier"));
+                            text.setLength(0);
+                            depth++;
+                            break;
+                        case "axn":
+                            builder.axn(attribute("code"), attribute("degreecode"), xml.getElementText());
+                            break;
+                        case "taxon":
+                            builder.taxon(attribute("id"), xml.getElementText());
+                            break;
+                        case "reference":
+                            String pmid = attribute("pmid");
+                            long id = CtdUtil.parseId(pmid);
+                            if (id >= 0) {
+                                builder.pmid(id);
+                            } else {
+                                log.warn("Ignored invalid pmid: " + pmid);
+                            }
+                            xml.getElementText();
+                            break;
+                        default:
+                            skipElement();
+                            break;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    text.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if ("actor".equals(xml.getLocalName())) {
+                        builder.actorText(text.toString());
+                        builder.endActor();
+                        text.setLength(0);
+                    }
+                    depth--;
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("Unexpected end of document");
+                default:
+                    break;
+            }
+        }
+        return builder.build();
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private String attribute(String name) {
+        return xml.getAttributeValue(null, name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+}
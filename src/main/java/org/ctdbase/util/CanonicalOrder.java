@@ -0,0 +1,99 @@
+package org.ctdbase.util;
+
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The order the models are written in (to RDF/XML, see {@link org.ctdbase.io.OwlWriter}, or a binary snapshot):
+ * the objects by URI, their properties by name, and the values of each property by URI, or in the natural order
+ * of the data values. Then a model is written the same whatever order its objects and values were created,
+ * merged or re-linked in - e.g. by different numbers of pipeline threads - so that the same input and options
+ * give byte-identical output files. The models themselves keep the default Paxtools (hash) collections;
+ * the order is imposed only when they are written.
+ */
+public final class CanonicalOrder {
+
+    /**
+     * The value order: BioPAX objects by URI and type; data values (strings, numbers, enums) naturally;
+     * values of different classes by the class name. The values it does not tell apart are written the same.
+     */
+    public static final Comparator<Object> VALUE_ORDER = CanonicalOrder::compare;
+
+    // the property editors of each BioPAX type, by the property name
+    private static final Map<Class<? extends BioPAXElement>, List<PropertyEditor<?, ?>>> editors = new ConcurrentHashMap<>();
+
+    private CanonicalOrder() {
+    }
+
+    /**
+     * @param model BioPAX L3 model
+     * @return a new list of the model's objects, sorted
+     */
+    public static List<BioPAXElement> objects(Model model) {
+        List<BioPAXElement> objects = new ArrayList<>(model.getObjects());
+        objects.sort(VALUE_ORDER);
+        return objects;
+    }
+
+    /**
+     * @param type BioPAX L3 type
+     * @return the type's property editors, sorted by the property name
+     */
+    public static List<PropertyEditor<?, ?>> editors(Class<? extends BioPAXElement> type) {
+        return editors.computeIfAbsent(type, t -> {
+            List<PropertyEditor<?, ?>> sorted = new ArrayList<>();
+            for (PropertyEditor<?, ?> editor : SimpleEditorMap.L3.getEditorsOf(t)) {
+                sorted.add(editor);
+            }
+            sorted.sort(Comparator.comparing(PropertyEditor::getProperty));
+            return Collections.unmodifiableList(sorted);
+        });
+    }
+
+    /**
+     * @param editor property editor of the element's type
+     * @param bpe BioPAX element
+     * @return the element's known (not null, not 'unknown') values of the property, sorted
+     */
+    public static List<Object> values(PropertyEditor<?, ?> editor, BioPAXElement bpe) {
+        Set<?> values = ObjectPropertyEditors.valuesOf(editor, bpe);
+        if (values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> known = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value != null && !editor.isUnknown(value)) {
+                known.add(value);
+            }
+        }
+        if (known.size() > 1) {
+            known.sort(VALUE_ORDER);
+        }
+        return known;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        if (a instanceof BioPAXElement && b instanceof BioPAXElement) {
+            BioPAXElement x = (BioPAXElement) a;
+            BioPAXElement y = (BioPAXElement) b;
+            int c = x.getUri().compareTo(y.getUri());
+            return (c != 0) ? c : x.getModelInterface().getName().compareTo(y.getModelInterface().getName());
+        }
+        if (a.getClass() == b.getClass() && a instanceof Comparable) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+        int c = a.getClass().getName().compareTo(b.getClass().getName());
+        return (c != 0) ? c : String.valueOf(a).compareTo(String.valueOf(b));
+    }
+}
@@ -0,0 +1,513 @@
+package org.ctdbase.util;
+
+import au.com.bytecode.opencsv.CSVWriter;
+import org.ctdbase.util.model.AxnCode;
+import org.ctdbase.util.model.GeneForm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates a synthetic CTD data set of any size, for benchmarks and scale tests:
+ * the structured chemical-gene interactions XML, and the gene and chemical vocabulary CSV files,
+ * in the same formats as the CTD release files.
+ *
+ * The interactions follow distributions similar to the CTD data: of axn codes (mostly 'exp' and 'act'),
+ * degrees, gene forms (mostly mRNA and protein), taxa (mostly human, rat and mouse; a few undefined),
+ * nested interactions (co-treatments, bindings, reactions) up to the max. depth, binding and co-treatment
+ * arity, and the number of publications; a few genes and chemicals occur in many interactions.
+ * The actors always refer to the generated vocabularies.
+ *
+ * The files are written as a stream (nothing is collected in memory), so they can be as large as the disk allows.
+ * The same seed and sizes give the same files.
+ */
+public class CtdDataGenerator {
+    private static Logger log = LoggerFactory.getLogger(CtdDataGenerator.class);
+
+    public static final String INTERACTIONS_FILE = "CTD_chem_gene_ixns_structured.xml";
+    public static final String GENES_FILE = "CTD_genes.csv";
+    public static final String CHEMICALS_FILE = "CTD_chemicals.csv";
+
+    private static final long FIRST_IXN_ID = 1000000;
+
+    // top-level axn codes; the rest of AxnCode (the more specific metabolic, transport codes) share the remainder
+    private static final Weighted<AxnCode> TOP_CODES;
+    static {
+        Map<AxnCode, Double> weights = new EnumMap<>(AxnCode.class);
+        for (AxnCode code : AxnCode.values()) {
+            weights.put(code, 0.1);
+        }
+        weights.put(AxnCode.EXP, 45.0);
+        weights.put(AxnCode.ACT, 12.0);
+        weights.put(AxnCode.RXN, 10.0);
+        weights.put(AxnCode.B, 4.0);
+        weights.put(AxnCode.W, 2.0);
+        weights.put(AxnCode.MET, 3.0);
+        weights.put(AxnCode.PHO, 2.0);
+        weights.put(AxnCode.LOC, 2.0);
+        weights.put(AxnCode.MUT, 1.5);
+        weights.put(AxnCode.REC, 1.5);
+        weights.put(AxnCode.SEC, 1.5);
+        weights.put(AxnCode.UPT, 1.0);
+        weights.put(AxnCode.STA, 1.0);
+        weights.put(AxnCode.DEG, 1.0);
+        weights.put(AxnCode.ABU, 1.0);
+        weights.put(AxnCode.SPL, 0.5);
+        weights.put(AxnCode.CLV, 0.5);
+        weights.put(AxnCode.TRT, 0.5);
+        weights.put(AxnCode.CSY, 0.3);
+        TOP_CODES = new Weighted<>(weights);
+    }
+
+    // the codes of an interaction nested in a 'rxn' one
+    private static final Weighted<AxnCode> REACTION_CODES = new Weighted<>(new AxnCode[]{
+        AxnCode.EXP, AxnCode.ACT, AxnCode.B, AxnCode.LOC, AxnCode.PHO, AxnCode.MET, AxnCode.SEC, AxnCode.DEG},
+        new double[]{50, 25, 8, 5, 5, 3, 2, 2});
+
+    private static final Weighted<GeneForm> GENE_FORMS;
+    static {
+        Map<GeneForm, Double> weights = new EnumMap<>(GeneForm.class);
+        for (GeneForm form : GeneForm.values()) {
+            weights.put(form, 0.1);
+        }
+        weights.put(GeneForm.MRNA, 46.0);
+        weights.put(GeneForm.PROTEIN, 38.0);
+        weights.put(GeneForm.GENE, 9.0);
+        weights.put(GeneForm.PROMOTER, 1.5);
+        weights.put(GeneForm.MUTANT_FORM, 1.0);
+        weights.put(GeneForm.MODIFIED_FORM, 1.0);
+        weights.put(GeneForm.POLYMORPHISM, 0.5);
+        weights.put(GeneForm.SNP, 0.5);
+        weights.put(GeneForm.THREE_UTR, 0.5);
+        weights.put(GeneForm.FIVE_UTR, 0.3);
+        GENE_FORMS = new Weighted<>(weights);
+    }
+
+    // {taxon id, name}; null - no taxon (undefined species)
+    private static final Weighted<String[]> TAXA = new Weighted<>(new String[][]{
+        {"9606", "Homo sapiens"}, {"10116", "Rattus norvegicus"}, {"10090", "Mus musculus"},
+        {"7955", "Danio rerio"}, {"6239", "Caenorhabditis elegans"}, {"7227", "Drosophila melanogaster"},
+        {"9913", "Bos taurus"}, {"9823", "Sus scrofa"}, {"9031", "Gallus gallus"}, null},
+        new double[]{45, 23, 22, 4, 1, 1, 0.5, 0.5, 0.5, 2.5});
+
+    private final long seed;
+    private int genes = -1;
+    private int chemicals = -1;
+    private int maxDepth = 3;
+    private boolean gzip = true;
+
+    /**
+     * @param seed random seed
+     */
+    public CtdDataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param genes number of genes in the vocabulary, or -1 (default: depends on the number of interactions)
+     */
+    public CtdDataGenerator genes(int genes) {
+        this.genes = genes;
+        return this;
+    }
+
+    /**
+     * @param chemicals number of chemicals in the vocabulary, or -1 (default: depends on the number of interactions)
+     */
+    public CtdDataGenerator chemicals(int chemicals) {
+        this.chemicals = chemicals;
+        return this;
+    }
+
+    /**
+     * @param maxDepth max. nesting depth of the interactions (0 - no nested interactions; default: 3)
+     */
+    public CtdDataGenerator maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param gzip whether to gzip the files, like the CTD release ones (default: true)
+     */
+    public CtdDataGenerator gzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * Writes the interactions, genes and chemicals files to the directory.
+     *
+     * @param dir output directory (created if it does not exist)
+     * @param interactions number of (top-level) interactions
+     * @return the interactions file
+     * @throws IOException when a file cannot be written
+     */
+    public Path generate(Path dir, long interactions) throws IOException {
+        Files.createDirectories(dir);
+        String ext = gzip ? ".gz" : "";
+        int genes = geneCount(interactions);
+        int chemicals = chemicalCount(interactions);
+        try (OutputStream out = open(dir.resolve(GENES_FILE + ext))) {
+            writeGenes(out, genes);
+        }
+        try (OutputStream out = open(dir.resolve(CHEMICALS_FILE + ext))) {
+            writeChemicals(out, chemicals);
+        }
+        Path ixnsFile = dir.resolve(INTERACTIONS_FILE + ext);
+        try (OutputStream out = open(ixnsFile)) {
+            writeInteractions(out, interactions);
+        }
+        log.info("Generated " + interactions + " interactions of " + genes + " genes and "
+            + chemicals + " chemicals in " + dir);
+        return ixnsFile;
+    }
+
+    /**
+     * Writes the structured chemical-gene interactions XML.
+     *
+     * @param out output stream (not closed)
+     * @param interactions number of (top-level) interactions
+     * @throws IOException when it cannot be written
+     */
+    public void writeInteractions(OutputStream out, long interactions) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+            new IxnWriter(xml, new SplittableRandom(seed), geneCount(interactions), chemicalCount(interactions))
+                .write(interactions);
+            xml.close();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed writing the interactions", e);
+        }
+    }
+
+    /**
+     * Writes the CTD_genes.csv vocabulary; gene i has id i+1.
+     *
+     * @param out output stream (not closed)
+     * @param genes number of genes
+     * @throws IOException when it cannot be written
+     */
+    public void writeGenes(OutputStream out, int genes) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        writer.write("# Synthetic CTD gene vocabulary (CtdDataGenerator, seed " + seed + ")\n"
+            + "#\n# Fields:\n"
+            + "# GeneSymbol,GeneName,GeneID,AltGeneIDs,Synonyms,BioGRIDIDs,PharmGKBIDs,UniProtIDs\n#\n");
+        CSVWriter csv = new CSVWriter(writer, ',', CSVWriter.NO_QUOTE_CHARACTER);
+        SplittableRandom random = new SplittableRandom(seed ^ 0x67656E6573L);
+        for (int i = 0; i < genes; i++) {
+            String symbol = geneSymbol(i);
+            csv.writeNext(new String[]{symbol, "synthetic gene " + (i + 1), String.valueOf(i + 1),
+                (random.nextInt(4) == 0) ? String.valueOf(200000000 + i) : "",
+                symbol + "-AS|" + symbol.toLowerCase(),
+                (random.nextInt(2) == 0) ? String.valueOf(100000 + i) : "",
+                (random.nextInt(3) == 0) ? "PA" + (10000 + i) : "",
+                (random.nextInt(2) == 0) ? String.format("Q%05d", i % 100000) : ""});
+        }
+        csv.flush();
+    }
+
+    /**
+     * Writes the CTD_chemicals.csv vocabulary.
+     *
+     * @param out output stream (not closed)
+     * @param chemicals number of chemicals
+     * @throws IOException when it cannot be written
+     */
+    public void writeChemicals(OutputStream out, int chemicals) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        writer.write("# Synthetic CTD chemical vocabulary (CtdDataGenerator, seed " + seed + ")\n"
+            + "#\n# Fields:\n"
+            + "# ChemicalName,ChemicalID,CasRN,Definition,ParentIDs,TreeNumbers,ParentTreeNumbers,Synonyms\n#\n");
+        CSVWriter csv = new CSVWriter(writer, ',', CSVWriter.NO_QUOTE_CHARACTER);
+        SplittableRandom random = new SplittableRandom(seed ^ 0x6368656DL);
+        for (int i = 0; i < chemicals; i++) {
+            csv.writeNext(new String[]{chemicalName(i), chemicalId(i),
+                (random.nextInt(3) == 0) ? (1000 + i) + "-" + (10 + i % 90) + "-" + (i % 10) : "",
+                (random.nextInt(4) == 0) ? "A synthetic chemical." : "",
+                chemicalId(i / 10), "D02." + (i % 1000) + "/" + chemicalId(i).substring(5), "D02." + (i % 1000),
+                chemicalName(i) + " salt|" + chemicalName(i) + " hydrate"});
+        }
+        csv.flush();
+    }
+
+    // default vocabulary sizes: about as many unique genes (chemicals) per interaction as in CTD
+    private int geneCount(long interactions) {
+        return (genes > 0) ? genes : (int) Math.min(500000, Math.max(100, interactions / 20));
+    }
+
+    private int chemicalCount(long interactions) {
+        return (chemicals > 0) ? chemicals : (int) Math.min(200000, Math.max(100, interactions / 40));
+    }
+
+    private OutputStream open(Path file) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        return gzip ? new GZIPOutputStream(out, 1 << 16) : out;
+    }
+
+    static String geneSymbol(int i) {
+        return "G" + Integer.toString(i + 1, 36).toUpperCase();
+    }
+
+    static String chemicalId(int i) {
+        // about one in eight is a MeSH descriptor (D), the rest are supplementary concepts (C)
+        return String.format((i % 8 == 0) ? "MESH:D%06d" : "MESH:C%06d", i + 1);
+    }
+
+    static String chemicalName(int i) {
+        return "chemical " + Integer.toString(i + 1, 36);
+    }
+
+    // streams the interactions; a few actors are much more frequent than the rest
+    private final class IxnWriter {
+        private final XMLStreamWriter xml;
+        private final SplittableRandom random;
+        private final int genes;
+        private final int chemicals;
+        private long nextId = FIRST_IXN_ID;
+
+        IxnWriter(XMLStreamWriter xml, SplittableRandom random, int genes, int chemicals) {
+            this.xml = xml;
+            this.random = random;
+            this.genes = genes;
+            this.chemicals = chemicals;
+        }
+
+        void write(long interactions) throws XMLStreamException {
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeComment(" Synthetic CTD chemical-gene interactions (CtdDataGenerator, seed " + seed + ") ");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("ixnset");
+            xml.writeNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+            xml.writeAttribute("xsi", "http://www.w3.org/2001/XMLSchema-instance", "noNamespaceSchemaLocation",
+                "http://ctdbase.org/reports/CTD_chem_gene_ixns_structured.xsd");
+            for (long i = 0; i < interactions; i++) {
+                xml.writeCharacters("\n    ");
+                long id = nextId++;
+                xml.writeStartElement("ixn");
+                xml.writeAttribute("id", String.valueOf(id));
+                String[] taxon = TAXA.next(random);
+                if (taxon != null) {
+                    xml.writeStartElement("taxon");
+                    xml.writeAttribute("id", taxon[0]);
+                    xml.writeCharacters(taxon[1]);
+                    xml.writeEndElement();
+                }
+                for (int p = publications(); p > 0; p--) {
+                    xml.writeEmptyElement("reference");
+                    xml.writeAttribute("pmid", String.valueOf(10000000 + random.nextInt(25000000)));
+                }
+                writeBody(TOP_CODES.next(random), id, 0);
+                xml.writeCharacters("\n    ");
+                xml.writeEndElement();
+            }
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeEndDocument();
+        }
+
+        // the axn and actors of a top-level or nested ixn
+        private void writeBody(AxnCode code, long id, int depth) throws XMLStreamException {
+            boolean nest = depth < maxDepth;
+            if (code == AxnCode.RXN && !nest) {
+                code = AxnCode.EXP;
+            }
+            char degree = (code == AxnCode.B || code == AxnCode.W) ? '1' : degree();
+            xml.writeCharacters("\n" + indent(depth + 2));
+            xml.writeStartElement("axn");
+            xml.writeAttribute("code", code.name().toLowerCase());
+            xml.writeAttribute("degreecode", String.valueOf(degree));
+            xml.writeAttribute("position", "1");
+            xml.writeAttribute("parentid", String.valueOf(id));
+            xml.writeCharacters(axnText(code, degree));
+            xml.writeEndElement();
+
+            int position = 0;
+            switch (code) {
+                case W: // co-treatment: mostly chemicals
+                    for (int n = arity(2, 0.3); position < n; ) {
+                        if (nest && random.nextInt(20) == 0) {
+                            writeNested(AxnCode.W, id, ++position, depth);
+                        } else if (random.nextInt(4) == 0) {
+                            writeGene(id, ++position, depth);
+                        } else {
+                            writeChemical(id, ++position, depth);
+                        }
+                    }
+                    break;
+                case B: // binding: mostly two genes or a gene and a chemical
+                    for (int n = arity(2, 0.15); position < n; ) {
+                        if (nest && random.nextInt(30) == 0) {
+                            writeNested(AxnCode.B, id, ++position, depth);
+                        } else if (random.nextInt(5) < 3) {
+                            writeGene(id, ++position, depth);
+                        } else {
+                            writeChemical(id, ++position, depth);
+                        }
+                    }
+                    break;
+                case RXN: // a chemical (or co-treatment) affects another interaction
+                    if (random.nextInt(6) == 0) {
+                        writeNested(AxnCode.W, id, ++position, depth);
+                    } else {
+                        writeChemical(id, ++position, depth);
+                    }
+                    writeNested(REACTION_CODES.next(random), id, ++position, depth);
+                    break;
+                default: // a chemical (or co-treatment) affects a gene (or complex)
+                    if (nest && random.nextInt(12) == 0) {
+                        writeNested(AxnCode.W, id, ++position, depth);
+                    } else {
+                        writeChemical(id, ++position, depth);
+                    }
+                    if (nest && random.nextInt(25) == 0) {
+                        writeNested(AxnCode.B, id, ++position, depth);
+                    } else {
+                        writeGene(id, ++position, depth);
+                    }
+                    break;
+            }
+        }
+
+        private void writeNested(AxnCode code, long parentId, int position, int depth) throws XMLStreamException {
+            long id = nextId++;
+            xml.writeCharacters("\n" + indent(depth + 2));
+            xml.writeStartElement("actor");
+            xml.writeAttribute("type", "ixn");
+            xml.writeAttribute("id", String.valueOf(id));
+            xml.writeAttribute("parentid", String.valueOf(parentId));
+            xml.writeAttribute("position", String.valueOf(position));
+            writeBody(code, id, depth + 1);
+            xml.writeCharacters("\n" + indent(depth + 2));
+            xml.writeEndElement();
+        }
+
+        private void writeGene(long parentId, int position, int depth) throws XMLStreamException {
+            int gene = popular(genes);
+            xml.writeCharacters("\n" + indent(depth + 2));
+            xml.writeStartElement("actor");
+            xml.writeAttribute("type", "gene");
+            xml.writeAttribute("id", "GENE:" + (gene + 1));
+            xml.writeAttribute("parentid", String.valueOf(parentId));
+            xml.writeAttribute("form", GENE_FORMS.next(random).getDescription());
+            xml.writeAttribute("position", String.valueOf(position));
+            if (random.nextInt(5) == 0) {
+                xml.writeAttribute("seqid", String.format("ENSG%011d", gene + 1));
+            }
+            xml.writeCharacters(geneSymbol(gene));
+            xml.writeEndElement();
+        }
+
+        private void writeChemical(long parentId, int position, int depth) throws XMLStreamException {
+            int chemical = popular(chemicals);
+            xml.writeCharacters("\n" + indent(depth + 2));
+            xml.writeStartElement("actor");
+            xml.writeAttribute("type", "chemical");
+            xml.writeAttribute("id", chemicalId(chemical));
+            xml.writeAttribute("parentid", String.valueOf(parentId));
+            xml.writeAttribute("position", String.valueOf(position));
+            xml.writeCharacters(chemicalName(chemical));
+            xml.writeEndElement();
+        }
+
+        // a skewed index: the first ones are picked much more often (about a power law)
+        private int popular(int size) {
+            double u = random.nextDouble();
+            return (int) (size * u * u * u);
+        }
+
+        // min. actors, and then one more with the given probability, repeatedly (up to 8)
+        private int arity(int min, double more) {
+            int n = min;
+            while (n < 8 && random.nextDouble() < more) {
+                n++;
+            }
+            return n;
+        }
+
+        // mostly one publication; a long tail of the ones with many
+        private int publications() {
+            int n = 1;
+            while (n < 50 && random.nextDouble() < 0.25) {
+                n += (random.nextInt(10) == 0) ? 5 : 1;
+            }
+            return n;
+        }
+
+        private char degree() {
+            int r = random.nextInt(100);
+            return (r < 47) ? '+' : (r < 90) ? '-' : (r < 99) ? '1' : '0';
+        }
+    }
+
+    private static String axnText(AxnCode code, char degree) {
+        switch (code) {
+            case W:
+                return "co-treated with";
+            case B:
+                return "binds to";
+            case RXN:
+                return (degree == '+') ? "promotes the reaction" : (degree == '-') ? "inhibits the reaction"
+                    : (degree == '0') ? "does not affect the reaction" : "affects the reaction";
+            default:
+                String what = code.getTypeName();
+                return (degree == '+') ? "results in increased " + what + " of"
+                    : (degree == '-') ? "results in decreased " + what + " of"
+                    : (degree == '0') ? "does not affect " + what + " of" : "affects " + what + " of";
+        }
+    }
+
+    private static String indent(int level) {
+        char[] spaces = new char[4 * level];
+        Arrays.fill(spaces, ' ');
+        return new String(spaces);
+    }
+
+    // picks values with the given relative weights
+    private static final class Weighted<T> {
+        private final T[] values;
+        private final double[] cumulative;
+
+        Weighted(T[] values, double[] weights) {
+            this.values = values;
+            this.cumulative = new double[weights.length];
+            double sum = 0;
+            for (int i = 0; i < weights.length; i++) {
+                sum += weights[i];
+                cumulative[i] = sum;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        <E extends Enum<E>> Weighted(Map<E, Double> weights) {
+            this((T[]) weights.keySet().toArray(new Enum<?>[0]),
+                weights.values().stream().mapToDouble(Double::doubleValue).toArray());
+        }
+
+        T next(SplittableRandom random) {
+            double r = random.nextDouble() * cumulative[cumulative.length - 1];
+            int i = Arrays.binarySearch(cumulative, r);
+            return values[Math.min((i < 0) ? -i - 1 : i + 1, values.length - 1)];
+        }
+    }
+}
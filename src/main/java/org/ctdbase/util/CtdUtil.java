@@ -2,120 +2,172 @@ package org.ctdbase.util;
 
 import org.ctdbase.util.model.Actor;
 import org.ctdbase.util.model.AxnCode;
-import org.ctdbase.model.ActorType;
-import org.ctdbase.model.AxnType;
-import org.ctdbase.model.IxnType;
-import org.ctdbase.model.ObjectFactory;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import javax.xml.bind.JAXBElement;
-import java.io.Serializable;
-import java.util.Iterator;
-import java.util.List;
+import org.ctdbase.util.model.IxnRecord;
 
 public class CtdUtil {
-    private static Logger log = LoggerFactory.getLogger(CtdUtil.class);
-    private static ObjectFactory ctdFactory = new ObjectFactory();
 
-    public static String extractName(IxnType ixn, boolean skipControl)
+    public static String extractName(IxnRecord rec, int ixn, boolean skipControl)
     {
-        AxnCode axnCode = axnCode(ixn);
-        String actionStr = (skipControl) ? axnCode.getTypeName() + " of" : axnType(ixn).getValue();
+        AxnCode axnCode = axnCode(rec, ixn);
+        String actionStr = (skipControl) ? axnCode.getTypeName() + " of" : rec.getAxnText(rec.getAxnStart(ixn));
         String completeName = "";
-        switch (axnCode) {
-            case B:
-            case W:
-                Iterator<ActorType> iterator = ixn.getActor().iterator();
-                assert iterator.hasNext();
-                String fName = extractName(iterator.next());
-                completeName = ((skipControl)?"":fName) + " " + actionStr;
-                while(iterator.hasNext()) {
-                    completeName += " " + extractName(iterator.next()) + ",";
-                }
-                completeName = completeName.substring(0, completeName.length()-1);
-                break;
-            default:
-                fName = CtdUtil.extractName(ixn.getActor().get(0));
-                String sName = CtdUtil.extractName(ixn.getActor().get(1));
-                completeName = ((skipControl)? "" : fName + " ") + actionStr + " " + sName;
-                break;
+        int first = rec.getActorStart(ixn);
+        int end = first + rec.getActorCount(ixn);
+        if(axnCode == AxnCode.B || axnCode == AxnCode.W) {
+            assert first < end;
+            String fName = extractName(rec, first);
+            completeName = ((skipControl)?"":fName) + " " + actionStr;
+            for(int actor = first + 1; actor < end; actor++) {
+                completeName += " " + extractName(rec, actor) + ",";
+            }
+            completeName = completeName.substring(0, completeName.length()-1);
+        } else {
+            String fName = CtdUtil.extractName(rec, first);
+            String sName = CtdUtil.extractName(rec, first + 1);
+            completeName = ((skipControl)? "" : fName + " ") + actionStr + " " + sName;
         }
         return completeName;
     }
 
-    public static String extractName(ActorType actor) {
-        List<Serializable> serializableList = actor.getContent();
-
-        String formStr = actor.getForm();
+    public static String extractName(IxnRecord rec, int actor) {
+        String formStr = rec.getActorForm(actor);
         if (formStr != null) {
             formStr = " " + formStr;
-            String formqualifier = actor.getFormqualifier();
+            String formqualifier = rec.getActorFormQualifier(actor);
             if (formqualifier != null)
                 formStr += " " + formqualifier;
         } else {
             formStr = "";
         }
 
-        String name = "";
-        if (serializableList.isEmpty()) {
-            name = actor.getId();
-        } else if (serializableList.size() == 1) {
-            name = serializableList.iterator().next().toString() + formStr;
+        String name;
+        int node = rec.getActorNode(actor);
+        if (node >= 0) {
+            name = "[" + extractName(rec, node, false) + "]";
+        } else if (rec.getActorName(actor) == null) {
+            name = rec.getActorId(actor);
         } else {
-            name = "[" + extractName(convertActorToIxn(actor, null), false) + "]";
+            name = rec.getActorName(actor) + formStr;
         }
 
         return name;
     }
 
-    public static AxnCode axnCode(IxnType ixn) {
-        return AxnCode.valueOf(axnType(ixn).getCode().toUpperCase());
+    // the (first) axn code of the ixn node (other axns of the node are currently ignored)
+    public static AxnCode axnCode(IxnRecord rec, int ixn) {
+        return rec.getAxnCode(rec.getAxnStart(ixn));
     }
 
-    public static AxnType axnType(IxnType ixn) {
-        if(ixn.getAxn().isEmpty()) {
-            log.error("ixn:" + ixn.getId() + " has no axn (required)");
-            return null;
-        }
-        //TODO: consider multiple axn elements?
-        return ixn.getAxn().get(0);
+    // index of the i-th actor of the ixn node
+    public static int actor(IxnRecord rec, int ixn, int i) {
+        return rec.getActorStart(ixn) + i;
     }
 
-    public static IxnType convertActorToIxn(ActorType actor, IxnType ixn)
-    {
-        if(CtdUtil.extractActor(actor) != Actor.IXN) {
-            throw new IllegalArgumentException("convertActorToIxn: actor is not IXN type; id: " + actor.getId());
+    /**
+     * The chemical that controls the (top) ixn: its first actor, or the first actor of the nested ixn
+     * that is its first actor, and so on; or else, e.g. when that is a gene, the first chemical actor of the record.
+     *
+     * @param rec CTD interaction record
+     * @return the chemical's packed id (see {@link #packActorId(String)}), or -1 if there is no chemical actor
+     */
+    public static long controllerChemical(IxnRecord rec) {
+        int ixn = 0;
+        for(int depth = 0; depth < rec.getNodeCount() && rec.getActorCount(ixn) > 0; depth++) {
+            int first = rec.getActorStart(ixn);
+            Actor type = rec.getActorType(first);
+            if(type == Actor.CHEMICAL) {
+                return packActorId(rec.getActorId(first));
+            } else if(type != Actor.IXN || rec.getActorNode(first) < 0) {
+                break;
+            }
+            ixn = rec.getActorNode(first);
         }
-
-        IxnType ixnType = ctdFactory.createIxnType();
-
-        for (Serializable item : actor.getContent())
-        {
-            if(!(item instanceof JAXBElement))
-                continue;
-
-            Object value = ((JAXBElement) item).getValue();
-            if(value instanceof ActorType) {
-                ixnType.getActor().add((ActorType) value);
-            } else if(value instanceof AxnType) {
-                ixnType.getAxn().add((AxnType) value);
-            } else {
-                log.error("Nested item with unexpected class: " + value.getClass().getSimpleName());
+        for(int actor = 0; actor < rec.getActorCount(); actor++) {
+            if(rec.getActorType(actor) == Actor.CHEMICAL) {
+                return packActorId(rec.getActorId(actor));
             }
         }
+        return -1;
+    }
 
-        ixnType.setId(Long.parseLong(actor.getId()));
-        //inherit taxon ids
-        if(ixn!=null)
-            ixnType.getTaxon().addAll(ixn.getTaxon());
+    /**
+     * Packs a CTD gene or chemical id, e.g. 'GENE:5178' or 'MESH:C506614', into a positive long
+     * (6 bits - kind: gene, or the MeSH id letter; 4 bits - no. digits, to keep leading zeros; 40 bits - number),
+     * case-insensitively, as is the id used in the URIs.
+     *
+     * @param id CTD actor id
+     * @return the packed id (less than 2^50), or -1 if the id has other format
+     */
+    public static long packActorId(String id) {
+        if(id == null) {
+            return -1;
+        }
+        int kind;
+        int start;
+        if(id.regionMatches(true, 0, "GENE:", 0, 5)) {
+            kind = 1;
+            start = 5;
+        } else if(id.regionMatches(true, 0, "MESH:", 0, 5) && id.length() > 6) {
+            char letter = Character.toUpperCase(id.charAt(5));
+            if(letter < 'A' || letter > 'Z') {
+                return -1;
+            }
+            kind = 2 + letter - 'A';
+            start = 6;
+        } else {
+            return -1;
+        }
+        return pack(kind, id, start);
+    }
 
-        return ixnType;
+    /**
+     * Packs a NCBI gene id from the CTD gene vocabulary, e.g. '5178', the same as its 'GENE:5178' actor id.
+     *
+     * @param geneId decimal NCBI gene id
+     * @return the packed id, or -1 if the id has other format
+     */
+    public static long packGeneId(String geneId) {
+        return (geneId == null) ? -1 : pack(1, geneId, 0);
     }
 
+    private static long pack(int kind, String id, int start) {
+        int digits = id.length() - start;
+        if(digits < 1 || digits > 12) {
+            return -1;
+        }
+        long value = 0;
+        for(int i = start; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        if(value >= (1L << 40)) {
+            return -1;
+        }
+        return ((long) kind << 44) | ((long) digits << 40) | value;
+    }
 
-    public static Actor extractActor(ActorType actor) {
-        return Actor.valueOf(actor.getType().toUpperCase());
+    /**
+     * Parses a non-negative decimal id, such as a NCBI Taxonomy id, without throwing exceptions.
+     *
+     * @param id decimal digits
+     * @return the number, or -1 if the id is null, empty, too long, or contains other characters
+     */
+    public static long parseId(String id) {
+        if(id == null || id.isEmpty() || id.length() > 18) {
+            return -1;
+        }
+        long value = 0;
+        for(int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
     }
 
     public static String locationToId(String location) {
@@ -125,13 +177,4 @@ public class CtdUtil {
     public static String sanitizeId(String str) {
             return str.replaceAll("[^-\\w]", "_");  //removes '+',':', spaces, etc.
     }
-
-    public static String sanitizeGeneForm(String form) {
-        return form
-                .replaceAll(" ", "_")
-                .replaceAll("'", "")
-                .replaceAll("3", "THREE")
-                .replaceAll("5", "FIVE")
-                ;
-    }
 }
@@ -0,0 +1,103 @@
+package org.ctdbase.util;
+
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Entity;
+import org.biopax.paxtools.model.level3.UtilityClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the dangling objects (not referenced by any other object in the model) of a type,
+ * the same as {@link org.biopax.paxtools.controller.ModelUtils#removeObjectsIfDangling(Model, Class)} does,
+ * but in one pass over the model: it counts the inbound references to every object,
+ * and then removes the unreferenced ones, decrementing the counts of the objects they refer to,
+ * so that those that become dangling are removed too (instead of traversing the whole model again).
+ */
+public final class DanglingElements {
+    private static Logger log = LoggerFactory.getLogger(DanglingElements.class);
+
+    private DanglingElements() {
+    }
+
+    /**
+     * @param model BioPAX model
+     * @param type type of the objects to remove if dangling
+     * @return the removed objects
+     */
+    public static Set<BioPAXElement> remove(Model model, Class<? extends BioPAXElement> type) {
+        return new DanglingElements().removeFrom(model, type);
+    }
+
+    private Set<BioPAXElement> removeFrom(Model model, Class<? extends BioPAXElement> type) {
+        Set<BioPAXElement> removed = new HashSet<>();
+        if(Entity.class.equals(type)) {
+            log.warn("Ignored the call for Entity (it would delete all)");
+            return removed;
+        }
+
+        // model objects with the number of references to them (values are looked up by URI and type, like in Paxtools)
+        Map<BioPAXElement, Node> nodes = new HashMap<>(2 * model.getObjects().size());
+        for (BioPAXElement bpe : model.getObjects()) {
+            nodes.put(bpe, new Node(bpe));
+        }
+        for (BioPAXElement bpe : model.getObjects()) {
+            for (ObjectPropertyEditor<?, ?> editor : ObjectPropertyEditors.of(bpe)) {
+                for (Object value : ObjectPropertyEditors.valuesOf(editor, bpe)) {
+                    Node node = nodes.get(value);
+                    if (node != null) {
+                        node.inbound++;
+                    }
+                }
+            }
+        }
+
+        Deque<BioPAXElement> dangling = new ArrayDeque<>();
+        boolean rootEntities = false;
+        for (Node node : nodes.values()) {
+            if (node.inbound == 0) {
+                if (type.isInstance(node.element)) {
+                    dangling.add(node.element);
+                }
+                rootEntities |= node.element instanceof Entity;
+            }
+        }
+        if (type == UtilityClass.class && !rootEntities) {
+            // e.g. a vocabulary model of entity references only - all would be deleted
+            log.warn("Ignored the call for UtilityClass: no root entities in the model");
+            return removed;
+        }
+
+        while (!dangling.isEmpty()) {
+            BioPAXElement bpe = dangling.poll();
+            model.remove(bpe);
+            removed.add(bpe);
+            for (ObjectPropertyEditor<?, ?> editor : ObjectPropertyEditors.of(bpe)) {
+                for (Object value : ObjectPropertyEditors.valuesOf(editor, bpe)) {
+                    Node node = nodes.get(value);
+                    if (node != null && --node.inbound == 0 && type.isInstance(node.element)) {
+                        dangling.add(node.element);
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    private static final class Node {
+        final BioPAXElement element;
+        int inbound;
+
+        Node(BioPAXElement element) {
+            this.element = element;
+        }
+    }
+}
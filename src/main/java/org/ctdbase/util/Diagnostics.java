@@ -0,0 +1,148 @@
+package org.ctdbase.util;
+
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the (per-record) events of a conversion by category, e.g. 'reused existing process'
+ * or 'skipped due to error', with a few sample ids each, and logs a summary at the end,
+ * instead of logging every occurrence; each occurrence is logged only at the DEBUG level.
+ * Thread-safe, so that the converters of a pipeline can share one.
+ */
+public final class Diagnostics {
+
+    public static final int SAMPLES = 5;
+
+    private final Logger log;
+    private final Map<String, Category> categories = new TreeMap<>();
+
+    /**
+     * @param log where to log the occurrences (if DEBUG is enabled) and the summary
+     */
+    public Diagnostics(Logger log) {
+        this.log = log;
+    }
+
+    public void info(String category, Object sample) {
+        note(Level.INFO, category, sample);
+    }
+
+    public void warn(String category, Object sample) {
+        note(Level.WARN, category, sample);
+    }
+
+    public void error(String category, Object sample) {
+        note(Level.ERROR, category, sample);
+    }
+
+    /**
+     * Counts an occurrence.
+     *
+     * @param level the category's summary log level
+     * @param category kind of the event
+     * @param sample the record or object id (or a short description)
+     */
+    public void note(Level level, String category, Object sample) {
+        if (log.isDebugEnabled()) {
+            log.debug(category + ": " + sample);
+        }
+        synchronized (categories) {
+            Category c = categories.computeIfAbsent(category, k -> new Category(level));
+            if (++c.count <= SAMPLES) {
+                c.samples.add(String.valueOf(sample));
+            }
+        }
+    }
+
+    /**
+     * @return the number of occurrences of the category
+     */
+    public long count(String category) {
+        synchronized (categories) {
+            Category c = categories.get(category);
+            return (c == null) ? 0 : c.count;
+        }
+    }
+
+    /**
+     * @return the numbers of occurrences by category
+     */
+    public Map<String, Long> counts() {
+        Map<String, Long> counts = new TreeMap<>();
+        synchronized (categories) {
+            for (Map.Entry<String, Category> e : categories.entrySet()) {
+                counts.put(e.getKey(), e.getValue().count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the sample ids of the category (the first ones)
+     */
+    public List<String> samples(String category) {
+        synchronized (categories) {
+            Category c = categories.get(category);
+            return (c == null) ? Collections.emptyList() : new ArrayList<>(c.samples);
+        }
+    }
+
+    public boolean isEmpty() {
+        synchronized (categories) {
+            return categories.isEmpty();
+        }
+    }
+
+    public void clear() {
+        synchronized (categories) {
+            categories.clear();
+        }
+    }
+
+    /**
+     * Logs each category's count and samples, at the category's level.
+     *
+     * @param prefix message prefix, e.g. the job name
+     */
+    public void logSummary(String prefix) {
+        synchronized (categories) {
+            for (Map.Entry<String, Category> e : categories.entrySet()) {
+                Category c = e.getValue();
+                String message = String.format("%s%s: %d times, e.g. %s%s", prefix, e.getKey(), c.count,
+                    String.join(", ", c.samples), (c.count > c.samples.size()) ? ", ..." : "");
+                switch (c.level) {
+                    case ERROR:
+                        log.error(message);
+                        break;
+                    case WARN:
+                        log.warn(message);
+                        break;
+                    default:
+                        log.info(message);
+                        break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return counts().toString();
+    }
+
+    private static final class Category {
+        final Level level;
+        final List<String> samples = new ArrayList<>(SAMPLES);
+        long count;
+
+        Category(Level level) {
+            this.level = level;
+        }
+    }
+}
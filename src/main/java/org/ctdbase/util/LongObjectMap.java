@@ -0,0 +1,159 @@
+package org.ctdbase.util;
+
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A minimal open-addressing hash map with primitive long keys,
+ * so that lookups do neither box the key nor allocate any entry objects.
+ * Not thread-safe.
+ *
+ * @param <V> value type
+ */
+public final class LongObjectMap<V> {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    // key 0 is used to mark free slots, so its value is kept aside
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    public LongObjectMap() {
+        this(1024);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        allocate(tableSize(expectedSize));
+    }
+
+    public V get(long key) {
+        if(key == 0) {
+            return zeroValue;
+        }
+        int i = slot(key);
+        long k;
+        while((k = keys[i]) != 0) {
+            if(k == key) {
+                return valueAt(i);
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        if(key == 0) {
+            return hasZeroKey;
+        }
+        int i = slot(key);
+        long k;
+        while((k = keys[i]) != 0) {
+            if(k == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return the previous value for the key, or null
+     */
+    public V put(long key, V value) {
+        if(key == 0) {
+            V prev = zeroValue;
+            if(!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return prev;
+        }
+        int i = slot(key);
+        long k;
+        while((k = keys[i]) != 0) {
+            if(k == key) {
+                V prev = valueAt(i);
+                values[i] = value;
+                return prev;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if(++size > threshold) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the action with each value and its key, in no particular order.
+     */
+    public void forEach(ObjLongConsumer<? super V> action) {
+        if(hasZeroKey) {
+            action.accept(zeroValue, 0L);
+        }
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] != 0) {
+                action.accept(valueAt(i), keys[i]);
+            }
+        }
+    }
+
+    // safe: only put() stores the values (rehash moves them)
+    @SuppressWarnings("unchecked")
+    private V valueAt(int i) {
+        return (V) values[i];
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for(int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if(key != 0) {
+                int i = slot(key);
+                while(keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)));
+        return (capacity < expectedSize / LOAD_FACTOR) ? capacity << 1 : capacity;
+    }
+}
@@ -0,0 +1,123 @@
+package org.ctdbase.util;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open-addressing hash set of primitive longs (see {@link LongObjectMap}),
+ * e.g. for the packed CTD gene and chemical ids (see {@link CtdUtil#packActorId(String)}).
+ * Not thread-safe.
+ */
+public final class LongSet {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private int threshold;
+    // key 0 is used to mark free slots
+    private boolean hasZeroKey;
+
+    public LongSet() {
+        this(1024);
+    }
+
+    public LongSet(int expectedSize) {
+        allocate(tableSize(expectedSize));
+    }
+
+    public boolean contains(long key) {
+        if(key == 0) {
+            return hasZeroKey;
+        }
+        int i = slot(key);
+        long k;
+        while((k = keys[i]) != 0) {
+            if(k == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the key was not in the set
+     */
+    public boolean add(long key) {
+        if(key == 0) {
+            if(hasZeroKey) {
+                return false;
+            }
+            hasZeroKey = true;
+            size++;
+            return true;
+        }
+        int i = slot(key);
+        long k;
+        while((k = keys[i]) != 0) {
+            if(k == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        if(++size > threshold) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Adds all the keys of the other set.
+     */
+    public void addAll(LongSet other) {
+        if(other.hasZeroKey) {
+            add(0);
+        }
+        for(long key : other.keys) {
+            if(key != 0) {
+                add(key);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        allocate(capacity);
+        for(long key : oldKeys) {
+            if(key != 0) {
+                int i = slot(key);
+                while(keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+            }
+        }
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)));
+        return (capacity < expectedSize / LOAD_FACTOR) ? capacity << 1 : capacity;
+    }
+}
@@ -0,0 +1,117 @@
+package org.ctdbase.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded blocking queue between two pipeline stages that also measures how the stages wait on each other:
+ * time the producers were blocked by a full queue (back-pressure), time the consumers waited
+ * on an empty queue (starved), and the max. queue depth seen.
+ * Thread-safe.
+ *
+ * @param <T> item type
+ */
+public final class MeteredQueue<T> {
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int capacity;
+    private final AtomicLong putWaitNanos = new AtomicLong();
+    private final AtomicLong takeWaitNanos = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    /**
+     * @param name the queue's name for the metrics, e.g. the stage that takes from it
+     * @param capacity max. number of items in the queue
+     */
+    public MeteredQueue(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public void put(T item) throws InterruptedException {
+        // counted before it's queued, so that the count includes every item already taken
+        items.incrementAndGet();
+        if (!queue.offer(item)) {
+            long start = System.nanoTime();
+            try {
+                queue.put(item);
+            } catch (InterruptedException e) {
+                items.decrementAndGet();
+                throw e;
+            }
+            putWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        maxDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    public T take() throws InterruptedException {
+        T item = queue.poll();
+        if (item == null) {
+            long start = System.nanoTime();
+            item = queue.take();
+            takeWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        return item;
+    }
+
+    /**
+     * @return the next item, or null if there is none in the given time
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        T item = queue.poll();
+        if (item == null) {
+            long start = System.nanoTime();
+            item = queue.poll(timeout, unit);
+            takeWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        return item;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * @return the total number of items put
+     */
+    public long getItems() {
+        return items.get();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * @return total time the producers were blocked by the full queue
+     */
+    public long getPutWaitMillis() {
+        return putWaitNanos.get() / 1000000;
+    }
+
+    /**
+     * @return total time the consumers waited for an item
+     */
+    public long getTakeWaitMillis() {
+        return takeWaitNanos.get() / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d items, max depth %d/%d, producers blocked %d ms, consumers waited %d ms",
+            name, getItems(), getMaxDepth(), capacity, getPutWaitMillis(), getTakeWaitMillis());
+    }
+}
@@ -0,0 +1,234 @@
+package org.ctdbase.util;
+
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Heap accounting of a BioPAX model: the number of objects and their estimated retained bytes
+ * per BioPAX type (model interface, e.g. Protein, RelationshipXref), and the fan-out of each object property
+ * (number of values per object, e.g. xrefs per Catalysis, components per Complex), to see what dominates
+ * the memory of a large conversion.
+ *
+ * The bytes are estimated (for a 64-bit JVM with compressed references) from the objects' fields:
+ * the object itself, its own collections (property values, inverse properties) and the strings it refers to.
+ * Strings shared by several objects (interned) are counted for each, so the estimate is an upper bound.
+ */
+public final class ModelHeapReport {
+
+    public static final String CSV_HEADER = "stage,type,property,objects,values,max_values,mean_values,estimated_bytes";
+
+    // a tree map (or set) entry, e.g. of a property value; about the same as a hash table node and slot
+    private static final int ENTRY_BYTES = 40;
+    private static final int COLLECTION_BYTES = 64;
+
+    private static final Map<Class<?>, Field[]> fields = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Long> shallowSizes = new ConcurrentHashMap<>();
+
+    private final String stage;
+    // by type name: {objects, estimated bytes}
+    private final Map<String, long[]> types = new TreeMap<>();
+    // by type and property name: {objects, values, max. values}
+    private final Map<String, long[]> fanOut = new TreeMap<>();
+    private long totalBytes;
+
+    private ModelHeapReport(String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * @param stage name of the conversion stage, e.g. 'interactions', for the report
+     * @param model BioPAX model
+     * @return the model's heap report
+     */
+    public static ModelHeapReport of(String stage, Model model) {
+        ModelHeapReport report = new ModelHeapReport(stage);
+        for (BioPAXElement bpe : model.getObjects()) {
+            report.add(bpe);
+        }
+        return report;
+    }
+
+    private void add(BioPAXElement bpe) {
+        String type = bpe.getModelInterface().getSimpleName();
+        long bytes = estimateBytes(bpe);
+        long[] t = types.computeIfAbsent(type, k -> new long[2]);
+        t[0]++;
+        t[1] += bytes;
+        totalBytes += bytes;
+        for (ObjectPropertyEditor<?, ?> editor : ObjectPropertyEditors.of(bpe)) {
+            int n = ObjectPropertyEditors.valuesOf(editor, bpe).size();
+            long[] f = fanOut.computeIfAbsent(type + "\t" + editor.getProperty(), k -> new long[3]);
+            f[0]++;
+            f[1] += n;
+            f[2] = Math.max(f[2], n);
+        }
+    }
+
+    private static long estimateBytes(Object o) {
+        long bytes = shallowSize(o.getClass());
+        for (Field field : fieldsOf(o.getClass())) {
+            Object value;
+            try {
+                value = field.get(o);
+            } catch (IllegalAccessException e) {
+                continue;
+            }
+            if (value instanceof String) {
+                bytes += align(16 + ((String) value).length()) + 24;
+            } else if (value instanceof Collection) {
+                bytes += COLLECTION_BYTES + (long) ENTRY_BYTES * ((Collection<?>) value).size();
+            } else if (value instanceof Map) {
+                bytes += COLLECTION_BYTES + (long) ENTRY_BYTES * ((Map<?, ?>) value).size();
+            }
+            // other references - BioPAX objects, enums, numbers - are counted on their own or shared
+        }
+        return bytes;
+    }
+
+    // object header and fields, aligned to 8 bytes
+    private static long shallowSize(Class<?> c) {
+        return shallowSizes.computeIfAbsent(c, k -> {
+            long size = 12;
+            for (Class<?> cl = k; cl != null && cl != Object.class; cl = cl.getSuperclass()) {
+                for (Field field : cl.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        size += fieldSize(field.getType());
+                    }
+                }
+            }
+            return align(size);
+        });
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == boolean.class || type == byte.class) {
+            return 1;
+        } else if (type == char.class || type == short.class) {
+            return 2;
+        }
+        return 4; //int, float, reference
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    // the non-static reference fields of the class and its superclasses
+    private static Field[] fieldsOf(Class<?> c) {
+        return fields.computeIfAbsent(c, k -> {
+            List<Field> list = new ArrayList<>();
+            for (Class<?> cl = k; cl != null && cl != Object.class; cl = cl.getSuperclass()) {
+                for (Field field : cl.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+                        try {
+                            field.setAccessible(true);
+                            list.add(field);
+                        } catch (RuntimeException e) {
+                            //not accessible; not counted
+                        }
+                    }
+                }
+            }
+            return list.toArray(new Field[0]);
+        });
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * @return the estimated bytes of all the objects
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @param type BioPAX type, e.g. Protein
+     * @return the number of the objects of exactly this type
+     */
+    public long getObjects(Class<? extends BioPAXElement> type) {
+        long[] t = types.get(type.getSimpleName());
+        return (t == null) ? 0 : t[0];
+    }
+
+    /**
+     * @param type BioPAX type, e.g. Protein
+     * @return the estimated bytes of the objects of exactly this type
+     */
+    public long getEstimatedBytes(Class<? extends BioPAXElement> type) {
+        long[] t = types.get(type.getSimpleName());
+        return (t == null) ? 0 : t[1];
+    }
+
+    /**
+     * @param type BioPAX type, e.g. Complex
+     * @param property object property name, e.g. 'component'
+     * @return the max. number of the property values of an object of the type
+     */
+    public long getMaxValues(Class<? extends BioPAXElement> type, String property) {
+        long[] f = fanOut.get(type.getSimpleName() + "\t" + property);
+        return (f == null) ? 0 : f[2];
+    }
+
+    /**
+     * @param type BioPAX type, e.g. Complex
+     * @param property object property name, e.g. 'component'
+     * @return the total number of the property values of the objects of the type
+     */
+    public long getValues(Class<? extends BioPAXElement> type, String property) {
+        long[] f = fanOut.get(type.getSimpleName() + "\t" + property);
+        return (f == null) ? 0 : f[1];
+    }
+
+    /**
+     * Writes the report rows (see {@link #CSV_HEADER}): one per type (with an empty property column),
+     * and one per type and object property that has any values.
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        for (Map.Entry<String, long[]> e : types.entrySet()) {
+            out.append(String.format(Locale.ROOT, "%s,%s,,%d,,,,%d%n", stage, e.getKey(), e.getValue()[0], e.getValue()[1]));
+        }
+        for (Map.Entry<String, long[]> e : fanOut.entrySet()) {
+            long[] f = e.getValue();
+            if (f[1] > 0) {
+                String[] key = e.getKey().split("\t");
+                out.append(String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%.2f,%n", stage, key[0], key[1], f[0], f[1], f[2],
+                    (double) f[1] / f[0]));
+            }
+        }
+    }
+
+    /**
+     * @param top max. number of types to list
+     * @return the total and the types that take the most bytes
+     */
+    public String summary(int top) {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "%s: ~%d MB;", stage, totalBytes >> 20));
+        types.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]))
+            .limit(top)
+            .forEach(e -> sb.append(String.format(" %s %d (~%d MB)", e.getKey(), e.getValue()[0], e.getValue()[1] >> 20)));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return summary(5);
+    }
+}
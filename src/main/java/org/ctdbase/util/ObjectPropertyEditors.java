@@ -0,0 +1,55 @@
+package org.ctdbase.util;
+
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The object property editors of the BioPAX L3 types, looked up once per type (model interface),
+ * for the model walks that visit every object's object properties (see {@link DanglingElements},
+ * {@link ModelHeapReport}). Thread-safe.
+ */
+final class ObjectPropertyEditors {
+
+    private static final EditorMap editorMap = SimpleEditorMap.L3;
+
+    private static final Map<Class<? extends BioPAXElement>, List<ObjectPropertyEditor<?, ?>>> editors =
+        new ConcurrentHashMap<>();
+
+    private ObjectPropertyEditors() {
+    }
+
+    /**
+     * @param bpe BioPAX object
+     * @return the object property editors of its type
+     */
+    static List<ObjectPropertyEditor<?, ?>> of(BioPAXElement bpe) {
+        return editors.computeIfAbsent(bpe.getModelInterface(), type -> {
+            List<ObjectPropertyEditor<?, ?>> list = new ArrayList<>();
+            for (PropertyEditor<?, ?> editor : editorMap.getEditorsOf(type)) {
+                if (editor instanceof ObjectPropertyEditor) {
+                    list.add((ObjectPropertyEditor<?, ?>) editor);
+                }
+            }
+            return Collections.unmodifiableList(list);
+        });
+    }
+
+    /**
+     * @param editor a property editor (an object or data property one) of the object's type
+     * @param bpe BioPAX object
+     * @return the values of the property of the object
+     */
+    static <D extends BioPAXElement> Set<?> valuesOf(PropertyEditor<D, ?> editor, BioPAXElement bpe) {
+        return editor.getValueFromBean(editor.getDomain().cast(bpe));
+    }
+}
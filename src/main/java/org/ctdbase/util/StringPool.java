@@ -0,0 +1,72 @@
+package org.ctdbase.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A run-scoped string deduplication table for the values that repeat across many BioPAX objects:
+ * xref db names ('pubmed', etc.), vocabulary terms, comments and entity names (gene symbols, chemical names).
+ * Each distinct string costs a table entry, so the values that do not repeat (interaction names, xref ids)
+ * are not worth pooling. Thread-safe, so that the converters of a pipeline can share it.
+ */
+public final class StringPool {
+    // a table entry: the map node (header, hash, key, value and next references) + ~2 table slots
+    static final long ENTRY_OVERHEAD = 40;
+
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * @param s a string
+     * @return the pooled instance equal to the string (the string itself when it's new)
+     */
+    public String intern(String s) {
+        if(s == null) {
+            return null;
+        }
+        String pooled = strings.putIfAbsent(s, s);
+        if(pooled == null) {
+            return s;
+        }
+        hits.increment();
+        if(pooled != s) {
+            savedBytes.add(estimateSize(s));
+        }
+        return pooled;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return estimated heap bytes saved: retained by the duplicates that were replaced with the pooled instances,
+     *         less the table entries (negative when the pooled strings do not repeat enough)
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum() - ENTRY_OVERHEAD * size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d distinct strings, %d duplicates replaced, ~%d bytes saved", size(), getHits(), getSavedBytes());
+    }
+
+    // String object (header, value, hash, coder, etc.) + its byte[] (header + Latin1 or UTF-16 chars), 8-byte aligned
+    static long estimateSize(String s) {
+        int chars = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                chars = 2 * s.length();
+                break;
+            }
+        }
+        return 24 + ((16 + chars + 7) & ~7L);
+    }
+}
@@ -5,6 +5,14 @@ public enum Actor {
     GENE("gene"),
     CHEMICAL("chemical");
 
+    private static final CodeTable<Actor> types = new CodeTable<>();
+    static {
+        for (Actor actor : values()) {
+            types.put(actor.name(), actor);
+            types.put(actor.description, actor);
+        }
+    }
+
     private final String description;
 
     Actor(String description) {
@@ -14,4 +22,14 @@ public enum Actor {
     public String getDescription() {
         return description;
     }
+
+    /**
+     * Finds the actor kind by the (case-insensitive) CTD actor type, e.g. 'gene'.
+     *
+     * @param type CTD actor type attribute value
+     * @return the matching constant or null when the type is unknown
+     */
+    public static Actor fromType(String type) {
+        return types.get(type);
+    }
 }
@@ -57,6 +57,13 @@ public enum AxnCode {
     IMT("import", "The movement of a molecule into a cell (by more specific means than uptake).", UPT)
     ;
 
+    private static final CodeTable<AxnCode> codes = new CodeTable<>();
+    static {
+        for (AxnCode axnCode : values()) {
+            codes.put(axnCode.name(), axnCode);
+        }
+    }
+
     private String typeName;
     private String description;
     private AxnCode parentAxnCode;
@@ -94,4 +101,14 @@ public enum AxnCode {
     public boolean hasParent() {
         return getParentAxnCode() != null;
     }
+
+    /**
+     * Finds the axn code by the (case-insensitive) CTD code, e.g. 'exp'.
+     *
+     * @param code CTD axn code
+     * @return the matching constant or null when the code is unknown
+     */
+    public static AxnCode fromCode(String code) {
+        return codes.get(code);
+    }
 }
@@ -0,0 +1,30 @@
+package org.ctdbase.util.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * A precomputed lookup table from CTD codes/terms (e.g. 'exp', 'mRNA', 'gene') to enum constants.
+ * The exact-match hash probe covers the spellings found in the CTD files;
+ * other letter cases are resolved via the case-insensitive tree, so that no lookup allocates a new string.
+ */
+final class CodeTable<E extends Enum<E>> {
+    private final Map<String, E> exact = new HashMap<>();
+    private final Map<String, E> caseInsensitive = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    void put(String key, E value) {
+        exact.put(key, value);
+        exact.put(key.toLowerCase(), value);
+        exact.put(key.toUpperCase(), value);
+        caseInsensitive.put(key, value);
+    }
+
+    E get(String key) {
+        if(key == null) {
+            return null;
+        }
+        E value = exact.get(key);
+        return (value != null) ? value : caseInsensitive.get(key);
+    }
+}
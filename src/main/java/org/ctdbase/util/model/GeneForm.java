@@ -19,6 +19,15 @@ public enum GeneForm {
     ALTERNATIVE_FORM("alternative form", ProteinReference.class, Protein.class),
     POLYA_TAIL("polyA tail", RnaRegionReference.class, RnaRegion.class);
 
+    private static final CodeTable<GeneForm> forms = new CodeTable<>();
+    static {
+        for (GeneForm geneForm : values()) {
+            forms.put(geneForm.name(), geneForm);
+            forms.put(geneForm.description, geneForm);
+            forms.put(geneForm.description.replace("'", ""), geneForm); //e.g. '3 UTR'
+        }
+    }
+
     private final String description;
     private final Class<? extends EntityReference> referenceClass;
     private final Class<? extends SimplePhysicalEntity> entityClass;
@@ -44,4 +53,14 @@ public enum GeneForm {
     public Class<? extends SimplePhysicalEntity> getEntityClass() {
         return entityClass;
     }
+
+    /**
+     * Finds the gene form by the (case-insensitive) CTD actor form, e.g. 'mRNA' or '3' UTR'.
+     *
+     * @param form CTD gene actor form attribute value
+     * @return the matching constant or null when the form is unknown
+     */
+    public static GeneForm fromForm(String form) {
+        return forms.get(form);
+    }
 }
@@ -0,0 +1,453 @@
+package org.ctdbase.util.model;
+
+import java.util.Arrays;
+
+/**
+ * A compact, immutable representation of one top-level CTD chemical-gene interaction (ixn) tree.
+ *
+ * The ixn and its nested 'ixn' type actors are "nodes" (node 0 is the top ixn).
+ * Axns and actors are stored in flat arrays, grouped by their node, so that a node's axns and actors
+ * are contiguous index ranges; an 'ixn' type actor refers to its node by index.
+ * Taxa and PubMed ids belong to the top ixn and are inherited by the nested ones.
+ * Codes, types and gene forms are resolved once, when the record is built.
+ */
+public final class IxnRecord {
+    private static final AxnCode[] AXN_CODES = AxnCode.values();
+    private static final Actor[] ACTORS = Actor.values();
+    private static final GeneForm[] GENE_FORMS = GeneForm.values();
+
+    private final long id;
+    private final String[] taxonIds;
+    private final String[] taxonNames;
+    private final long[] pmids;
+
+    // per node (+1 sentinel element): node's id, first axn and first actor index
+    private final long[] nodeIds;
+    private final int[] nodeAxnStart;
+    private final int[] nodeActorStart;
+
+    // axns
+    private final byte[] axnCodes; //AxnCode ordinal
+    private final char[] axnDegrees; //first char of the degree code, or 0
+    private final String[] axnTexts;
+
+    // actors
+    private final byte[] actorTypes; //Actor ordinal
+    private final byte[] actorGeneForms; //GeneForm ordinal or -1 (unknown)
+    private final int[] actorNodes; //nested ixn node index or -1
+    private final String[] actorIds;
+    private final String[] actorNames;
+    private final String[] actorForms;
+    private final String[] actorFormQualifiers;
+
+    private final String unknownTerm;
+    private final String unknownValue;
+
+    private IxnRecord(Builder b, int[] axnOrder, int[] actorOrder) {
+        id = b.nodeIds[0];
+        taxonIds = Arrays.copyOf(b.taxonIds, b.taxonCount);
+        taxonNames = Arrays.copyOf(b.taxonNames, b.taxonCount);
+        pmids = Arrays.copyOf(b.pmids, b.pmidCount);
+        unknownTerm = b.unknownTerm;
+        unknownValue = b.unknownValue;
+
+        int nodes = b.nodeCount;
+        nodeIds = Arrays.copyOf(b.nodeIds, nodes);
+        nodeAxnStart = new int[nodes + 1];
+        nodeActorStart = new int[nodes + 1];
+        countingSort(b.axnNodes, b.axnCount, nodes, nodeAxnStart, axnOrder);
+        countingSort(b.actorNodes, b.actorCount, nodes, nodeActorStart, actorOrder);
+
+        axnCodes = new byte[b.axnCount];
+        axnDegrees = new char[b.axnCount];
+        axnTexts = new String[b.axnCount];
+        for (int i = 0; i < b.axnCount; i++) {
+            int j = axnOrder[i];
+            axnCodes[i] = b.axnCodes[j];
+            axnDegrees[i] = b.axnDegrees[j];
+            axnTexts[i] = b.axnTexts[j];
+        }
+
+        actorTypes = new byte[b.actorCount];
+        actorGeneForms = new byte[b.actorCount];
+        actorNodes = new int[b.actorCount];
+        actorIds = new String[b.actorCount];
+        actorNames = new String[b.actorCount];
+        actorForms = new String[b.actorCount];
+        actorFormQualifiers = new String[b.actorCount];
+        for (int i = 0; i < b.actorCount; i++) {
+            int j = actorOrder[i];
+            actorTypes[i] = b.actorTypes[j];
+            actorGeneForms[i] = b.actorGeneForms[j];
+            actorNodes[i] = b.actorChildNodes[j];
+            actorIds[i] = b.actorIds[j];
+            actorNames[i] = b.actorNames[j];
+            actorForms[i] = b.actorForms[j];
+            actorFormQualifiers[i] = b.actorFormQualifiers[j];
+        }
+    }
+
+    // stable grouping of items by their node: fills in the nodes' start indices and the items' new order
+    private static void countingSort(int[] itemNodes, int items, int nodes, int[] start, int[] order) {
+        for (int i = 0; i < items; i++) {
+            start[itemNodes[i] + 1]++;
+        }
+        for (int n = 0; n < nodes; n++) {
+            start[n + 1] += start[n];
+        }
+        int[] next = Arrays.copyOf(start, nodes);
+        for (int i = 0; i < items; i++) {
+            order[next[itemNodes[i]]++] = i;
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getTaxonCount() {
+        return taxonIds.length;
+    }
+
+    public String getTaxonId(int i) {
+        return taxonIds[i];
+    }
+
+    public String getTaxonName(int i) {
+        return taxonNames[i];
+    }
+
+    public int getPmidCount() {
+        return pmids.length;
+    }
+
+    public long getPmid(int i) {
+        return pmids[i];
+    }
+
+    public int getNodeCount() {
+        return nodeIds.length;
+    }
+
+    public long getNodeId(int node) {
+        return nodeIds[node];
+    }
+
+    public int getAxnStart(int node) {
+        return nodeAxnStart[node];
+    }
+
+    public int getAxnCount(int node) {
+        return nodeAxnStart[node + 1] - nodeAxnStart[node];
+    }
+
+    public int getActorStart(int node) {
+        return nodeActorStart[node];
+    }
+
+    public int getActorCount(int node) {
+        return nodeActorStart[node + 1] - nodeActorStart[node];
+    }
+
+    // total no. axns/actors in the tree
+    public int getAxnCount() {
+        return axnCodes.length;
+    }
+
+    public int getActorCount() {
+        return actorTypes.length;
+    }
+
+    public AxnCode getAxnCode(int axn) {
+        return AXN_CODES[axnCodes[axn]];
+    }
+
+    /**
+     * @return the first character of the axn degree code ('+', '-', '0', '1'), or 0 if not set
+     */
+    public char getAxnDegree(int axn) {
+        return axnDegrees[axn];
+    }
+
+    public String getAxnText(int axn) {
+        return axnTexts[axn];
+    }
+
+    public Actor getActorType(int actor) {
+        return ACTORS[actorTypes[actor]];
+    }
+
+    /**
+     * @return the gene form (PROTEIN when the form is not specified), or null if the form is unknown
+     */
+    public GeneForm getGeneForm(int actor) {
+        byte form = actorGeneForms[actor];
+        return (form < 0) ? null : GENE_FORMS[form];
+    }
+
+    /**
+     * @return the node index of an 'ixn' type actor, or -1
+     */
+    public int getActorNode(int actor) {
+        return actorNodes[actor];
+    }
+
+    public String getActorId(int actor) {
+        return actorIds[actor];
+    }
+
+    /**
+     * @return the actor's text (gene symbol, chemical name), or null if empty
+     */
+    public String getActorName(int actor) {
+        return actorNames[actor];
+    }
+
+    public String getActorForm(int actor) {
+        return actorForms[actor];
+    }
+
+    public String getActorFormQualifier(int actor) {
+        return actorFormQualifiers[actor];
+    }
+
+    /**
+     * @return the kind of the first unknown (or missing) axn code, actor type or ixn id in the tree,
+     *         e.g. "unknown axn code", or null when all of them are known
+     */
+    public String getUnknownTerm() {
+        return unknownTerm;
+    }
+
+    /**
+     * @return the value of the {@link #getUnknownTerm() unknown term}, e.g. "xyz" (an axn code),
+     *         or the id of the ixn node the axn is missing in
+     */
+    public String getUnknownValue() {
+        return unknownValue;
+    }
+
+    /**
+     * Builds records in the document order of the ixn elements, i.e. as the reader goes;
+     * a builder can be reused for the next record after {@link #build()}.
+     */
+    public static final class Builder {
+        private long[] nodeIds = new long[4];
+        private int nodeCount;
+        private int[] nodeStack = new int[4];
+        private int depth;
+
+        private String[] taxonIds = new String[2];
+        private String[] taxonNames = new String[2];
+        private int taxonCount;
+        private long[] pmids = new long[4];
+        private int pmidCount;
+
+        private int[] axnNodes = new int[4];
+        private byte[] axnCodes = new byte[4];
+        private char[] axnDegrees = new char[4];
+        private String[] axnTexts = new String[4];
+        private int axnCount;
+
+        private int[] actorNodes = new int[8];
+        private byte[] actorTypes = new byte[8];
+        private byte[] actorGeneForms = new byte[8];
+        private int[] actorChildNodes = new int[8];
+        private String[] actorIds = new String[8];
+        private String[] actorNames = new String[8];
+        private String[] actorForms = new String[8];
+        private String[] actorFormQualifiers = new String[8];
+        private int actorCount;
+        // actor index at each depth (top ixn is at depth 0)
+        private int[] actorStack = new int[4];
+
+        private String unknownTerm;
+        private String unknownValue;
+
+        /**
+         * Starts a new top-level ixn record.
+         */
+        public Builder begin(long ixnId) {
+            nodeCount = 0;
+            depth = 0;
+            taxonCount = 0;
+            pmidCount = 0;
+            axnCount = 0;
+            actorCount = 0;
+            unknownTerm = null;
+            unknownValue = null;
+            nodeStack[0] = addNode(ixnId);
+            return this;
+        }
+
+        public Builder taxon(String id, String name) {
+            if (taxonCount == taxonIds.length) {
+                taxonIds = Arrays.copyOf(taxonIds, taxonCount * 2);
+                taxonNames = Arrays.copyOf(taxonNames, taxonCount * 2);
+            }
+            taxonIds[taxonCount] = id;
+            taxonNames[taxonCount++] = name;
+            return this;
+        }
+
+        public Builder pmid(long pmid) {
+            if (pmidCount == pmids.length) {
+                pmids = Arrays.copyOf(pmids, pmidCount * 2);
+            }
+            pmids[pmidCount++] = pmid;
+            return this;
+        }
+
+        /**
+         * Adds an axn to the current (innermost open) ixn node.
+         */
+        public Builder axn(String code, String degree, String text) {
+            AxnCode axnCode = AxnCode.fromCode(code);
+            if (axnCode == null) {
+                unknown("unknown axn code", code);
+            }
+            return axn(axnCode, (degree == null || degree.isEmpty()) ? 0 : degree.charAt(0), text);
+        }
+
+        /**
+         * Adds an axn to the current ixn node.
+         *
+         * @param axnCode resolved axn code (null when unknown)
+         * @param degree first character of the degree code, or 0
+         * @param text axn description
+         */
+        public Builder axn(AxnCode axnCode, char degree, String text) {
+            if (axnCount == axnCodes.length) {
+                int n = axnCount * 2;
+                axnNodes = Arrays.copyOf(axnNodes, n);
+                axnCodes = Arrays.copyOf(axnCodes, n);
+                axnDegrees = Arrays.copyOf(axnDegrees, n);
+                axnTexts = Arrays.copyOf(axnTexts, n);
+            }
+            axnNodes[axnCount] = nodeStack[depth];
+            axnCodes[axnCount] = (byte) ((axnCode == null) ? 0 : axnCode.ordinal());
+            axnDegrees[axnCount] = degree;
+            axnTexts[axnCount++] = text;
+            return this;
+        }
+
+        /**
+         * Opens an actor of the current ixn node; an 'ixn' type actor also opens a nested node,
+         * which following {@link #axn} and {@link #startActor} calls go to until {@link #endActor()}.
+         */
+        public Builder startActor(String type, String id, String form, String formQualifier) {
+            Actor actor = Actor.fromType(type);
+            if (actor == null) {
+                unknown("unknown actor type", type);
+            }
+            return startActor(actor, id, form, formQualifier);
+        }
+
+        /**
+         * Opens an actor of the current ixn node (see {@link #startActor(String, String, String, String)}).
+         *
+         * @param actor resolved actor type (null when unknown)
+         */
+        public Builder startActor(Actor actor, String id, String form, String formQualifier) {
+            if (actorCount == actorTypes.length) {
+                int n = actorCount * 2;
+                actorNodes = Arrays.copyOf(actorNodes, n);
+                actorTypes = Arrays.copyOf(actorTypes, n);
+                actorGeneForms = Arrays.copyOf(actorGeneForms, n);
+                actorChildNodes = Arrays.copyOf(actorChildNodes, n);
+                actorIds = Arrays.copyOf(actorIds, n);
+                actorNames = Arrays.copyOf(actorNames, n);
+                actorForms = Arrays.copyOf(actorForms, n);
+                actorFormQualifiers = Arrays.copyOf(actorFormQualifiers, n);
+            }
+            int a = actorCount++;
+            actorNodes[a] = nodeStack[depth];
+            actorTypes[a] = (byte) ((actor == null) ? 0 : actor.ordinal());
+            GeneForm geneForm = (form == null) ? GeneForm.PROTEIN : GeneForm.fromForm(form);
+            actorGeneForms[a] = (byte) ((geneForm == null) ? -1 : geneForm.ordinal());
+            actorIds[a] = id;
+            actorNames[a] = null;
+            actorForms[a] = form;
+            actorFormQualifiers[a] = formQualifier;
+            actorChildNodes[a] = -1;
+
+            if (++depth == nodeStack.length) {
+                nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+                actorStack = Arrays.copyOf(actorStack, depth * 2);
+            }
+            actorStack[depth] = a;
+            if (actor == Actor.IXN) {
+                actorChildNodes[a] = addNode(parseNodeId(id));
+                nodeStack[depth] = actorChildNodes[a];
+            } else {
+                nodeStack[depth] = nodeStack[depth - 1];
+            }
+            return this;
+        }
+
+        /**
+         * Sets the text of the current actor (ignored for 'ixn' type actors).
+         */
+        public Builder actorText(String text) {
+            int a = actorStack[depth];
+            if (actorChildNodes[a] < 0 && text != null && !text.isEmpty()) {
+                actorNames[a] = text;
+            }
+            return this;
+        }
+
+        public Builder endActor() {
+            depth--;
+            return this;
+        }
+
+        public IxnRecord build() {
+            for (int n = 0; n < nodeCount; n++) {
+                if (unknownTerm == null && !hasAxn(n)) {
+                    unknown("missing axn in a (nested) ixn", String.valueOf(nodeIds[n]));
+                }
+            }
+            return new IxnRecord(this, new int[axnCount], new int[actorCount]);
+        }
+
+        private boolean hasAxn(int node) {
+            for (int i = 0; i < axnCount; i++) {
+                if (axnNodes[i] == node) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int addNode(long nodeId) {
+            if (nodeCount == nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, nodeCount * 2);
+            }
+            nodeIds[nodeCount] = nodeId;
+            return nodeCount++;
+        }
+
+        private long parseNodeId(String id) {
+            try {
+                return Long.parseLong(id);
+            } catch (NumberFormatException e) {
+                unknown("non-numeric nested ixn id", id);
+                return -1;
+            }
+        }
+
+        /**
+         * Marks the record as having an unknown term (only the first one is kept).
+         *
+         * @param term  the kind of the term, the same for all the records (a diagnostics category)
+         * @param value the term itself, or the id it's missing in
+         */
+        public Builder unknown(String term, String value) {
+            if (unknownTerm == null) {
+                unknownTerm = term;
+                unknownValue = value;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.ctdbase;
+
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.ProteinReference;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConversionContextTest {
+
+    @Test
+    public void vocabulary() throws Exception {
+        Path file = Files.createTempFile("ctd", ".csv");
+        Files.write(file, "v1".getBytes());
+        ConversionContext context = new ConversionContext();
+        AtomicInteger conversions = new AtomicInteger();
+        ConversionContext.ModelSource converter = () -> {
+            Model model = BioPAXLevel.L3.getDefaultFactory().createModel();
+            model.addNew(ProteinReference.class, "ctd:ref_" + conversions.incrementAndGet());
+            return model;
+        };
+
+        assertNotNull(context.vocabulary("gene", file.toString(), "ctd:", converter).getByID("ctd:ref_1"));
+        // a copy of the cached model
+        assertNotNull(context.vocabulary("gene", file.toString(), "ctd:", converter).getByID("ctd:ref_1"));
+        assertEquals(1, conversions.get());
+
+        // the changed file is converted again, and replaces the cached one
+        Files.write(file, "v2, longer".getBytes());
+        assertNotNull(context.vocabulary("gene", file.toString(), "ctd:", converter).getByID("ctd:ref_2"));
+        assertNotNull(context.vocabulary("gene", file.toString(), "ctd:", converter).getByID("ctd:ref_2"));
+        assertEquals(2, conversions.get());
+        assertEquals(1, context.size());
+        assertEquals(2, context.getMisses());
+        assertEquals(2, context.getHits());
+
+        // another kind of vocabulary from the same file is another entry
+        context.vocabulary("chemical", file.toString(), "ctd:", converter);
+        assertEquals(2, context.size());
+        Files.delete(file);
+    }
+}
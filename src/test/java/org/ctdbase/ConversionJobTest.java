@@ -0,0 +1,249 @@
+package org.ctdbase;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.ctdbase.io.ModelSnapshot;
+import org.ctdbase.io.OwlWriter;
+import org.ctdbase.util.CtdDataGenerator;
+import org.ctdbase.util.ModelHeapReport;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ConversionJobTest {
+
+    @Test
+    public void conversionJobs() throws IOException {
+        Path dir = Files.createTempDirectory("ctd");
+        Path ixns = dir.resolve("ixns.xml");
+        Path genes = dir.resolve("genes.csv");
+        try (InputStream in = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml")) {
+            Files.copy(in, ixns);
+        }
+        try (InputStream in = getClass().getResourceAsStream("/test_CTD_genes.csv")) {
+            Files.copy(in, genes);
+        }
+        ConversionContext context = new ConversionContext();
+        List<Model> models = new ArrayList<>();
+        for (String taxon : Arrays.asList("9606", "10090", "9606,10090")) {
+            JobMetrics metrics = ConversionJob.builder()
+                .interactions(ixns.toString())
+                .genes(genes.toString())
+                .taxonomy(taxon)
+                .xmlBase("http://ctdbase.org/test/")
+                .context(context)
+                .sink(m -> {
+                    models.add(m);
+                    return -1;
+                })
+                .build()
+                .run();
+            assertTrue(metrics.getObjects() > 0);
+        }
+        assertEquals(1, context.getMisses()); //the gene vocabulary was converted once
+        assertEquals(2, context.getHits());
+        assertEquals(35, models.get(0).getObjects(Control.class).size());
+        assertEquals(1, models.get(1).getObjects(Control.class).size());
+        assertEquals(36, models.get(2).getObjects(Control.class).size());
+        assertEquals("http://ctdbase.org/test/", models.get(0).getXmlBase());
+        // the same vocabulary objects in each model, but not the same instances
+        String uri = "http://ctdbase.org/test/ref_protein_gene_611";
+        BioPAXElement pr = models.get(0).getByID(uri);
+        assertTrue(pr instanceof ProteinReference);
+        assertNotNull(models.get(1).getByID(uri));
+        assertNotSame(pr, models.get(1).getByID(uri));
+
+        Files.delete(ixns);
+        Files.delete(genes);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void pipeline() throws IOException {
+        Path ixns = Files.createTempFile("ctd", ".xml.gz");
+        try (InputStream in = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml");
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(ixns))) {
+            in.transferTo(out);
+        }
+        Model expected = new CTDInteractionConverter("defined").convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        for (int workers : new int[]{1, 3}) {
+            List<Model> models = new ArrayList<>();
+            JobMetrics metrics = ConversionJob.builder()
+                .interactions(ixns.toString())
+                .taxonomy("defined")
+                .workers(workers)
+                .batchSize(5)
+                .sink(m -> {
+                    models.add(m);
+                    return -1;
+                })
+                .build()
+                .run();
+            assertArrayEquals(sortedOwlLines(expected), sortedOwlLines(models.get(0)));
+            assertEquals(8, (long) metrics.getCounters().get("pipeline.convert.items")); //34 ixns in batches of 5, the end
+            assertTrue(metrics.getCounters().containsKey("pipeline.parse-input.consumer-waited-ms"));
+        }
+        Files.delete(ixns);
+    }
+
+    @Test
+    public void pipelineGeneratedData() throws IOException {
+        // 40 genes in 600 interactions: the same processes and entities are used again in the later batches
+        Path ixns = Files.createTempFile("ctd", ".xml");
+        try (OutputStream out = Files.newOutputStream(ixns)) {
+            new CtdDataGenerator(7).genes(40).chemicals(20).writeInteractions(out, 600);
+        }
+        Model expected;
+        try (InputStream in = Files.newInputStream(ixns)) {
+            expected = new CTDInteractionConverter(null).convert(in);
+        }
+        for (int workers : new int[]{0, 2}) {
+            List<Model> models = new ArrayList<>();
+            ConversionJob.builder()
+                .interactions(ixns.toString())
+                .workers(workers)
+                .batchSize(7)
+                .sink(m -> {
+                    models.add(m);
+                    return -1;
+                })
+                .build()
+                .run();
+            assertArrayEquals("workers: " + workers, sortedOwlLines(expected), sortedOwlLines(models.get(0)));
+        }
+
+        Path spilled = Files.createTempFile("ctd", ".owl");
+        ConversionJob.builder().interactions(ixns.toString()).batchSize(7)
+            .spill(System.getProperty("java.io.tmpdir")).spillRunSize(50)
+            .output(spilled.toString()).build().run();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OwlWriter.write(expected, out);
+        assertArrayEquals(out.toByteArray(), Files.readAllBytes(spilled));
+        Files.delete(ixns);
+        Files.delete(spilled);
+    }
+
+    @Test
+    public void deterministicOutput() throws IOException {
+        Path ixns = Files.createTempFile("ctd", ".xml");
+        try (InputStream in = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml")) {
+            Files.copy(in, ixns, StandardCopyOption.REPLACE_EXISTING);
+        }
+        byte[] expected = null;
+        byte[] expectedSnapshot = null;
+        for (int workers : new int[]{0, 1, 3, 0}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            ConversionJob.builder()
+                .interactions(ixns.toString())
+                .workers(workers)
+                .batchSize(3)
+                .sink(m -> {
+                    OwlWriter.write(m, out);
+                    ModelSnapshot.write(m, snapshot);
+                    return -1;
+                })
+                .build()
+                .run();
+            if (expected == null) {
+                expected = out.toByteArray();
+                expectedSnapshot = snapshot.toByteArray();
+            } else {
+                assertArrayEquals("workers: " + workers, expected, out.toByteArray());
+                assertArrayEquals("workers: " + workers, expectedSnapshot, snapshot.toByteArray());
+            }
+        }
+        Files.delete(ixns);
+    }
+
+    @Test
+    public void spillMerge() throws IOException {
+        String ixns = getClass().getResource("/chem_gene_ixns_struct.xml").getPath();
+        String genes = getClass().getResource("/test_CTD_genes.csv").getPath();
+        Path inMemory = Files.createTempFile("ctd", ".owl");
+        Path spilled = Files.createTempFile("ctd", ".owl");
+        ConversionJob.builder().interactions(ixns).genes(genes).batchSize(3)
+            .output(inMemory.toString()).build().run();
+        JobMetrics metrics = ConversionJob.builder().interactions(ixns).genes(genes).batchSize(3)
+            .spill(System.getProperty("java.io.tmpdir")).spillRunSize(6)
+            .output(spilled.toString()).build().run();
+        assertTrue(metrics.getCounters().get("spill.runs") > 2);
+        assertArrayEquals(Files.readAllBytes(inMemory), Files.readAllBytes(spilled));
+        Files.delete(inMemory);
+        Files.delete(spilled);
+    }
+
+    @Test
+    public void twoPass() throws IOException {
+        String ixns = getClass().getResource("/chem_gene_ixns_struct.xml").getPath();
+        String genes = getClass().getResource("/test_CTD_genes.csv").getPath();
+        Path onePass = Files.createTempFile("ctd", ".owl");
+        Path twoPass = Files.createTempFile("ctd", ".owl");
+        Path spilled = Files.createTempFile("ctd", ".owl");
+        ConversionJob.builder().interactions(ixns).genes(genes).workers(2).batchSize(3)
+            .output(onePass.toString()).build().run();
+        JobMetrics metrics = ConversionJob.builder().interactions(ixns).genes(genes).workers(2).batchSize(3)
+            .twoPass(true).output(twoPass.toString()).build().run();
+        assertTrue(metrics.getCounters().get("two-pass.entities") > 0);
+        assertArrayEquals(Files.readAllBytes(onePass), Files.readAllBytes(twoPass));
+        ConversionJob.builder().interactions(ixns).genes(genes).batchSize(3).twoPass(true)
+            .spill(System.getProperty("java.io.tmpdir")).spillRunSize(6)
+            .output(spilled.toString()).build().run();
+        assertArrayEquals(Files.readAllBytes(onePass), Files.readAllBytes(spilled));
+
+        Files.delete(onePass);
+        Files.delete(twoPass);
+        Files.delete(spilled);
+    }
+
+    @Test
+    public void heapReport() throws IOException {
+        Path csv = Files.createTempFile("ctd", ".csv");
+        ConversionJob.builder()
+            .interactions(getClass().getResource("/chem_gene_ixns_struct.xml").getPath())
+            .genes(getClass().getResource("/test_CTD_genes.csv").getPath())
+            .heapReport(csv.toString())
+            .sink(model -> -1)
+            .build()
+            .run();
+        List<String> lines = Files.readAllLines(csv);
+        Files.delete(csv);
+        assertEquals(ModelHeapReport.CSV_HEADER, lines.get(0));
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("interactions,Complex,component,")));
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("genes,ProteinReference,,")));
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("final,PublicationXref,,")));
+    }
+
+    @Test
+    public void diagnostics() throws IOException {
+        JobMetrics metrics = ConversionJob.builder()
+            .interactions(getClass().getResource("/chem_gene_ixns_struct.xml").getPath())
+            .sink(model -> -1)
+            .build()
+            .run();
+        assertEquals(Long.valueOf(2), metrics.getCounters().get("diagnostics.ixns skipped due to error"));
+    }
+
+    private static String[] sortedOwlLines(Model m) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SimpleIOHandler().convertToOWL(m, out);
+        String[] lines = out.toString().split("\n");
+        Arrays.sort(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,73 @@
+package org.ctdbase;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class SpoolServerTest {
+
+    @Test
+    public void spoolServer() throws Exception {
+        Path spool = Files.createTempDirectory("ctd");
+        try (InputStream in = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml")) {
+            Files.copy(in, spool.resolve("ixns.xml"));
+        }
+        Files.write(spool.resolve("human.job"), Arrays.asList("interaction=ixns.xml", "taxonomy=9606", "output=human.owl",
+            "remove-dangling=true", "join=false", "workers=2", "limit=-1"));
+        Files.write(spool.resolve("bad.job"), Arrays.asList("interaction=missing.xml", "output=bad.owl"));
+        Files.write(spool.resolve("typo.job"), Arrays.asList("interaction=ixns.xml", "taxonomi=9606", "output=typo.owl"));
+
+        SpoolServer server = new SpoolServer(spool, 2);
+        server.setPollMillis(50);
+        Thread thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        for (int i = 0; i < 200 && server.getDone() + server.getFailed() < 3; i++) {
+            Thread.sleep(50);
+        }
+        Files.createFile(spool.resolve(SpoolServer.STOP));
+        thread.join(10000);
+        assertFalse(thread.isAlive());
+
+        assertEquals(1, server.getDone());
+        assertEquals(2, server.getFailed());
+        Properties metrics = new Properties();
+        try (InputStream in = Files.newInputStream(spool.resolve("human" + SpoolServer.DONE))) {
+            metrics.load(in);
+        }
+        assertEquals("done", metrics.getProperty("status"));
+        assertTrue(Long.parseLong(metrics.getProperty("output-bytes")) > 0);
+        assertTrue(Files.exists(spool.resolve("bad" + SpoolServer.FAILED)));
+        // the keys are the command line options
+        Properties error = new Properties();
+        try (InputStream in = Files.newInputStream(spool.resolve("typo" + SpoolServer.FAILED))) {
+            error.load(in);
+        }
+        assertTrue(error.getProperty("error").contains("taxonomi"));
+        assertFalse(Files.exists(spool.resolve("typo.owl")));
+        assertFalse(Files.exists(spool.resolve("human.job" + SpoolServer.RUNNING)));
+        Model m = new SimpleIOHandler().convertFromOWL(Files.newInputStream(spool.resolve("human.owl")));
+        assertEquals(35, m.getObjects(Control.class).size());
+
+        try (java.util.stream.Stream<Path> files = Files.list(spool)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(spool);
+    }
+}
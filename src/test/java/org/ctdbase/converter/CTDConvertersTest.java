@@ -1,19 +1,40 @@
 package org.ctdbase.converter;
 
-//import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.controller.Merger;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.io.SimpleIOHandler;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.*;
+import org.ctdbase.io.OwlWriter;
+import org.ctdbase.io.XmlIxnReader;
+import org.ctdbase.util.CtdDataGenerator;
+import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.Diagnostics;
+import org.ctdbase.util.LongSet;
+import org.ctdbase.util.model.Actor;
+import org.ctdbase.util.model.AxnCode;
 import org.ctdbase.util.model.GeneForm;
 import org.junit.Test;
+import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
 public class CTDConvertersTest {
 
     @Test
-    public void convert() {
+    public void convert() throws IOException {
         CTDInteractionConverter converter = new CTDInteractionConverter(null);
         Model m = converter.convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
 
@@ -94,9 +115,28 @@ public class CTDConvertersTest {
         assertTrue(w.getControlledOf().contains(m.getByID(m.getXmlBase() + "ACT_GENE_4843")));
     }
 
+    // a read error fails the conversion instead of giving a part of the model
+    @Test
+    public void convertTruncated() throws IOException {
+        byte[] xml = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml").readAllBytes();
+        byte[] truncated = Arrays.copyOf(xml, xml.length / 2);
+        try {
+            new CTDInteractionConverter(null).convert(new ByteArrayInputStream(truncated));
+            fail("truncated document converted");
+        } catch (IOException e) {
+            //expected
+        }
+        try {
+            new CTDInteractionConverter(null).convert(new XmlIxnReader(new ByteArrayInputStream(truncated)));
+            fail("truncated document converted");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
     // test filtering by a taxonomy id which is not present in the data
     @Test
-    public void convertTaxon() {
+    public void convertTaxon() throws IOException {
         CTDInteractionConverter converter = new CTDInteractionConverter("559292");
         Model m = converter.convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
         assertTrue(m.getObjects(Control.class).isEmpty());
@@ -130,6 +170,59 @@ public class CTDConvertersTest {
 //        (new SimpleIOHandler()).convertToOWL(m, System.out);
     }
 
+    @Test
+    public void diagnostics() throws IOException {
+        CTDInteractionConverter converter = new CTDInteractionConverter(null);
+        converter.convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        Diagnostics diagnostics = converter.getDiagnostics();
+        assertEquals(1, diagnostics.count("ixns with < 2 actors (violates the CTD XML schema; ignored)"));
+        assertEquals(Arrays.asList("4841667"),
+            diagnostics.samples("ixns with < 2 actors (violates the CTD XML schema; ignored)"));
+        assertEquals(2, diagnostics.count("ixns skipped due to error"));
+        assertTrue(diagnostics.count("reused existing processes") > 0);
+
+        Diagnostics shared = new Diagnostics(LoggerFactory.getLogger(getClass()));
+        // shared by the converters: counted for both conversions
+        converter.setDiagnostics(shared);
+        converter.convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        converter.convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        assertEquals(4, shared.count("ixns skipped due to error"));
+    }
+
+    @Test
+    public void entityDictionary() throws IOException {
+        // the second pass models have just stubs of the first pass entities
+        CTDInteractionConverter converter = new CTDInteractionConverter(null);
+        EntityDictionary dictionary = converter.collectEntities(
+            new XmlIxnReader(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml")));
+        converter.setDictionary(dictionary);
+        Model m = converter.convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        SimplePhysicalEntity stub = m.getObjects(SimplePhysicalEntity.class).iterator().next();
+        assertNotSame(stub, dictionary.getModel().getByID(stub.getUri()));
+        assertNull(stub.getEntityReference());
+        assertTrue(m.getObjects(EntityReference.class).stream().allMatch(er -> er.getXref().isEmpty()));
+        Model entities = dictionary.select(Collections.singletonList(converter));
+        assertTrue(entities.getObjects(SimplePhysicalEntity.class).size() <= dictionary.size());
+        new Merger(SimpleEditorMap.L3).merge(m, entities);
+        assertNotNull(stub.getEntityReference());
+        assertEquals(new CTDInteractionConverter(null).convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"))
+            .getObjects().size(), m.getObjects().size());
+    }
+
+    @Test
+    public void lookupTables() {
+        assertEquals(AxnCode.EXP, AxnCode.fromCode("exp"));
+        assertEquals(AxnCode.EXP, AxnCode.fromCode("Exp"));
+        assertNull(AxnCode.fromCode("foo"));
+        assertEquals(Actor.IXN, Actor.fromType("ixn"));
+        assertEquals(Actor.CHEMICAL, Actor.fromType("chemical"));
+        assertEquals(GeneForm.THREE_UTR, GeneForm.fromForm("3' UTR"));
+        assertEquals(GeneForm.MRNA, GeneForm.fromForm("mRNA"));
+        assertEquals(GeneForm.POLYA_TAIL, GeneForm.fromForm("polyA tail"));
+        assertEquals(GeneForm.MUTANT_FORM, GeneForm.fromForm("MUTANT_FORM"));
+        assertNull(GeneForm.fromForm("ribozyme"));
+    }
+
     @Test
     public void convertGenes() throws IOException {
         CTDGeneConverter converter = new CTDGeneConverter();
@@ -146,6 +239,98 @@ public class CTDConvertersTest {
         ProteinReference rr1 = (ProteinReference) m.getByID("ctdbase:ref_modified_form_gene_611");
         assertNotNull(rr1);
 //        (new SimpleIOHandler()).convertToOWL(m, System.out);
+
+        // join mode: only the genes in the id filter
+        LongSet ids = new LongSet();
+        ids.add(CtdUtil.packActorId("MESH:C006632"));
+        converter = new CTDGeneConverter();
+        converter.setIdFilter(ids);
+        assertTrue(converter.convert(getClass().getResourceAsStream("/test_CTD_genes.csv")).getObjects().isEmpty());
+        ids.add(CtdUtil.packActorId("GENE:611"));
+        converter = new CTDGeneConverter();
+        converter.setIdFilter(ids);
+        assertEquals(17, converter.convert(getClass().getResourceAsStream("/test_CTD_genes.csv")).getObjects().size());
+
+        // the row limit
+        converter = new CTDGeneConverter();
+        converter.setRowLimit(0);
+        assertTrue(converter.convert(getClass().getResourceAsStream("/test_CTD_genes.csv")).getObjects().isEmpty());
+    }
+
+    @Test
+    public void sharedTargetModel() throws Exception {
+        ByteArrayOutputStream genes = new ByteArrayOutputStream();
+        ByteArrayOutputStream chemicals = new ByteArrayOutputStream();
+        new CtdDataGenerator(5).writeGenes(genes, 2000);
+        new CtdDataGenerator(5).writeChemicals(chemicals, 2000);
+
+        TargetModel expected = new TargetModel(new CTDGeneConverter().createNewModel());
+        new CTDGeneConverter().convert(new ByteArrayInputStream(genes.toByteArray()), expected);
+        new CTDChemicalConverter().convert(new ByteArrayInputStream(chemicals.toByteArray()), expected);
+
+        // two gene and two chemical converters (each file twice) fill one model at the same time
+        TargetModel target = new TargetModel(new CTDGeneConverter().createNewModel());
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            tasks.add(() -> new CTDGeneConverter().convert(new ByteArrayInputStream(genes.toByteArray()), target));
+            tasks.add(() -> new CTDChemicalConverter().convert(new ByteArrayInputStream(chemicals.toByteArray()), target));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        int added = 0;
+        for (Future<Integer> f : executor.invokeAll(tasks)) {
+            added += f.get();
+        }
+        executor.shutdown();
+        assertEquals(expected.getModel().getObjects(EntityReference.class).size(), added);
+        assertEquals(expected.size(), target.size());
+        assertEquals(target.size(), target.getModel().getObjects().size());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OwlWriter.write(expected.getModel(), out);
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        OwlWriter.write(target.getModel(), out2);
+        assertArrayEquals(out.toByteArray(), out2.toByteArray());
+
+        // one element per URI, of the first type
+        String uri = target.getXmlBase() + "ref_chemical_mesh_c000002";
+        assertSame(target.get(uri), target.getOrCreate(SmallMoleculeReference.class, uri, null));
+        assertNull(target.createIfAbsent(SmallMoleculeReference.class, uri, null));
+        try {
+            target.getOrCreate(ProteinReference.class, uri, null);
+            fail("an existing element of another type");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("SmallMoleculeReference"));
+        }
+    }
+
+    @Test
+    public void sharedInteractionsTarget() throws Exception {
+        ByteArrayOutputStream ixns = new ByteArrayOutputStream();
+        new CtdDataGenerator(3).genes(40).chemicals(20).writeInteractions(ixns, 1000);
+        Model expected = new CTDInteractionConverter(null).convert(new ByteArrayInputStream(ixns.toByteArray()));
+
+        // four converters read the same records at the same time; each record is made (only) by the first
+        // to get to it, which has seen the records before it, so the model is the same as a single converter's
+        TargetModel target = new TargetModel(new CTDInteractionConverter(null).createNewModel());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(() -> {
+                try (XmlIxnReader reader = new XmlIxnReader(new ByteArrayInputStream(ixns.toByteArray()))) {
+                    new CTDInteractionConverter(null).convert(reader, target);
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        for (Future<Void> f : executor.invokeAll(tasks)) {
+            f.get();
+        }
+        executor.shutdown();
+        assertEquals(target.size(), target.getModel().getObjects().size());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OwlWriter.write(expected, out);
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        OwlWriter.write(target.getModel(), out2);
+        assertArrayEquals(out.toByteArray(), out2.toByteArray());
     }
 
     @Test
@@ -161,4 +346,35 @@ public class CTDConvertersTest {
         assertNotNull(smr1);
 //        (new SimpleIOHandler()).convertToOWL(m, System.out);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void xrefPool() {
+        CTDGeneConverter converter = new CTDGeneConverter();
+        Model m = converter.createNewModel();
+        // the same PMID, or class, db and id, gives the same xref, once in the model
+        PublicationXref px = converter.createPubmedXref(m, 12345);
+        assertSame(px, converter.createPubmedXref(m, 12345));
+        assertSame(px, converter.createXref(m, PublicationXref.class, "pubmed", "12345"));
+        assertNotSame(px, converter.createPubmedXref(m, 54321));
+        Xref ux = converter.createXref(m, UnificationXref.class, "ncbigene", "7157");
+        assertSame(ux, converter.createXref(m, UnificationXref.class, "ncbigene", "7157"));
+        assertNotSame(ux, converter.createXref(m, RelationshipXref.class, "ncbigene", "7157"));
+        assertNotSame(ux, converter.createXref(m, UnificationXref.class, "hgnc", "7157"));
+        assertEquals(2, m.getObjects(PublicationXref.class).size());
+        assertEquals(2, m.getObjects(UnificationXref.class).size());
+        assertEquals(1, m.getObjects(RelationshipXref.class).size());
+
+        // the pool is reset for another model: new xrefs, added to that model
+        Model m2 = converter.createNewModel();
+        PublicationXref px2 = converter.createPubmedXref(m2, 12345);
+        assertNotSame(px, px2);
+        assertSame(px2, m2.getByID(px.getUri()));
+        Xref ux2 = converter.createXref(m2, UnificationXref.class, "ncbigene", "7157");
+        assertNotSame(ux, ux2);
+        assertEquals(2, m2.getObjects().size());
+        // back to the first model: the pool is reset again, and its xrefs are found in the model
+        assertSame(px, converter.createPubmedXref(m, 12345));
+        assertSame(ux, converter.createXref(m, UnificationXref.class, "ncbigene", "7157"));
+        assertEquals(5, m.getObjects().size());
+    }
+}
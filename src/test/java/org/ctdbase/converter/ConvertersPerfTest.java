@@ -0,0 +1,221 @@
+package org.ctdbase.converter;
+
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.ConversionJob;
+import org.ctdbase.io.ByteXmlIxnReader;
+import org.ctdbase.io.IxnRecordReader;
+import org.ctdbase.io.XmlIxnReader;
+import org.ctdbase.model.IxnType;
+import org.ctdbase.util.CtdDataGenerator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Converts large generated inputs and checks the throughput, the bytes allocated
+ * and the heap retained per interaction (row) against the limits in perf-thresholds.properties.
+ * The interactions are converted by a {@link ConversionJob}, the vocabularies - by the converters.
+ * Run with: mvn -P perf test [-Dperf.interactions=50000]
+ */
+public class ConvertersPerfTest {
+    private static final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static Properties thresholds;
+    private static Path dir;
+    private static long interactions;
+    private static int rows;
+
+    @BeforeClass
+    public static void generate() throws IOException {
+        thresholds = new Properties();
+        try (InputStream in = ConvertersPerfTest.class.getResourceAsStream("/perf-thresholds.properties")) {
+            thresholds.load(in);
+        }
+        interactions = Long.getLong("perf.interactions", 50000);
+        rows = Integer.getInteger("perf.rows", 50000);
+        dir = Files.createTempDirectory("ctd-perf");
+        new CtdDataGenerator(1).gzip(false).genes(rows).chemicals(rows).generate(dir, interactions);
+        // warm up
+        Path warmUp = dir.resolve("warm-up");
+        new CtdDataGenerator(2).gzip(false).genes(rows / 10).chemicals(rows / 10).generate(warmUp, interactions / 10);
+        convertInJob(warmUp.resolve(CtdDataGenerator.INTERACTIONS_FILE), warmUp.resolve("interactions.owl"));
+        convert(new CTDGeneConverter(), warmUp.resolve(CtdDataGenerator.GENES_FILE));
+        convert(new CTDChemicalConverter(), warmUp.resolve(CtdDataGenerator.CHEMICALS_FILE));
+    }
+
+    @AfterClass
+    public static void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // as the command line converts them: in a job, which merges the batch models and writes the OWL file
+    @Test
+    public void interactions() throws IOException {
+        long heap = usedHeap();
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        Model model = convertInJob(dir.resolve(CtdDataGenerator.INTERACTIONS_FILE), dir.resolve("interactions.owl"));
+        Measured m = new Measured(model, interactions * 1e9 / (System.nanoTime() - start),
+            (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated) / interactions);
+        long retained = (usedHeap() - heap) / interactions;
+        assertFalse(m.model.getObjects().isEmpty());
+        System.out.printf("interactions: %.0f per second, %d allocated, %d retained bytes per ixn%n",
+            m.perSecond, m.allocatedBytes, retained);
+        check("interactions.min-per-second", m.perSecond, true);
+        check("interactions.max-allocated-bytes", m.allocatedBytes, false);
+        check("interactions.max-retained-bytes", retained, false);
+    }
+
+    @Test
+    public void xmlParsers() throws Exception {
+        Path file = dir.resolve(CtdDataGenerator.INTERACTIONS_FILE);
+        parse(file, ParserKind.JAXB); //warm up
+        parse(file, ParserKind.STAX);
+        parse(file, ParserKind.BYTES);
+        double[] perSecond = new double[ParserKind.values().length];
+        long[] allocatedBytes = new long[perSecond.length];
+        for (int round = 0; round < 3; round++) { //the best of three, as the runs are short
+            for (ParserKind kind : ParserKind.values()) {
+                long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                long start = System.nanoTime();
+                assertEquals(interactions, parse(file, kind));
+                perSecond[kind.ordinal()] = Math.max(perSecond[kind.ordinal()],
+                    interactions * 1e9 / (System.nanoTime() - start));
+                allocatedBytes[kind.ordinal()] =
+                    (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated) / interactions;
+            }
+        }
+        for (ParserKind kind : ParserKind.values()) {
+            System.out.printf("xml %s: %.0f ixns per second, %d allocated bytes per ixn%n",
+                kind, perSecond[kind.ordinal()], allocatedBytes[kind.ordinal()]);
+        }
+        check("xml.min-speedup-over-jaxb",
+            100 * perSecond[ParserKind.BYTES.ordinal()] / perSecond[ParserKind.JAXB.ordinal()], true);
+        check("xml.min-speedup-over-stax",
+            100 * perSecond[ParserKind.BYTES.ordinal()] / perSecond[ParserKind.STAX.ordinal()], true);
+    }
+
+    @Test
+    public void genes() throws IOException {
+        Measured m = measure(new CTDGeneConverter(), CtdDataGenerator.GENES_FILE, rows);
+        System.out.printf("genes: %.0f rows per second, %d allocated bytes per row%n", m.perSecond, m.allocatedBytes);
+        check("genes.min-rows-per-second", m.perSecond, true);
+        check("genes.max-allocated-bytes", m.allocatedBytes, false);
+    }
+
+    @Test
+    public void chemicals() throws IOException {
+        Measured m = measure(new CTDChemicalConverter(), CtdDataGenerator.CHEMICALS_FILE, rows);
+        System.out.printf("chemicals: %.0f rows per second, %d allocated bytes per row%n", m.perSecond, m.allocatedBytes);
+        check("chemicals.min-rows-per-second", m.perSecond, true);
+        check("chemicals.max-allocated-bytes", m.allocatedBytes, false);
+    }
+
+    private static Measured measure(Converter converter, String file, long count) throws IOException {
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        Model model = convert(converter, dir.resolve(file));
+        long nanos = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+        return new Measured(model, count * 1e9 / nanos, allocated / count);
+    }
+
+    private static Model convert(Converter converter, Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            return converter.convert(in);
+        }
+    }
+
+    // with no workers, so that all the work is done (and its allocations counted) in this thread
+    private static Model convertInJob(Path file, Path output) throws IOException {
+        Model[] model = new Model[1];
+        ConversionJob.builder()
+            .interactions(file.toString())
+            .output(output.toString())
+            .sink(m -> {
+                model[0] = m;
+                return -1;
+            })
+            .build()
+            .run();
+        return model[0];
+    }
+
+    // the number of the (top-level) ixn elements parsed
+    private static long parse(Path file, ParserKind kind) throws Exception {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            long n = 0;
+            if (kind == ParserKind.JAXB) {
+                // the former way: the JAXB binding of each ixn element
+                Unmarshaller unmarshaller = JAXBContext.newInstance(IxnType.class).createUnmarshaller();
+                XMLStreamReader xml = XMLInputFactory.newFactory().createXMLStreamReader(in);
+                while (xml.hasNext()) {
+                    if (xml.getEventType() == XMLStreamConstants.START_ELEMENT && "ixn".equals(xml.getLocalName())) {
+                        assertNotNull(unmarshaller.unmarshal(xml, IxnType.class).getValue());
+                        n++;
+                    } else {
+                        xml.next();
+                    }
+                }
+                xml.close();
+            } else {
+                try (IxnRecordReader reader = (kind == ParserKind.STAX) ? new XmlIxnReader(in) : new ByteXmlIxnReader(in)) {
+                    while (reader.read() != null) {
+                        n++;
+                    }
+                }
+            }
+            return n;
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void check(String key, double value, boolean min) {
+        double limit = Double.parseDouble(thresholds.getProperty(key));
+        assertTrue(String.format("%s: %.0f (limit %.0f)", key, value, limit), min ? value >= limit : value <= limit);
+    }
+
+    private enum ParserKind {
+        JAXB, STAX, BYTES
+    }
+
+    private static final class Measured {
+        final Model model;
+        final double perSecond;
+        final long allocatedBytes;
+
+        Measured(Model model, double perSecond, long allocatedBytes) {
+            this.model = model;
+            this.perSecond = perSecond;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
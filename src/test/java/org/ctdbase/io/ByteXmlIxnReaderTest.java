@@ -0,0 +1,75 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.CtdDataGenerator;
+import org.ctdbase.util.model.IxnRecord;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ByteXmlIxnReaderTest {
+
+    @Test
+    public void byteXmlReader() throws IOException {
+        Path dir = Files.createTempDirectory("ctd");
+        byte[] fixture;
+        try (InputStream in = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml")) {
+            fixture = in.readAllBytes();
+        }
+        ByteArrayOutputStream generated = new ByteArrayOutputStream();
+        new CtdDataGenerator(3).genes(200).chemicals(100).maxDepth(3).writeInteractions(generated, 300);
+        // the XML syntax the schema does not restrict
+        String markup = "\uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+            + "<!DOCTYPE ixnset [ <!ELEMENT ixnset ANY> ]>\r\n<ixnset note='a > b'><!-- <ixn id=\"0\"> -->\r\n"
+            + "<ixn id='1'><taxon id=\"9606\">Homo&#32;sapiens</taxon><reference pmid=\"123\"/><reference pmid=\"x\"/>"
+            + "<axn code=\"exp\" degreecode=\"&#x2B;\">increases\r\n<![CDATA[<expression> & ]]]]><![CDATA[>]]></axn>"
+            + "<extra a=\"1\"><axn code=\"b\">skipped</axn></extra><?pi data?>"
+            + "<actor type=\"chemical\" id=\"C1\">Na&lt;sup&gt;+&lt;/sup&gt; &amp; K\u00e9<!-- c -->tone</actor>"
+            + "<actor type=\"ixn\" id=\"2\">\n\t<axn code=\"rxn\"/><actor type=\"gene\" id=\"7\" form=\"protein\"\r\n"
+            + " formqualifier=\"a\tb&#10;c&quot;\">G&apos;7</actor>\n</actor>"
+            + "<actor type=\"gene\" id=\"8\" form=\"mRNA\"/></ixn>\r\n<ixn id=\"3\"/></ixnset>";
+
+        for (byte[] xml : Arrays.asList(fixture, generated.toByteArray(), markup.getBytes("UTF-8"))) {
+            // the same records as the StAX reader's
+            assertArrayEquals(IxnSnapshotTest.records(dir, new XmlIxnReader(new ByteArrayInputStream(xml))),
+                IxnSnapshotTest.records(dir, new ByteXmlIxnReader(new ByteArrayInputStream(xml))));
+        }
+        try (IxnRecordReader reader = new ByteXmlIxnReader(new ByteArrayInputStream(markup.getBytes("UTF-8")))) {
+            IxnRecord rec = reader.read();
+            assertEquals(1, rec.getPmidCount());
+            assertEquals("increases\n<expression> & ]]>", rec.getAxnText(0));
+            assertEquals('+', rec.getAxnDegree(0));
+            assertEquals("Na<sup>+</sup> & K\u00e9tone", rec.getActorName(0));
+            assertEquals("a b\nc\"", rec.getActorFormQualifier(3)); //the nested ixn's actors are last
+            assertEquals("G'7", rec.getActorName(3));
+            assertEquals(3, reader.read().getId());
+            assertNull(reader.read());
+        }
+
+        // not well-formed
+        for (String bad : new String[] {
+            "<ixnset><ixn id=\"1\"><axn code=\"b\">x</ax></ixn></ixnset>",
+            "<ixnset><ixn id=\"1\"><actor type=\"gene\" id=\"1\">x</ixn></ixnset>",
+            "<ixnset><ixn id=\"1\"><axn code=\"b\">&nbsp;</axn></ixn></ixnset>",
+            "<ixnset><ixn id=\"1\"><axn code=\"b>x</axn></ixn></ixnset>",
+            "<ixnset><ixn id=\"1\"><axn code=\"b\">x</axn>",
+            "<ixnset><ixn id=\"x\"></ixn></ixnset>",
+            "<ixnset><ixn id=\"1\"></ixn>"
+        }) {
+            try (IxnRecordReader reader = new ByteXmlIxnReader(new ByteArrayInputStream(bad.getBytes("UTF-8")))) {
+                while (reader.read() != null);
+                fail("parsed " + bad);
+            } catch (IOException e) {
+                //expected
+            }
+        }
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,108 @@
+package org.ctdbase.io;
+
+import org.ctdbase.ConversionJob;
+import org.ctdbase.JobMetrics;
+import org.ctdbase.util.CtdDataGenerator;
+import org.ctdbase.util.model.Actor;
+import org.ctdbase.util.model.IxnRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class IxnIndexTest {
+
+    @Test
+    public void index() throws IOException {
+        Path dir = Files.createTempDirectory("ctd");
+        Path gz = new CtdDataGenerator(11).genes(300).chemicals(100).generate(dir, 500);
+        assertNull(IxnIndex.open(gz));
+        long entries = IxnIndex.build(gz);
+        Path xml = IxnIndex.uncompressedFile(gz);
+        assertTrue(Files.isRegularFile(xml));
+        IxnIndex index = IxnIndex.open(gz);
+        assertNotNull(index);
+        assertEquals(entries, index.getEntries());
+
+        // a chemical, a gene (in lower case) and an ixn id, and the interactions with any of them (a full scan)
+        List<IxnRecord> all = new ArrayList<>();
+        try (IxnRecordReader reader = new XmlIxnReader(Files.newInputStream(xml))) {
+            IxnRecord rec;
+            while ((rec = reader.read()) != null) {
+                all.add(rec);
+            }
+        }
+        String chemical = null;
+        String gene = null;
+        IxnRecord nested = all.stream().filter(rec -> rec.getNodeCount() > 1).findFirst().get();
+        for (int a = 0; a < nested.getActorCount(); a++) {
+            if (nested.getActorType(a) == Actor.CHEMICAL) {
+                chemical = nested.getActorId(a);
+            } else if (nested.getActorType(a) == Actor.GENE) {
+                gene = nested.getActorId(a);
+            }
+        }
+        long ixnId = all.get(100).getId();
+        List<Long> expected = new ArrayList<>();
+        for (IxnRecord rec : all) {
+            boolean selected = rec.getId() == ixnId;
+            for (int a = 0; a < rec.getActorCount(); a++) {
+                selected |= rec.getActorId(a).equals(chemical) || rec.getActorId(a).equals(gene);
+            }
+            if (selected) {
+                expected.add(rec.getId());
+            }
+        }
+        Path ids = dir.resolve("ids.txt");
+        Files.write(ids, Arrays.asList("# curator request", chemical, gene.toLowerCase(), "", String.valueOf(ixnId)));
+        List<Long> selected = new ArrayList<>();
+        try (IxnIndex.Selection selection = index.select(IxnIndex.readKeys(ids))) {
+            assertEquals(expected.size(), selection.size());
+            IxnRecord rec;
+            while ((rec = selection.read()) != null) {
+                selected.add(rec.getId());
+            }
+        }
+        assertEquals(expected, selected); //in the file order, each once
+
+        // the same output as the full scan filtered by the ixn ids
+        Path ixnIds = dir.resolve("ixn-ids.txt");
+        Files.write(ixnIds, expected.stream().map(String::valueOf).collect(Collectors.toList()));
+        Path byIndex = dir.resolve("selected.owl");
+        Path byScan = dir.resolve("filtered.owl");
+        JobMetrics metrics = ConversionJob.builder().interactions(gz.toString()).select(ids.toString())
+            .output(byIndex.toString()).build().run();
+        assertEquals(expected.size(), (long) metrics.getCounters().get("index.selected"));
+        ConversionJob.builder().interactions(gz.toString()).ixnIds(ixnIds.toString())
+            .output(byScan.toString()).build().run();
+        assertArrayEquals(Files.readAllBytes(byScan), Files.readAllBytes(byIndex));
+
+        Files.write(ids, Collections.singletonList("CHEBI:1"));
+        try {
+            IxnIndex.readKeys(ids);
+            fail("not an id");
+        } catch (IOException e) {
+            //expected
+        }
+        // stale, once the file is changed
+        Files.setLastModifiedTime(xml, FileTime.fromMillis(Files.getLastModifiedTime(xml).toMillis() + 1000));
+        assertNull(IxnIndex.open(gz));
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.LongSet;
+import org.ctdbase.util.model.IxnRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.*;
+
+public class IxnRecordFilterTest {
+
+    @Test
+    public void filterRecords() throws IOException {
+        List<Long> all = filteredIds(r -> r);
+        assertEquals(5, filteredIds(r -> r.limit(5)).size());
+        assertEquals(all.subList(0, 5), filteredIds(r -> r.limit(5)));
+        assertEquals(all, filteredIds(r -> r.sample(1.0, 7)));
+        assertTrue(filteredIds(r -> r.sample(0.0, 7)).isEmpty());
+        // the same seed and rate - the same sample; a larger rate - a superset
+        List<Long> sample = filteredIds(r -> r.sample(0.5, 7));
+        assertTrue(sample.size() > 0 && sample.size() < all.size());
+        assertEquals(sample, filteredIds(r -> r.sample(0.5, 7)));
+        assertTrue(filteredIds(r -> r.sample(0.8, 7)).containsAll(sample));
+
+        Path file = Files.createTempFile("ctd", ".txt");
+        Files.write(file, Arrays.asList("# ixn ids", all.get(3).toString(), "", all.get(1).toString()));
+        LongSet ids = IxnRecordFilter.readIds(file);
+        assertEquals(Arrays.asList(all.get(1), all.get(3)), filteredIds(r -> r.ids(ids)));
+        Files.delete(file);
+    }
+
+    private List<Long> filteredIds(UnaryOperator<IxnRecordFilter> options) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (IxnRecordReader reader = options.apply(new IxnRecordFilter(
+            new XmlIxnReader(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"))))) {
+            IxnRecord rec;
+            while ((rec = reader.read()) != null) {
+                ids.add(rec.getId());
+            }
+        }
+        return ids;
+    }
+}
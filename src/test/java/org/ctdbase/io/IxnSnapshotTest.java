@@ -0,0 +1,86 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.ctdbase.util.model.IxnRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class IxnSnapshotTest {
+
+    @Test
+    public void snapshot() throws IOException {
+        Path dir = Files.createTempDirectory("ctd");
+        Path source = dir.resolve("chem_gene_ixns_struct.xml");
+        try (InputStream in = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml")) {
+            Files.copy(in, source);
+        }
+        Path snapshot = IxnSnapshot.snapshotFile(source);
+        long checksum = IxnSnapshot.checksum(source);
+        assertNull(IxnSnapshot.open(snapshot, source, checksum));
+
+        IxnSnapshotWriter writer = new IxnSnapshotWriter(snapshot, Files.size(source), checksum);
+        try (IxnRecordReader reader = writer.tee(new XmlIxnReader(Files.newInputStream(source)))) {
+            while (reader.read() != null);
+        }
+        assertNull(IxnSnapshot.open(snapshot, source, checksum + 1)); //stale
+
+        // same records as from the XML (tiny mapping window to make it remap)
+        try (IxnRecordReader xml = new XmlIxnReader(Files.newInputStream(source));
+             IxnRecordReader bin = new IxnSnapshotReader(snapshot, 1024))
+        {
+            IxnRecord a, b;
+            while ((a = xml.read()) != null) {
+                b = bin.read();
+                assertNotNull(b);
+                assertEquals(a.getId(), b.getId());
+                assertEquals(a.getNodeCount(), b.getNodeCount());
+                assertEquals(a.getTaxonCount(), b.getTaxonCount());
+                assertEquals(a.getPmidCount(), b.getPmidCount());
+                assertEquals(a.getUnknownTerm(), b.getUnknownTerm());
+                assertEquals(a.getUnknownValue(), b.getUnknownValue());
+                for (int i = 0; i < a.getAxnCount(); i++) {
+                    assertEquals(a.getAxnCode(i), b.getAxnCode(i));
+                    assertEquals(a.getAxnDegree(i), b.getAxnDegree(i));
+                    assertEquals(a.getAxnText(i), b.getAxnText(i));
+                }
+                assertEquals(a.getActorCount(), b.getActorCount());
+                for (int i = 0; i < a.getActorCount(); i++) {
+                    assertEquals(a.getActorId(i), b.getActorId(i));
+                    assertEquals(a.getActorName(i), b.getActorName(i));
+                    assertEquals(a.getActorNode(i), b.getActorNode(i));
+                    assertEquals(a.getGeneForm(i), b.getGeneForm(i));
+                }
+            }
+            assertNull(bin.read());
+        }
+
+        try (IxnRecordReader reader = IxnSnapshot.open(snapshot, source, checksum)) {
+            assertNotNull(reader);
+            Model m = new CTDInteractionConverter("9606").convert(reader);
+            assertEquals(35, m.getObjects(Control.class).size());
+        }
+        Files.delete(snapshot);
+        Files.delete(source);
+        Files.delete(dir);
+    }
+
+    // the records as the snapshot file bytes
+    static byte[] records(Path dir, IxnRecordReader source) throws IOException {
+        Path snapshot = dir.resolve("records" + IxnSnapshot.EXTENSION);
+        IxnSnapshotWriter writer = new IxnSnapshotWriter(snapshot, 0, 0);
+        try (IxnRecordReader reader = writer.tee(source)) {
+            while (reader.read() != null);
+        }
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.delete(snapshot);
+        return bytes;
+    }
+}
@@ -0,0 +1,40 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ModelSnapshotTest {
+
+    @Test
+    public void modelSnapshot() throws IOException {
+        Model m = new CTDInteractionConverter(null).convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        Path file = Files.createTempFile("ctd", ModelSnapshot.EXTENSION);
+        ModelSnapshot.write(m, file);
+        Model loaded = ModelSnapshot.load(file);
+        Files.delete(file);
+        assertEquals(m.getXmlBase(), loaded.getXmlBase());
+        assertEquals(m.getObjects().size(), loaded.getObjects().size());
+        assertEquals(44, loaded.getObjects(Control.class).size());
+        // same RDF/XML statements
+        assertArrayEquals(sortedOwlLines(m), sortedOwlLines(loaded));
+    }
+
+    private static String[] sortedOwlLines(Model m) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SimpleIOHandler().convertToOWL(m, out);
+        String[] lines = out.toString().split("\n");
+        Arrays.sort(lines);
+        return lines;
+    }
+}
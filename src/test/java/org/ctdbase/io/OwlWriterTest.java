@@ -0,0 +1,55 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.controller.Merger;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OwlWriterTest {
+
+    @Test
+    public void write() throws IOException {
+        Model model = new CTDInteractionConverter(null).convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(model.getObjects().size(), OwlWriter.write(model, out));
+        // the same lines as the OWL exporter writes, in another order
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        new SimpleIOHandler().convertToOWL(model, exported);
+        assertEquals(sortedLines(exported.toByteArray()), sortedLines(out.toByteArray()));
+        Model read = new SimpleIOHandler().convertFromOWL(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(model.getObjects().size(), read.getObjects().size());
+
+        // the same model, with the objects and values added in the reverse order, is written the same
+        List<BioPAXElement> objects = new ArrayList<>(model.getObjects());
+        Collections.reverse(objects);
+        Model reversed = model.getLevel().getDefaultFactory().createModel();
+        reversed.setXmlBase(model.getXmlBase());
+        for (BioPAXElement bpe : objects) {
+            Model one = model.getLevel().getDefaultFactory().createModel();
+            one.add(bpe);
+            new Merger(SimpleEditorMap.L3).merge(reversed, one);
+        }
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        OwlWriter.write(reversed, out2);
+        assertArrayEquals(out.toByteArray(), out2.toByteArray());
+    }
+
+    private static List<String> sortedLines(byte[] document) {
+        List<String> lines = new ArrayList<>(Arrays.asList(new String(document).split("\n")));
+        Collections.sort(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,90 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.CtdDataGenerator;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ParallelXmlIxnReaderTest {
+
+    @Test
+    public void parallelXmlReader() throws IOException {
+        Path dir = Files.createTempDirectory("ctd");
+        byte[] fixture;
+        try (InputStream in = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml")) {
+            fixture = in.readAllBytes();
+        }
+        // an ixn start tag in a comment is not a boundary
+        byte[] commented = new String(fixture, "UTF-8")
+            .replace("<!-- human -->", "<!-- <ixn id=\"1\"> -->").getBytes("UTF-8");
+        ByteArrayOutputStream generated = new ByteArrayOutputStream();
+        new CtdDataGenerator(3).genes(200).chemicals(100).maxDepth(3).writeInteractions(generated, 300);
+
+        for (byte[] xml : Arrays.asList(fixture, commented, generated.toByteArray())) {
+            byte[] expected = IxnSnapshotTest.records(dir, new XmlIxnReader(new ByteArrayInputStream(xml)));
+            for (int rangeSize : new int[] {1, 64, 500, 1 << 20}) {
+                try (ParallelXmlIxnReader reader =
+                         new ParallelXmlIxnReader(new ByteArrayInputStream(xml), 3, rangeSize))
+                {
+                    // the same records, in the same order, as from one parser
+                    assertArrayEquals(expected, IxnSnapshotTest.records(dir, reader));
+                    assertEquals(rangeSize < 1000, reader.getRanges() > 1);
+                }
+            }
+        }
+
+        // a parse error in a range is thrown by read()
+        byte[] broken = new String(fixture, "UTF-8").replaceFirst("</ixn>", "</ixm>").getBytes("UTF-8");
+        try (ParallelXmlIxnReader reader = new ParallelXmlIxnReader(new ByteArrayInputStream(broken), 2, 64)) {
+            while (reader.read() != null);
+            fail("no parse error");
+        } catch (IOException e) {
+            //expected
+        }
+        Files.delete(dir);
+    }
+
+    // a read error is thrown by read(), even when the ranges' queue is full as the scanner fails
+    @Test(timeout = 60000)
+    public void parallelXmlReaderInputError() throws Exception {
+        byte[] fixture;
+        try (InputStream in = getClass().getResourceAsStream("/chem_gene_ixns_struct.xml")) {
+            fixture = in.readAllBytes();
+        }
+        for (int failAt = 100; failAt < fixture.length; failAt += 500) {
+            CountDownLatch failed = new CountDownLatch(1);
+            InputStream in = new FilterInputStream(new ByteArrayInputStream(fixture, 0, failAt)) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n < 0) {
+                        failed.countDown();
+                        throw new IOException("Read error");
+                    }
+                    return n;
+                }
+            };
+            try (ParallelXmlIxnReader reader = new ParallelXmlIxnReader(in, 1, 64)) {
+                // the scanner fails, unless it waits for the room for a range first
+                if (failed.await(50, TimeUnit.MILLISECONDS)) {
+                    Thread.sleep(5);
+                }
+                while (reader.read() != null);
+                fail("no read error");
+            } catch (IOException e) {
+                //expected
+            }
+        }
+    }
+}
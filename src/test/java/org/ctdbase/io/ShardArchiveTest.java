@@ -0,0 +1,119 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.controller.Fetcher;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.ctdbase.ConversionJob;
+import org.ctdbase.JobMetrics;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.ctdbase.util.CtdDataGenerator;
+import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.LongObjectMap;
+import org.ctdbase.util.model.IxnRecord;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ShardArchiveTest {
+
+    @Test
+    public void shardArchive() throws IOException {
+        Path dir = Files.createTempDirectory("ctd");
+        Path gz = new CtdDataGenerator(13).genes(300).chemicals(100).generate(dir, 500);
+        Path owl = dir.resolve("all.owl");
+        Path archive = dir.resolve("all.shards");
+        JobMetrics metrics = ConversionJob.builder().interactions(gz.toString())
+            .genes(dir.resolve("CTD_genes.csv.gz").toString()).chemicals(dir.resolve("CTD_chemicals.csv.gz").toString())
+            .output(owl.toString()).shards(archive.toString()).build().run();
+
+        // the interactions by chemical, as the job's converter collects them
+        CTDInteractionConverter converter = new CTDInteractionConverter(null);
+        LongObjectMap<Set<String>> shards = new LongObjectMap<>();
+        converter.setShards(shards);
+        Set<Long> chemicals = new HashSet<>();
+        try (IxnRecordReader reader = new XmlIxnReader(new GZIPInputStream(Files.newInputStream(gz)))) {
+            converter.convert(reader);
+        }
+        try (IxnRecordReader reader = new XmlIxnReader(new GZIPInputStream(Files.newInputStream(gz)))) {
+            IxnRecord rec;
+            while ((rec = reader.read()) != null) {
+                if (CtdUtil.controllerChemical(rec) >= 0) {
+                    chemicals.add(CtdUtil.controllerChemical(rec));
+                }
+            }
+        }
+        assertEquals(chemicals.size(), shards.size());
+        assertEquals(shards.size(), (long) metrics.getCounters().get("shards.documents"));
+
+        Model all = new SimpleIOHandler().convertFromOWL(Files.newInputStream(owl));
+        try (ShardArchive shardArchive = ShardArchive.open(archive)) {
+            assertEquals(shards.size(), shardArchive.size());
+            long[] keys = shardArchive.keys();
+            assertEquals(chemicals, Arrays.stream(keys).boxed().collect(Collectors.toSet()));
+            for (long key : keys) {
+                // the chemical's interactions, and all they refer to, the same as in the whole model
+                Model shard = new SimpleIOHandler().convertFromOWL(new ByteArrayInputStream(shardArchive.get(key)));
+                Set<String> expected = new HashSet<>();
+                for (String uri : shards.get(key)) {
+                    assertNotNull(shard.getByID(uri));
+                    expected.add(uri);
+                    new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter).fetch(all.getByID(uri)).stream()
+                        .map(BioPAXElement::getUri).forEach(expected::add);
+                }
+                assertEquals(expected, shard.getObjects().stream().map(BioPAXElement::getUri).collect(Collectors.toSet()));
+            }
+            // with the vocabulary's names and xrefs
+            Model first = new SimpleIOHandler().convertFromOWL(new ByteArrayInputStream(shardArchive.get(keys[0])));
+            assertFalse(first.getObjects(SmallMoleculeReference.class).isEmpty());
+            for (SmallMoleculeReference ref : first.getObjects(SmallMoleculeReference.class)) {
+                SmallMoleculeReference whole = (SmallMoleculeReference) all.getByID(ref.getUri());
+                assertEquals(whole.getName(), ref.getName());
+                assertEquals(whole.getXref().size(), ref.getXref().size());
+            }
+            assertNull(shardArchive.get("MESH:D999999"));
+            assertNull(shardArchive.get("GENE:1"));
+            assertNull(shardArchive.get("not an id"));
+        }
+
+        // the same archive whatever the number of threads
+        Path again = dir.resolve("again.shards");
+        ShardArchive.write(again, all, shards, 3);
+        Path once = dir.resolve("once.shards");
+        ShardArchive.write(once, all, shards, 1);
+        assertArrayEquals(Files.readAllBytes(once), Files.readAllBytes(again));
+        try {
+            ShardArchive.open(owl);
+            fail("not an archive");
+        } catch (IOException e) {
+            //expected
+        }
+        try {
+            ConversionJob.builder().interactions(gz.toString()).output(owl.toString()).spill(dir.toString())
+                .shards(archive.toString()).build();
+            fail("no shards with the spill merge");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
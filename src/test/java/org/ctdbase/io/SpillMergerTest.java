@@ -0,0 +1,30 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.model.Model;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class SpillMergerTest {
+
+    @Test
+    public void fanIn() throws IOException {
+        // more runs than merged at once, all with the same elements
+        Model model = new CTDInteractionConverter(null).convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        OwlWriter.write(model, expected);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SpillMerger spill = new SpillMerger(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            for (int i = 0; i <= SpillMerger.MAX_FAN_IN; i++) {
+                spill.add(model);
+            }
+            assertEquals(model.getObjects().size(), spill.writeOwl(out, model.getXmlBase()));
+        }
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+    }
+}
@@ -0,0 +1,82 @@
+package org.ctdbase.io;
+
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.level3.BiochemicalReaction;
+import org.biopax.paxtools.model.level3.ConversionDirectionType;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ValueCodecTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        PropertyEditor<?, ?> direction = SimpleEditorMap.L3.getEditorForProperty("conversionDirection", BiochemicalReaction.class);
+        List<Object> values = Arrays.asList("ATP", "ä-β", ConversionDirectionType.LEFT_TO_RIGHT, 0, -1, 300,
+            Integer.MIN_VALUE, Integer.MAX_VALUE, 1.5f, -0.25, Double.NaN, true, false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ValueCodec.Writer writer = new ValueCodec.Writer(new DataOutputStream(bytes)) {
+            @Override
+            boolean isElement(Object value) {
+                return false;
+            }
+
+            @Override
+            void writeElement(Object element) {
+                throw new AssertionError();
+            }
+
+            @Override
+            void writeString(String s) throws IOException {
+                writeUtf8(s);
+            }
+        };
+        for (Object value : values) {
+            writer.writeValue(value);
+        }
+        writer.out.flush();
+        // a small int, even a negative one, takes a byte after the tag
+        int size = bytes.size();
+        writer.writeValue(-1);
+        writer.out.flush();
+        assertEquals(size + 2, bytes.size());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ValueCodec.Reader reader = new ValueCodec.Reader("test") {
+            @Override
+            byte readByte() throws IOException {
+                return in.readByte();
+            }
+
+            @Override
+            void readFully(byte[] dest, int length) throws IOException {
+                in.readFully(dest, 0, length);
+            }
+
+            @Override
+            Object readElement() {
+                throw new AssertionError();
+            }
+
+            @Override
+            String readString() throws IOException {
+                return readUtf8();
+            }
+        };
+        for (Object value : values) {
+            assertEquals(value, reader.readValue(direction));
+        }
+        assertEquals(-1, reader.readValue(direction));
+        assertEquals(0, in.available());
+    }
+}
@@ -0,0 +1,45 @@
+package org.ctdbase.io;
+
+import org.ctdbase.util.CtdUtil;
+import org.ctdbase.util.model.Actor;
+import org.ctdbase.util.model.AxnCode;
+import org.ctdbase.util.model.GeneForm;
+import org.ctdbase.util.model.IxnRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class XmlIxnReaderTest {
+
+    @Test
+    public void readRecords() throws IOException {
+        IxnRecord nested = null;
+        int count = 0;
+        try (IxnRecordReader reader = new XmlIxnReader(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"))) {
+            IxnRecord rec;
+            while ((rec = reader.read()) != null) {
+                count++;
+                if (rec.getId() == 3727084L)
+                    nested = rec;
+            }
+        }
+        assertEquals(34, count);
+        assertNotNull(nested);
+        assertEquals(4, nested.getNodeCount()); //the ixn and three nested ixn actors
+        assertEquals(0, nested.getTaxonCount());
+        assertEquals(16168523L, nested.getPmid(0));
+        assertEquals(AxnCode.REC, CtdUtil.axnCode(nested, 0));
+        int second = CtdUtil.actor(nested, 0, 1);
+        assertEquals(Actor.IXN, nested.getActorType(second));
+        int w = nested.getActorNode(second);
+        assertEquals(3727086L, nested.getNodeId(w));
+        assertEquals(AxnCode.W, CtdUtil.axnCode(nested, w));
+        assertEquals(2, nested.getActorCount(w));
+        assertEquals("Manganese", nested.getActorName(CtdUtil.actor(nested, w, 0)));
+        int inner = nested.getActorNode(CtdUtil.actor(nested, w, 1));
+        assertEquals("TNF protein co-treated with IFNG protein", CtdUtil.extractName(nested, inner, false));
+        assertEquals(GeneForm.PROTEIN, nested.getGeneForm(CtdUtil.actor(nested, inner, 1)));
+    }
+}
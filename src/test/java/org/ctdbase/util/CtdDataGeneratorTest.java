@@ -0,0 +1,63 @@
+package org.ctdbase.util;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.ctdbase.ConversionJob;
+import org.ctdbase.io.IxnRecordReader;
+import org.ctdbase.io.XmlIxnReader;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class CtdDataGeneratorTest {
+
+    @Test
+    public void generateData() throws IOException {
+        Path dir = Files.createTempDirectory("ctd");
+        Path ixns = new CtdDataGenerator(7).genes(300).chemicals(100).generate(dir, 500);
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(again)) {
+            new CtdDataGenerator(7).genes(300).chemicals(100).writeInteractions(out, 500);
+        }
+        assertArrayEquals(Files.readAllBytes(ixns), again.toByteArray()); //the same seed - the same data
+
+        long records = 0;
+        try (IxnRecordReader reader = new XmlIxnReader(new GZIPInputStream(Files.newInputStream(ixns)))) {
+            while (reader.read() != null) {
+                records++;
+            }
+        }
+        assertEquals(500, records);
+
+        List<Model> models = new ArrayList<>();
+        ConversionJob.builder()
+            .interactions(ixns.toString())
+            .genes(dir.resolve(CtdDataGenerator.GENES_FILE + ".gz").toString())
+            .chemicals(dir.resolve(CtdDataGenerator.CHEMICALS_FILE + ".gz").toString())
+            .join(true)
+            .sink(m -> {
+                models.add(m);
+                return -1;
+            })
+            .build()
+            .run();
+        Model m = models.get(0);
+        assertTrue(m.getObjects(Control.class).size() > 400);
+        // the protein and chemical actors are in the vocabularies (which set the standard names)
+        for (EntityReference er : m.getObjects(EntityReference.class)) {
+            if (er instanceof ProteinReference || er instanceof SmallMoleculeReference) {
+                assertNotNull(er.getUri(), er.getStandardName());
+            }
+        }
+    }
+}
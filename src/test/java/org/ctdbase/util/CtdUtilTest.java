@@ -0,0 +1,42 @@
+package org.ctdbase.util;
+
+import org.ctdbase.util.model.Actor;
+import org.ctdbase.util.model.AxnCode;
+import org.ctdbase.util.model.IxnRecord;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CtdUtilTest {
+
+    @Test
+    public void packIds() {
+        assertEquals(CtdUtil.packActorId("GENE:5178"), CtdUtil.packActorId("gene:5178"));
+        assertNotEquals(CtdUtil.packActorId("MESH:C001564"), CtdUtil.packActorId("MESH:C1564"));
+        assertNotEquals(CtdUtil.packActorId("MESH:C001564"), CtdUtil.packActorId("MESH:D001564"));
+        assertEquals(-1, CtdUtil.packActorId("4963086"));
+        assertEquals(9606, CtdUtil.parseId("9606"));
+        assertEquals(-1, CtdUtil.parseId("defined"));
+
+        assertEquals(CtdUtil.packActorId("GENE:5178"), CtdUtil.packGeneId("5178"));
+    }
+
+    @Test
+    public void controllerChemical() {
+        // the controller chemical: the first actor, of the nested first actor ixn too; or else the first chemical
+        IxnRecord geneFirst = new IxnRecord.Builder().begin(1).axn(AxnCode.EXP, '+', "affects")
+            .startActor(Actor.GENE, "GENE:1", null, null).endActor()
+            .startActor(Actor.CHEMICAL, "MESH:D000002", null, null).endActor().build();
+        assertEquals(CtdUtil.packActorId("MESH:D000002"), CtdUtil.controllerChemical(geneFirst));
+        IxnRecord nested = new IxnRecord.Builder().begin(3).axn(AxnCode.RXN, '+', "affects")
+            .startActor(Actor.IXN, "4", null, null).axn(AxnCode.B, '0', "binds")
+            .startActor(Actor.CHEMICAL, "MESH:C000005", null, null).endActor()
+            .startActor(Actor.GENE, "GENE:5", null, null).endActor().endActor()
+            .startActor(Actor.CHEMICAL, "MESH:D000006", null, null).endActor().build();
+        assertEquals(CtdUtil.packActorId("MESH:C000005"), CtdUtil.controllerChemical(nested));
+        IxnRecord genes = new IxnRecord.Builder().begin(7).axn(AxnCode.B, '0', "binds")
+            .startActor(Actor.GENE, "GENE:1", null, null).endActor()
+            .startActor(Actor.GENE, "GENE:2", null, null).endActor().build();
+        assertEquals(-1, CtdUtil.controllerChemical(genes));
+    }
+}
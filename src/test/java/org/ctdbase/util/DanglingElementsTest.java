@@ -0,0 +1,39 @@
+package org.ctdbase.util;
+
+import org.biopax.paxtools.controller.Merger;
+import org.biopax.paxtools.controller.ModelUtils;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.ctdbase.converter.CTDGeneConverter;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class DanglingElementsTest {
+
+    @Test
+    public void removeDangling() throws IOException {
+        Model[] models = new Model[2];
+        for (int i = 0; i < models.length; i++) {
+            models[i] = new CTDInteractionConverter("9606").convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+            new Merger(SimpleEditorMap.L3).merge(models[i],
+                new CTDGeneConverter().convert(getClass().getResourceAsStream("/test_CTD_genes.csv")));
+        }
+        Set<BioPAXElement> expected = ModelUtils.removeObjectsIfDangling(models[0], UtilityClass.class);
+        Set<BioPAXElement> removed = DanglingElements.remove(models[1], UtilityClass.class);
+        assertFalse(removed.isEmpty());
+        assertEquals(expected, removed);
+        assertEquals(new HashSet<>(models[0].getObjects()), new HashSet<>(models[1].getObjects()));
+
+        // a vocabulary model has only entity references, which are not removed
+        Model genes = new CTDGeneConverter().convert(getClass().getResourceAsStream("/test_CTD_genes.csv"));
+        assertTrue(DanglingElements.remove(genes, UtilityClass.class).isEmpty());
+    }
+}
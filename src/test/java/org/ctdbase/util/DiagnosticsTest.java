@@ -0,0 +1,19 @@
+package org.ctdbase.util;
+
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.*;
+
+public class DiagnosticsTest {
+
+    @Test
+    public void samples() {
+        Diagnostics shared = new Diagnostics(LoggerFactory.getLogger(getClass()));
+        for (int i = 0; i < 2 * Diagnostics.SAMPLES; i++) {
+            shared.warn("test", i);
+        }
+        assertEquals(2 * Diagnostics.SAMPLES, shared.count("test"));
+        assertEquals(Diagnostics.SAMPLES, shared.samples("test").size());
+    }
+}
@@ -0,0 +1,20 @@
+package org.ctdbase.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void putGet() {
+        LongObjectMap<String> map = new LongObjectMap<>(2);
+        for (long i = 0; i < 1000; i++) {
+            map.put(i * 31, "v" + i);
+        }
+        assertEquals(1000, map.size());
+        assertEquals("v0", map.get(0));
+        assertEquals("v999", map.get(999 * 31));
+        assertNull(map.get(1));
+    }
+}
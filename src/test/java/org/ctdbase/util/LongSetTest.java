@@ -0,0 +1,20 @@
+package org.ctdbase.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongSetTest {
+
+    @Test
+    public void addContains() {
+        LongSet set = new LongSet(2);
+        for (long i = 0; i < 1000; i++) {
+            assertTrue(set.add(i * 31));
+        }
+        assertFalse(set.add(0));
+        assertEquals(1000, set.size());
+        assertTrue(set.contains(999 * 31));
+        assertFalse(set.contains(1));
+    }
+}
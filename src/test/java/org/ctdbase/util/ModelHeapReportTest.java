@@ -0,0 +1,27 @@
+package org.ctdbase.util;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.ctdbase.converter.CTDInteractionConverter;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ModelHeapReportTest {
+
+    @Test
+    public void report() throws IOException {
+        Model m = new CTDInteractionConverter(null).convert(getClass().getResourceAsStream("/chem_gene_ixns_struct.xml"));
+        ModelHeapReport report = ModelHeapReport.of("interactions", m);
+        assertEquals(m.getObjects(PublicationXref.class).size(), report.getObjects(PublicationXref.class));
+        assertTrue(report.getEstimatedBytes(PublicationXref.class) > 0);
+        int components = 0;
+        for (Complex c : m.getObjects(Complex.class)) {
+            components += c.getComponent().size();
+        }
+        assertEquals(components, report.getValues(Complex.class, "component"));
+        assertTrue(report.getMaxValues(Complex.class, "component") >= 2);
+    }
+}
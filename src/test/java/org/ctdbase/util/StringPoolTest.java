@@ -0,0 +1,38 @@
+package org.ctdbase.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StringPoolTest {
+
+    @Test
+    public void intern() {
+        StringPool pool = new StringPool();
+        assertNull(pool.intern(null));
+        String pubmed = new String("pubmed");
+        assertSame(pubmed, pool.intern(pubmed));
+        assertSame(pubmed, pool.intern(new String("pubmed")));
+        assertSame(pubmed, pool.intern(pubmed)); //the pooled instance itself saves nothing
+        assertEquals(1, pool.size());
+        assertEquals(2, pool.getHits());
+    }
+
+    @Test
+    public void savedBytes() {
+        StringPool pool = new StringPool();
+        // a value that does not repeat costs its table entry
+        pool.intern(new String("ixn1"));
+        assertEquals(-StringPool.ENTRY_OVERHEAD, pool.getSavedBytes());
+
+        // each duplicate replaced saves its own String and byte[]
+        String term = "decreases^expression";
+        long size = StringPool.estimateSize(term);
+        assertEquals(64, size); //24 + (16 + 20 Latin1 bytes, 8-byte aligned)
+        for (int i = 0; i < 10; i++) {
+            pool.intern(new String(term));
+        }
+        assertEquals(9 * size - 2 * StringPool.ENTRY_OVERHEAD, pool.getSavedBytes());
+        assertEquals(24 + 16 + 8, StringPool.estimateSize("α-ab")); //UTF-16
+    }
+}